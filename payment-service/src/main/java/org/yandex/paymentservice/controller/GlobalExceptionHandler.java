@@ -6,15 +6,15 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.yandex.paymentservice.model.ErrorResponse;
-import org.yandex.paymentservice.model.exception.NotEnoughMoneyException;
+import org.yandex.paymentservice.model.exception.PaymentServiceException;
 import reactor.core.publisher.Mono;
 
 @Slf4j
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
-    @ExceptionHandler(NotEnoughMoneyException.class)
-    public Mono<ResponseEntity<ErrorResponse>> handleApiException(NotEnoughMoneyException ex) {
+    @ExceptionHandler(PaymentServiceException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleApiException(PaymentServiceException ex) {
         log.error("Payment API exception: {}", ex.getMessage());
 
         HttpStatus status = switch (ex.extCode) {
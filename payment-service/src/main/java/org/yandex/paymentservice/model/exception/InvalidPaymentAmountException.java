@@ -0,0 +1,7 @@
+package org.yandex.paymentservice.model.exception;
+
+public class InvalidPaymentAmountException extends PaymentServiceException {
+    public InvalidPaymentAmountException(String message, int extCode) {
+        super(extCode, message);
+    }
+}
@@ -0,0 +1,60 @@
+package org.yandex.paymentservice.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Balances of users in minor units (kopecks). A debit is a compare-and-set on the user's balance,
+ * so concurrent payments of one user never overdraw it or lose each other's updates, and payments
+ * of different users do not contend at all.
+ */
+@Component
+public class BalanceLedger {
+
+    /**
+     * Returned by {@link #debit} when the balance does not cover the amount
+     */
+    public static final long REJECTED = -1;
+
+    private final Map<Long, AtomicLong> balances = new ConcurrentHashMap<>();
+    private final long initialBalance;
+
+    public BalanceLedger(@Value("${payment.initial-balance-minor:50000}") long initialBalance) {
+        this.initialBalance = initialBalance;
+    }
+
+    public long balance(Long userId) {
+        return account(userId).get();
+    }
+
+    /**
+     * Takes {@code amount} from the balance when it covers the amount
+     *
+     * @return balance left, {@link #REJECTED} when the balance was not enough
+     */
+    public long debit(Long userId, long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Debit amount must be positive: " + amount);
+        }
+        AtomicLong account = account(userId);
+        long current = account.get();
+        while (current >= amount) {
+            long left = current - amount;
+            long witnessed = account.compareAndExchange(current, left);
+            if (witnessed == current) {
+                return left;
+            }
+            current = witnessed;
+        }
+        return REJECTED;
+    }
+
+    private AtomicLong account(Long userId) {
+        AtomicLong account = balances.get(userId);
+        return account != null ? account : balances.computeIfAbsent(userId, id -> new AtomicLong(initialBalance));
+    }
+}
@@ -1,34 +1,43 @@
 package org.yandex.paymentservice.service;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.yandex.paymentservice.model.PaymentRequest;
 import org.yandex.paymentservice.model.UserBalance;
+import org.yandex.paymentservice.model.exception.InvalidPaymentAmountException;
 import org.yandex.paymentservice.model.exception.NotEnoughMoneyException;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class PaymentService {
 
-    private final Map<Long, UserBalance> userBalances = new ConcurrentHashMap<>();
+    private final BalanceLedger ledger;
 
     public UserBalance getBalance(Long userId) {
-        userBalances.computeIfAbsent(userId, k -> new UserBalance(userId, 500.0f));
-        return userBalances.get(userId);
+        return new UserBalance(userId, toMajor(ledger.balance(userId)));
     }
 
     public UserBalance tryProcessPayment(Long userId, PaymentRequest req) {
-        UserBalance balance = getBalance(userId);
-        if (balance.getBalance() < req.getAmount()) {
+        long amount = toMinor(req.getAmount());
+        // the ledger only takes positive amounts, anything rounding to less than a kopeck is a bad request
+        if (amount <= 0) {
+            throw new InvalidPaymentAmountException("Payment amount must be positive: " + req.getAmount(), 400);
+        }
+        long left = ledger.debit(userId, amount);
+        if (left == BalanceLedger.REJECTED) {
             throw new NotEnoughMoneyException("Not enough money for user " + userId, 400);
         }
-        balance.setBalance(balance.getBalance() - req.getAmount());
-        log.info("Processed payment of {} for user {}. New balance: {}", req.getAmount(), userId, balance.getBalance());
-        return balance;
+        log.info("Processed payment of {} for user {}. New balance: {}", req.getAmount(), userId, toMajor(left));
+        return new UserBalance(userId, toMajor(left));
     }
 
+    static long toMinor(float amount) {
+        return Math.round(amount * 100.0);
+    }
+
+    static float toMajor(long amount) {
+        return amount / 100.0f;
+    }
 }
@@ -0,0 +1,45 @@
+package org.yandex.paymentservice.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.yandex.paymentservice.model.exception.InvalidPaymentAmountException;
+import org.yandex.paymentservice.service.PaymentService;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(PaymentController.class)
+class PaymentControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private PaymentService paymentService;
+
+    @Test
+    void processPayment_WhenServiceRejectsAmount_ShouldAnswerBadRequest() {
+        when(paymentService.tryProcessPayment(eq(1L), any()))
+                .thenThrow(new InvalidPaymentAmountException("Payment amount must be positive: 0.004", 400));
+
+        webTestClient.post().uri("/api/v1/payment/1/pay")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\": 10}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void processPayment_OfZeroAmount_ShouldAnswerBadRequest() {
+        webTestClient.post().uri("/api/v1/payment/1/pay")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\": 0}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
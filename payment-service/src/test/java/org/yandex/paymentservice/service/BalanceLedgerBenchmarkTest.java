@@ -0,0 +1,64 @@
+package org.yandex.paymentservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debit throughput of the ledger from 8 threads, against the number of users they pay for:
+ * one user is the worst case of contention on a single balance.
+ * Run with -Dbenchmark=true.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class BalanceLedgerBenchmarkTest {
+
+    private static final int THREADS = 8;
+    private static final int DEBITS_PER_THREAD = 2_000_000;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 8, 1024})
+    void debit(int users) throws Exception {
+        run(users);
+        long elapsed = run(users);
+        long operations = (long) THREADS * DEBITS_PER_THREAD;
+        log.info("{} debits over {} users from {} threads: {} ms, {} ops/s",
+                operations, users, THREADS, elapsed / 1_000_000, operations * 1_000_000_000L / elapsed);
+    }
+
+    private long run(int users) throws Exception {
+        BalanceLedger ledger = new BalanceLedger(Long.MAX_VALUE);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                done.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < DEBITS_PER_THREAD; i++) {
+                        ledger.debit((long) ((thread + i) % users), 1);
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : done) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+            return System.nanoTime() - begin;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.yandex.paymentservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BalanceLedgerTest {
+
+    private final BalanceLedger ledger = new BalanceLedger(50_000);
+
+    @Test
+    void debit_WhenBalanceCoversAmount_ShouldReturnBalanceLeft() {
+        assertThat(ledger.debit(1L, 12_550)).isEqualTo(37_450);
+        assertThat(ledger.balance(1L)).isEqualTo(37_450);
+    }
+
+    @Test
+    void debit_WhenBalanceIsNotEnough_ShouldRejectAndKeepBalance() {
+        ledger.debit(1L, 40_000);
+
+        assertThat(ledger.debit(1L, 10_001)).isEqualTo(BalanceLedger.REJECTED);
+        assertThat(ledger.balance(1L)).isEqualTo(10_000);
+        assertThat(ledger.debit(1L, 10_000)).isZero();
+    }
+
+    @Test
+    void debit_OfNonPositiveAmount_ShouldFail() {
+        assertThatThrownBy(() -> ledger.debit(1L, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void debit_FromManyThreadsOfOneUser_ShouldNeitherOverdrawNorLoseUpdates() throws Exception {
+        int threads = 16;
+        int attemptsPerThread = 1_000;
+        long amount = 7;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> accepted = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                accepted.add(executor.submit(() -> {
+                    start.await();
+                    long count = 0;
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        if (ledger.debit(1L, amount) != BalanceLedger.REJECTED) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }));
+            }
+            start.countDown();
+            long total = 0;
+            for (Future<Long> future : accepted) {
+                total += future.get(1, TimeUnit.MINUTES);
+            }
+
+            // 16000 attempts of 7 ask for more than 50000, the balance runs out exactly
+            assertThat(total).isEqualTo(50_000 / amount);
+            assertThat(ledger.balance(1L)).isEqualTo(50_000 - total * amount);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void debit_FromManyThreadsOfDifferentUsers_ShouldKeepBalancesApart() throws Exception {
+        int users = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(users * 2);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < users * 2; t++) {
+                long userId = t % users;
+                done.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1_000; i++) {
+                        ledger.debit(userId, 10);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : done) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+
+            for (long userId = 0; userId < users; userId++) {
+                assertThat(ledger.balance(userId)).isEqualTo(50_000 - 2 * 1_000 * 10);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.yandex.paymentservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.yandex.paymentservice.model.PaymentRequest;
+import org.yandex.paymentservice.model.exception.InvalidPaymentAmountException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PaymentServiceTest {
+
+    private final BalanceLedger ledger = new BalanceLedger(50_000);
+    private final PaymentService paymentService = new PaymentService(ledger);
+
+    @Test
+    void tryProcessPayment_OfAmountBelowOneKopeck_ShouldRejectAsBadRequestAndKeepBalance() {
+        assertThatThrownBy(() -> paymentService.tryProcessPayment(1L, new PaymentRequest(0.004f)))
+                .isInstanceOf(InvalidPaymentAmountException.class)
+                .satisfies(e -> assertThat(((InvalidPaymentAmountException) e).extCode).isEqualTo(400));
+        assertThat(ledger.balance(1L)).isEqualTo(50_000);
+    }
+}
@@ -0,0 +1,56 @@
+package org.yandex.mymarketapp.configuration;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.yandex.mymarketapp.service.CookieCart;
+import org.yandex.mymarketapp.service.CookieCartCodec;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+
+/**
+ * Binds the decoded cart cookie to the request and writes it back if the request changed the cart.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "market.cart.anonymous-storage", havingValue = "cookie")
+public class CookieCartWebFilter implements WebFilter {
+
+    public static final String CART_COOKIE = "cart";
+
+    private final CookieCartCodec codec;
+
+    @Value("${market.cart.session-cookie-max-age:P30D}")
+    private Duration cookieMaxAge;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        HttpCookie cookie = exchange.getRequest().getCookies().getFirst(CART_COOKIE);
+        CookieCart cart = new CookieCart(cookie == null ? Collections.emptyMap() : codec.decode(cookie.getValue()));
+        exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() -> {
+            if (cart.isDirty()) {
+                exchange.getResponse().addCookie(toCookie(cart));
+            }
+        }));
+        return chain.filter(exchange)
+                .contextWrite(ctx -> ctx.put(CookieCart.class, cart));
+    }
+
+    private ResponseCookie toCookie(CookieCart cart) {
+        boolean empty = cart.size() == 0;
+        return ResponseCookie.from(CART_COOKIE, empty ? "" : codec.encode(cart.counts()))
+                .path("/")
+                .httpOnly(true)
+                .sameSite("Lax")
+                .maxAge(empty ? Duration.ZERO : cookieMaxAge)
+                .build();
+    }
+}
@@ -0,0 +1,81 @@
+package org.yandex.mymarketapp.configuration;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.BindingContext;
+import org.springframework.web.reactive.result.method.HandlerMethodArgumentResolver;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+import org.yandex.mymarketapp.controller.CurrentUser;
+import reactor.core.publisher.Mono;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+
+/**
+ * Resolves {@link CurrentUser} parameters. Anonymous visitors get a random cart id in a cookie
+ * and act as user {@code -id}, so their carts live in their own rows and cache keys
+ * instead of all sharing user 0.
+ */
+@RequiredArgsConstructor
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    public static final String USER_ID_PARAM = "userId";
+    public static final String CART_COOKIE = "cart_id";
+    public static final Long DEFAULT_USER_ID = 0L;
+
+    private static final String RESOLVED_ATTRIBUTE = CurrentUserArgumentResolver.class.getName() + ".userId";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final boolean anonymousSessions;
+    private final Duration cookieMaxAge;
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(CurrentUser.class);
+    }
+
+    @Override
+    public Mono<Object> resolveArgument(MethodParameter parameter, BindingContext bindingContext, ServerWebExchange exchange) {
+        return Mono.fromCallable(() -> exchange.getAttributes()
+                .computeIfAbsent(RESOLVED_ATTRIBUTE, key -> resolve(exchange)));
+    }
+
+    private Long resolve(ServerWebExchange exchange) {
+        String explicit = exchange.getRequest().getQueryParams().getFirst(USER_ID_PARAM);
+        if (StringUtils.hasText(explicit)) {
+            try {
+                return Long.valueOf(explicit);
+            } catch (NumberFormatException e) {
+                throw new ServerWebInputException("Invalid userId: " + explicit);
+            }
+        }
+        if (!anonymousSessions) {
+            return DEFAULT_USER_ID;
+        }
+        HttpCookie cookie = exchange.getRequest().getCookies().getFirst(CART_COOKIE);
+        Long cartId = cookie == null ? null : parseCartId(cookie.getValue());
+        if (cartId == null) {
+            cartId = 1 + RANDOM.nextLong(Long.MAX_VALUE - 1);
+            exchange.getResponse().addCookie(ResponseCookie.from(CART_COOKIE, Long.toString(cartId))
+                    .path("/")
+                    .httpOnly(true)
+                    .sameSite("Lax")
+                    .maxAge(cookieMaxAge)
+                    .build());
+        }
+        return -cartId;
+    }
+
+    private static Long parseCartId(String value) {
+        try {
+            long cartId = Long.parseLong(value);
+            return cartId > 0 ? cartId : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -45,10 +45,10 @@ public class RedisConfiguration {
                                 .entryTtl(Duration.of(1, ChronoUnit.MINUTES))
                                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(new Jackson2JsonRedisSerializer<>(CartItemsDto.class)))
                 ).withCacheConfiguration(
-                        "orders",
+                        "user_order_stats",
                         RedisCacheConfiguration.defaultCacheConfig()
-                                .entryTtl(Duration.of(3, ChronoUnit.MINUTES))
-                                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(new Jackson2JsonRedisSerializer<>(OrdersDto.class)))
+                                .entryTtl(Duration.of(30, ChronoUnit.MINUTES))
+                                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(new Jackson2JsonRedisSerializer<>(UserOrderStatsDto.class)))
                 );
     }
 
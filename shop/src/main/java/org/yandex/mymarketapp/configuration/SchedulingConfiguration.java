@@ -0,0 +1,9 @@
+package org.yandex.mymarketapp.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@EnableScheduling
+@Configuration
+public class SchedulingConfiguration {
+}
@@ -0,0 +1,23 @@
+package org.yandex.mymarketapp.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.result.method.annotation.ArgumentResolverConfigurer;
+
+import java.time.Duration;
+
+@Configuration
+public class WebConfiguration implements WebFluxConfigurer {
+
+    @Value("${market.cart.anonymous-sessions:false}")
+    private boolean anonymousSessions;
+
+    @Value("${market.cart.session-cookie-max-age:P30D}")
+    private Duration cookieMaxAge;
+
+    @Override
+    public void configureArgumentResolvers(ArgumentResolverConfigurer configurer) {
+        configurer.addCustomResolver(new CurrentUserArgumentResolver(anonymousSessions, cookieMaxAge));
+    }
+}
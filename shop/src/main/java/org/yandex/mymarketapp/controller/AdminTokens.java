@@ -0,0 +1,20 @@
+package org.yandex.mymarketapp.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+final class AdminTokens {
+
+    static final String ADMIN_TOKEN_HEADER = "X-Admin-Token";
+
+    private AdminTokens() {
+    }
+
+    /**
+     * Admin endpoints stay closed while no token is configured
+     */
+    static boolean matches(String configured, String token) {
+        return configured != null && !configured.isBlank() && token != null
+                && MessageDigest.isEqual(configured.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+}
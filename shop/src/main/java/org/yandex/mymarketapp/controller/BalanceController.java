@@ -19,7 +19,7 @@ public class BalanceController {
     private final BalanceApi balanceApi;
 
     @GetMapping("/balance")
-    public Mono<ResponseEntity<BalanceDto>> getBalance(@RequestParam(defaultValue = "0") Long userId) {
+    public Mono<ResponseEntity<BalanceDto>> getBalance(@CurrentUser Long userId) {
         return balanceApi.getUserBalance(userId)
                 .map(b -> new ResponseEntity<>(new BalanceDto(b.getBalance()), HttpStatus.OK))
                 .doOnError(ex -> log.error("Failed to get balance for user {}", userId, ex))
@@ -1,27 +1,51 @@
 package org.yandex.mymarketapp.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.util.UriComponentsBuilder;
+import org.yandex.mymarketapp.configuration.CurrentUserArgumentResolver;
 import org.yandex.mymarketapp.model.dto.BalanceDto;
+import org.yandex.mymarketapp.model.dto.CartChangeDto;
+import org.yandex.mymarketapp.model.dto.CheckoutStatusDto;
+import org.yandex.mymarketapp.model.exception.CartIsFullException;
+import org.yandex.mymarketapp.model.exception.CheckoutRejectedException;
+import org.yandex.mymarketapp.model.exception.ItemNotFoundException;
 import org.yandex.mymarketapp.service.CartService;
-import org.yandex.mymarketapp.service.OrderService;
+import org.yandex.mymarketapp.service.CheckoutIdempotency;
+import org.yandex.mymarketapp.service.CheckoutQueue;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
 @Controller
 @RequestMapping("/cart")
 @RequiredArgsConstructor
 public class CartController {
 
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
     private final CartService cartService;
-    private final OrderService orderService;
+    private final CheckoutIdempotency checkoutIdempotency;
+    private final CheckoutQueue checkoutQueue;
+
+    @Value("${market.cart.bulk.max-changes:500}")
+    private int maxBulkChanges;
+
+    @Value("${market.orders.checkout.async:false}")
+    private boolean asyncCheckout;
 
     @GetMapping("/items")
-    public Mono<String> showCart(Model model, @RequestParam(defaultValue = "0") Long userId) {
+    public Mono<String> showCart(Model model, @CurrentUser Long userId) {
         return cartService.getCartItems(userId)
                 .flatMap( cart -> {
                     double totalPrice = cart.items().stream().mapToDouble(e->e.getPrice()*e.getCount()).sum();
@@ -32,11 +56,12 @@ public class CartController {
                     model.addAttribute("moneyEnough", tuple.getT2());
                     double totalPrice =  tuple.getT1().items().stream().mapToDouble(e-> e.getPrice()*e.getCount()).sum();
                     model.addAttribute("total", totalPrice);
+                    model.addAttribute("checkoutKey", UUID.randomUUID().toString());
                 }).thenReturn("cart");
     }
 
     @PostMapping("/items")
-    public Mono<String> updateCartItem(@ModelAttribute CartBuyForm form, @RequestParam(defaultValue = "0") Long userId) {
+    public Mono<String> updateCartItem(@ModelAttribute CartBuyForm form, @CurrentUser Long userId) {
 
         if (form == null || form.action() == null || form.id() == null) {
             return Mono.just(UriComponentsBuilder.fromPath("redirect:/cart/items")
@@ -55,11 +80,88 @@ public class CartController {
         return operation.thenReturn("redirect:/cart/items");
     }
 
+    @PostMapping(value = "/items/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Mono<ResponseEntity<Void>> updateCartItems(@RequestBody List<CartChangeDto> changes, @CurrentUser Long userId) {
+        if (changes.size() > maxBulkChanges) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Too many changes, max is " + maxBulkChanges));
+        }
+        if (!changes.stream().allMatch(CartChangeDto::isValid)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every change needs itemId and quantity, SET quantity cannot be negative"));
+        }
+        return cartService.applyChanges(userId, changes)
+                .thenReturn(ResponseEntity.noContent().build());
+    }
+
+    /**
+     * The key comes from the Idempotency-Key header or from the cart form, a repeated key does not create another order.
+     * In the async checkout mode the checkout is only queued and the order page polls for it, with the same userId parameter.
+     */
     @PostMapping("/buy")
-    public Mono<String> buyItems(@RequestParam(defaultValue = "0") Long userId) {
-        return orderService.makeOrder(userId).thenReturn("redirect:/orders");
+    public Mono<String> buyItems(@ModelAttribute CheckoutForm form, @CurrentUser Long userId,
+                                 @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String headerKey,
+                                 @RequestParam(value = CurrentUserArgumentResolver.USER_ID_PARAM, required = false) String userParam) {
+        String key = headerKey != null ? headerKey : form == null ? null : form.idempotencyKey();
+        if (key != null && (key.isBlank() || key.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            return Mono.error(invalidKey());
+        }
+        if (asyncCheckout) {
+            return checkoutQueue.submit(userId, key)
+                    .map(status -> UriComponentsBuilder.fromPath("redirect:/orders")
+                            .queryParam("checkout", status.id())
+                            .queryParamIfPresent(CurrentUserArgumentResolver.USER_ID_PARAM, Optional.ofNullable(userParam))
+                            .encode()
+                            .build()
+                            .toUriString());
+        }
+        return checkoutIdempotency.checkout(userId, key).thenReturn("redirect:/orders");
+    }
+
+    /**
+     * Queues a checkout and answers at once with 202 and the location of its state
+     */
+    @PostMapping("/checkouts")
+    @ResponseBody
+    public Mono<ResponseEntity<CheckoutStatusDto>> submitCheckout(@CurrentUser Long userId,
+                                                                  @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String key) {
+        if (key != null && (key.isBlank() || key.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            return Mono.error(invalidKey());
+        }
+        return checkoutQueue.submit(userId, key)
+                .map(status -> ResponseEntity.accepted()
+                        .location(UriComponentsBuilder.fromPath("/cart/checkouts/{id}").build(status.id()))
+                        .body(status));
+    }
+
+    @GetMapping("/checkouts/{id}")
+    @ResponseBody
+    public Mono<CheckoutStatusDto> checkoutStatus(@PathVariable String id, @CurrentUser Long userId) {
+        return checkoutQueue.status(userId, id)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Checkout " + id + " not found")));
+    }
+
+    private static ResponseStatusException invalidKey() {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Idempotency key must have from 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
     }
 
 
     public record CartBuyForm(Long id, String action){};
+
+    public record CheckoutForm(String idempotencyKey){};
+
+    @ExceptionHandler(ItemNotFoundException.class)
+    public Mono<String> handleItemNotFound(ItemNotFoundException ex) {
+        return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, ex.getMessage(), ex));
+    }
+
+    @ExceptionHandler(CheckoutRejectedException.class)
+    public Mono<String> handleCheckoutRejected(CheckoutRejectedException ex) {
+        return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), ex));
+    }
+
+    @ExceptionHandler(CartIsFullException.class)
+    public Mono<String> handleCartIsFull(CartIsFullException ex) {
+        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package org.yandex.mymarketapp.controller;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Id of the user the request acts for: the explicit {@code userId} query parameter if present,
+ * otherwise a synthetic (negative) id bound to the visitor's cart cookie.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CurrentUser {
+}
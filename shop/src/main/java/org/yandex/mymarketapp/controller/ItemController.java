@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import org.yandex.mymarketapp.model.domain.CartPosition;
 import org.yandex.mymarketapp.model.dto.ItemDto;
+import org.yandex.mymarketapp.model.exception.CartIsFullException;
 import org.yandex.mymarketapp.model.exception.ItemNotFoundException;
 import org.yandex.mymarketapp.service.CartService;
 import org.yandex.mymarketapp.service.ItemService;
@@ -26,7 +27,7 @@ public class ItemController {
 
 
     @GetMapping("/{id}")
-    public Mono<String> showItem(@PathVariable Long id, @RequestParam(defaultValue = "0") Long userId, Model model) {
+    public Mono<String> showItem(@PathVariable Long id, @CurrentUser Long userId, Model model) {
         return Mono.zip(itemService.getItemById(id), cartService.getCountOfItemInCartByUserId(userId, id))
                 .doOnNext(t -> model.addAttribute("item", new ItemDto(t.getT1(), t.getT2())))
                 .thenReturn("item");
@@ -34,7 +35,7 @@ public class ItemController {
 
 
     @PostMapping("/{id}")
-    public Mono<String> updateItemQuantity(@PathVariable Long id, @ModelAttribute ActionForm form, @RequestParam(defaultValue = "0") Long userId) {
+    public Mono<String> updateItemQuantity(@PathVariable Long id, @ModelAttribute ActionForm form, @CurrentUser Long userId) {
         if (form == null || form.action() == null) {
             return Mono.just("redirect:/items/" + id);
         }
@@ -56,4 +57,9 @@ public class ItemController {
         return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, ex.getMessage(), ex));
     }
 
+    @ExceptionHandler(CartIsFullException.class)
+    public Mono<String> handleCartIsFull(CartIsFullException ex) {
+        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex));
+    }
+
 }
\ No newline at end of file
@@ -2,23 +2,23 @@ package org.yandex.mymarketapp.controller;
 
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.util.UriComponentsBuilder;
-import org.yandex.mymarketapp.model.dto.CartItemsDto;
-import org.yandex.mymarketapp.model.dto.ItemDto;
-import org.yandex.mymarketapp.model.dto.ViewPage;
+import org.yandex.mymarketapp.model.dto.CartCounts;
+import org.yandex.mymarketapp.model.exception.CartIsFullException;
 import org.yandex.mymarketapp.service.CartService;
 import org.yandex.mymarketapp.service.ItemService;
 import reactor.core.publisher.Mono;
 
-import java.util.List;
-
 
 @Controller
 @RequiredArgsConstructor
@@ -33,7 +33,7 @@ public class ItemsController {
             @RequestParam(name = "sort", required = false, defaultValue = "NO") String sort,
             @RequestParam(name = "pageSize", required = false, defaultValue = "10") int pageSize,
             @RequestParam(name = "pageNumber", required = false, defaultValue = "1") int pageNumber,
-            @RequestParam(name = "userId", defaultValue = "0") Long userId,
+            @CurrentUser Long userId,
             Model model) {
 
         model.addAttribute("search", search);
@@ -46,14 +46,14 @@ public class ItemsController {
                         cartService.getCartItems(userId)
                 ))
                 .doOnNext(t -> {
-                    this.fillPageItemsWithCountFromCart(t.getT1(), t.getT2());
                     model.addAttribute("items", t.getT1().items());
+                    model.addAttribute("cart", CartCounts.of(t.getT2().items()));
                 })
                 .thenReturn("items");
     }
 
     @PostMapping("/items")
-    public Mono<String> handleItemAction(@ModelAttribute MainFormData data, @RequestParam(defaultValue = "0") Long userId) {
+    public Mono<String> handleItemAction(@ModelAttribute MainFormData data, @CurrentUser Long userId) {
         if (data == null || data.action() == null || data.id() == null) {
             return Mono.just(UriComponentsBuilder.fromPath("redirect:/")
                     .queryParam("search", data== null || data.search == null ? "" : data.search)
@@ -82,12 +82,10 @@ public class ItemsController {
         ));
     }
 
-    public record MainFormData(Long id, String action, String search,  String sort, Integer pageSize, Integer pageNumber) {}
-
-    private void fillPageItemsWithCountFromCart(ViewPage vp, CartItemsDto cartItems) {
-        List<ItemDto> l = vp.items().stream().flatMap(e -> e.stream()).toList();
-        for (ItemDto it : cartItems.items()){
-            l.stream().filter(e -> e.getId() == it.getId()).findFirst().ifPresent(e -> e.setCount(it.getCount()));
-        }
+    @ExceptionHandler(CartIsFullException.class)
+    public Mono<String> handleCartIsFull(CartIsFullException ex) {
+        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex));
     }
+
+    public record MainFormData(Long id, String action, String search,  String sort, Integer pageSize, Integer pageNumber) {}
 }
@@ -8,10 +8,14 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.server.ResponseStatusException;
+import org.yandex.mymarketapp.model.dto.OrdersDto;
+import org.yandex.mymarketapp.model.dto.UserOrderStatsDto;
 import org.yandex.mymarketapp.model.exception.ItemNotFoundException;
 import org.yandex.mymarketapp.model.exception.OrderNotFoundException;
 import org.yandex.mymarketapp.service.OrderService;
+import org.yandex.mymarketapp.service.UserOrderStatsService;
 import reactor.core.publisher.Mono;
 
 
@@ -20,16 +24,33 @@ import reactor.core.publisher.Mono;
 public class OrderController {
 
     private final OrderService orderService;
+    private final UserOrderStatsService statsService;
 
     @GetMapping("/orders")
-    public Mono<String> showOrders(Model model, @RequestParam(defaultValue = "0") Long userId) {
-        return orderService.getAllOrders(userId)
-                .doOnNext(dto -> model.addAttribute("orders", dto.orders()))
+    public Mono<String> showOrders(Model model, @CurrentUser Long userId,
+                                   @RequestParam(required = false) Long before,
+                                   @RequestParam(required = false) String checkout) {
+        return orderService.getOrdersPage(userId, before)
+                .zipWith(statsService.getStats(userId))
+                .doOnNext(page -> {
+                    OrdersDto dto = page.getT1();
+                    model.addAttribute("checkout", checkout);
+                    model.addAttribute("orders", dto.orders());
+                    model.addAttribute("nextBefore", dto.nextBefore());
+                    model.addAttribute("before", before);
+                    model.addAttribute("stats", page.getT2());
+                })
                 .thenReturn("orders");
     }
 
+    @GetMapping("/orders/stats")
+    @ResponseBody
+    public Mono<UserOrderStatsDto> getOrderStats(@CurrentUser Long userId) {
+        return statsService.getStats(userId);
+    }
+
     @GetMapping("/orders/{id}")
-    public Mono<String> showOrderDetails(@PathVariable Long id, Model model, @RequestParam(defaultValue = "0") Long userId) {
+    public Mono<String> showOrderDetails(@PathVariable Long id, Model model, @CurrentUser Long userId) {
         return orderService.getOrderById(id, userId)
                 .doOnNext(order -> model.addAttribute("order", order))
                 .thenReturn("order");
@@ -0,0 +1,39 @@
+package org.yandex.mymarketapp.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.yandex.mymarketapp.model.dto.OrderExportDto;
+import org.yandex.mymarketapp.service.OrderService;
+import reactor.core.publisher.Flux;
+
+/**
+ * Streams orders with their positions as newline delimited JSON, one order per line
+ */
+@RestController
+@RequiredArgsConstructor
+public class OrderExportController {
+
+    private final OrderService orderService;
+
+    @Value("${market.admin.token:}")
+    private String adminToken;
+
+    @GetMapping(value = "/orders/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<OrderExportDto> exportOrders(@CurrentUser Long userId) {
+        return orderService.exportOrders(userId);
+    }
+
+    @GetMapping(value = "/admin/orders/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<OrderExportDto> exportAllOrders(@RequestHeader(value = AdminTokens.ADMIN_TOKEN_HEADER, required = false) String token) {
+        if (!AdminTokens.matches(adminToken, token)) {
+            return Flux.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Admin token required"));
+        }
+        return orderService.exportAllOrders();
+    }
+}
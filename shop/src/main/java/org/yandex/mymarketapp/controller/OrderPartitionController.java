@@ -0,0 +1,55 @@
+package org.yandex.mymarketapp.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.yandex.mymarketapp.model.dto.OrderPartitionDto;
+import org.yandex.mymarketapp.service.OrderPartitionService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/admin/order-partitions")
+@RequiredArgsConstructor
+public class OrderPartitionController {
+
+    private final OrderPartitionService partitionService;
+
+    @Value("${market.admin.token:}")
+    private String adminToken;
+
+    @GetMapping
+    public Flux<OrderPartitionDto> partitions(@RequestHeader(value = AdminTokens.ADMIN_TOKEN_HEADER, required = false) String token) {
+        if (!AdminTokens.matches(adminToken, token)) {
+            return Flux.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Admin token required"));
+        }
+        return partitionService.getPartitions();
+    }
+
+    /**
+     * Creates the partitions missing ahead of the order ids right away
+     */
+    @PostMapping
+    public Mono<Long> addPartitions(@RequestHeader(value = AdminTokens.ADMIN_TOKEN_HEADER, required = false) String token) {
+        if (!AdminTokens.matches(adminToken, token)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Admin token required"));
+        }
+        return partitionService.ensurePartitions();
+    }
+
+    @PostMapping("/{fromId}/detach")
+    public Mono<OrderPartitionDto> detach(@RequestHeader(value = AdminTokens.ADMIN_TOKEN_HEADER, required = false) String token,
+                                          @PathVariable long fromId) {
+        if (!AdminTokens.matches(adminToken, token)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Admin token required"));
+        }
+        return partitionService.detach(fromId);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public Mono<Void> handleBadPartition(IllegalArgumentException ex) {
+        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex));
+    }
+}
@@ -0,0 +1,53 @@
+package org.yandex.mymarketapp.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.yandex.mymarketapp.model.dto.DailySalesDto;
+import org.yandex.mymarketapp.model.dto.ItemSalesDto;
+import org.yandex.mymarketapp.service.SalesReportService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+/**
+ * Pre-aggregated sales for dashboards
+ */
+@RestController
+@RequestMapping("/admin/reports")
+@RequiredArgsConstructor
+public class SalesReportController {
+
+    private final SalesReportService reportService;
+
+    @Value("${market.admin.token:}")
+    private String adminToken;
+
+    @GetMapping("/daily-sales")
+    public Flux<DailySalesDto> dailySales(@RequestHeader(value = AdminTokens.ADMIN_TOKEN_HEADER, required = false) String token,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (!AdminTokens.matches(adminToken, token)) {
+            return Flux.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Admin token required"));
+        }
+        return reportService.getDailySales(from, to);
+    }
+
+    @GetMapping("/item-sales")
+    public Flux<ItemSalesDto> itemSales(@RequestHeader(value = AdminTokens.ADMIN_TOKEN_HEADER, required = false) String token,
+                                        @RequestParam(defaultValue = "20") int limit) {
+        if (!AdminTokens.matches(adminToken, token)) {
+            return Flux.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "Admin token required"));
+        }
+        return reportService.getTopItems(limit);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public Mono<Void> handleBadRange(IllegalArgumentException ex) {
+        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex));
+    }
+}
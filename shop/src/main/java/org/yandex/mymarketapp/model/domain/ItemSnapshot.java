@@ -0,0 +1,38 @@
+package org.yandex.mymarketapp.model.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Item fields an order position was bought with, stored once per distinct content in item_snapshots.
+ * The hash is the same as item_snapshot_hash in the database: sha256 of the length-prefixed fields, in hex.
+ */
+public record ItemSnapshot(String hash, String title, String description, String imgPath) {
+
+    public static ItemSnapshot of(String title, String description, String imgPath) {
+        return new ItemSnapshot(hashOf(title, description, imgPath), title, description, imgPath);
+    }
+
+    public static String hashOf(String title, String description, String imgPath) {
+        StringBuilder content = new StringBuilder();
+        appendField(content, title);
+        if (description == null) {
+            content.append('-');
+        } else {
+            appendField(content, description);
+        }
+        appendField(content, imgPath);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void appendField(StringBuilder content, String value) {
+        content.append(value.getBytes(StandardCharsets.UTF_8).length).append(':').append(value);
+    }
+}
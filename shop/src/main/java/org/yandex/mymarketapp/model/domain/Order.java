@@ -20,8 +20,14 @@ public class Order {
     @Min(value = 0)
     private Double totalSum;
 
+    /**
+     * The anonymous user, as the column default
+     */
     @Column
-    private Long userId;
+    private Long userId = 0L;
+
+    @Column
+    private OrderStatus status = OrderStatus.PENDING_PAYMENT;
 
     @ReadOnlyProperty
     private List<OrderPosition> items;
@@ -3,6 +3,7 @@ package org.yandex.mymarketapp.model.domain;
 import jakarta.validation.constraints.Positive;
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.relational.core.mapping.Column;
 import org.springframework.data.relational.core.mapping.Table;
 
@@ -14,11 +15,18 @@ public class OrderPosition {
     private long id;
     @Column("order_id")
     private Long orderId;
-    @Column
+    @Column("item_id")
+    private Long itemId;
+    /**
+     * Hex hash of the item snapshot holding title, description and image path
+     */
+    @Transient
+    private String snapshotHash;
+    @Transient
     private String title;
-    @Column
+    @Transient
     private String description;
-    @Column
+    @Transient
     private String imgPath;
     @Positive
     private double price;
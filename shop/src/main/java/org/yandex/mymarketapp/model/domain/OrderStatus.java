@@ -0,0 +1,7 @@
+package org.yandex.mymarketapp.model.domain;
+
+public enum OrderStatus {
+    PENDING_PAYMENT,
+    PAID,
+    CANCELLED
+}
@@ -0,0 +1,47 @@
+package org.yandex.mymarketapp.model.domain;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Payment of an order waiting to be sent to the payment service, written in the checkout transaction
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("payment_outbox")
+public class PaymentOutboxEntry {
+
+    @Id
+    private Long id;
+
+    @Column("order_id")
+    private Long orderId;
+
+    @Column("user_id")
+    private Long userId;
+
+    @Column("amount")
+    private double amount;
+
+    @Column("attempts")
+    private int attempts;
+
+    @Column("next_attempt_at")
+    private OffsetDateTime nextAttemptAt;
+
+    @Column("last_error")
+    private String lastError;
+
+    public PaymentOutboxEntry(Order order) {
+        this.orderId = order.getId();
+        this.userId = order.getUserId();
+        this.amount = order.getTotalSum();
+        this.nextAttemptAt = OffsetDateTime.now();
+    }
+}
@@ -0,0 +1,37 @@
+package org.yandex.mymarketapp.model.domain;
+
+/**
+ * Change of a cart position count: {@code count -> max(count + shift, floor)},
+ * or {@code count -> floor} when {@code reset} is set.
+ * Such changes compose into a change of the same shape, so any sequence of
+ * PLUS/MINUS/DELETE clicks folds into one write with the same result.
+ */
+public record QuantityChange(boolean reset, int shift, int floor) {
+
+    public static final QuantityChange NONE = new QuantityChange(false, 0, 0);
+    public static final QuantityChange PLUS = new QuantityChange(false, 1, 0);
+    public static final QuantityChange MINUS = new QuantityChange(false, -1, 0);
+    public static final QuantityChange REMOVE = new QuantityChange(true, 0, 0);
+
+    public static QuantityChange delta(int delta) {
+        return new QuantityChange(false, delta, 0);
+    }
+
+    public static QuantityChange set(int count) {
+        return new QuantityChange(true, 0, Math.max(count, 0));
+    }
+
+    public QuantityChange andThen(QuantityChange next) {
+        if (next.reset) {
+            return next;
+        }
+        if (reset) {
+            return set(Math.max(floor + next.shift, next.floor));
+        }
+        return new QuantityChange(false, shift + next.shift, Math.max(floor + next.shift, next.floor));
+    }
+
+    public int applyTo(int count) {
+        return reset ? floor : Math.max(count + shift, floor);
+    }
+}
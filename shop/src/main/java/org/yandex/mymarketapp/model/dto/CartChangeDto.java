@@ -0,0 +1,21 @@
+package org.yandex.mymarketapp.model.dto;
+
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+
+/**
+ * One line of a bulk cart update: add {@code quantity} (DELTA, may be negative) or set it (SET)
+ */
+public record CartChangeDto(Long itemId, Integer quantity, Mode mode) {
+
+    public enum Mode {
+        DELTA, SET
+    }
+
+    public boolean isValid() {
+        return itemId != null && quantity != null && (mode != Mode.SET || quantity >= 0);
+    }
+
+    public QuantityChange toQuantityChange() {
+        return mode == Mode.SET ? QuantityChange.set(quantity) : QuantityChange.delta(quantity);
+    }
+}
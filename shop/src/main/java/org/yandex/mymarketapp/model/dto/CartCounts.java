@@ -0,0 +1,72 @@
+package org.yandex.mymarketapp.model.dto;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * itemId -> count of a user's cart, open-addressing map over primitive arrays.
+ * Rendered next to shared catalog pages instead of writing counts into their items.
+ */
+public final class CartCounts {
+
+    public static final CartCounts EMPTY = new CartCounts(0);
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    private CartCounts(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 1) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public static CartCounts of(Collection<ItemDto> items) {
+        CartCounts counts = new CartCounts(items.size());
+        for (ItemDto item : items) {
+            counts.put(item.getId(), item.getCount() == null ? 0 : item.getCount());
+        }
+        return counts;
+    }
+
+    public static CartCounts of(Map<Long, Integer> counts) {
+        CartCounts cartCounts = new CartCounts(counts.size());
+        counts.forEach(cartCounts::put);
+        return cartCounts;
+    }
+
+    // positions with zero count are not stored, a cart never holds them
+    private void put(long itemId, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int slot = slot(itemId);
+        if (values[slot] == 0) {
+            if (size + 1 > keys.length / 2) {
+                throw new IllegalStateException("CartCounts capacity exceeded");
+            }
+            keys[slot] = itemId;
+            size++;
+        }
+        values[slot] = count;
+    }
+
+    public int get(long itemId) {
+        return values[slot(itemId)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // linear probing, a slot with zero value is free
+    private int slot(long itemId) {
+        int slot = (int) ((itemId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (values[slot] != 0 && keys[slot] != itemId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,11 @@
+package org.yandex.mymarketapp.model.dto;
+
+/**
+ * State of an asynchronous checkout, {@code id} is its idempotency key
+ */
+public record CheckoutStatusDto(String id, State state, Long orderId, String error) {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+}
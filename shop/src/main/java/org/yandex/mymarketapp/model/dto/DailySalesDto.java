@@ -0,0 +1,9 @@
+package org.yandex.mymarketapp.model.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Orders placed on a day (UTC), cancelled orders excluded
+ */
+public record DailySalesDto(LocalDate day, long orders, long units, double revenue) {
+}
@@ -0,0 +1,7 @@
+package org.yandex.mymarketapp.model.dto;
+
+/**
+ * Sales of an item over all time, cancelled orders excluded
+ */
+public record ItemSalesDto(long itemId, String title, long orders, long units, double revenue) {
+}
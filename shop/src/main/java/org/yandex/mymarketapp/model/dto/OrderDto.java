@@ -1,5 +1,7 @@
 package org.yandex.mymarketapp.model.dto;
 
+import org.yandex.mymarketapp.model.domain.OrderStatus;
+
 import java.util.List;
 
-public record OrderDto (long id, List<ItemDto> items, double totalSum) {}
+public record OrderDto (long id, List<ItemDto> items, double totalSum, OrderStatus status) {}
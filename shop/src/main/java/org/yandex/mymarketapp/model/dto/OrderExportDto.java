@@ -0,0 +1,5 @@
+package org.yandex.mymarketapp.model.dto;
+
+import java.util.List;
+
+public record OrderExportDto(long id, long userId, double totalSum, List<ItemDto> items) {}
@@ -0,0 +1,7 @@
+package org.yandex.mymarketapp.model.dto;
+
+/**
+ * A range of order ids, {@code fromId} inclusive and {@code toId} exclusive, with the partitions of orders and their positions
+ */
+public record OrderPartitionDto(String orders, String orderPositions, long fromId, long toId) {
+}
@@ -2,5 +2,12 @@ package org.yandex.mymarketapp.model.dto;
 
 import java.util.List;
 
-public record OrdersDto (List<OrderDto> orders) {
+/**
+ * One page of the order history, newest first. {@code nextBefore} is the cursor of the next (older) page, null on the last one
+ */
+public record OrdersDto (List<OrderDto> orders, Long nextBefore) {
+
+    public OrdersDto(List<OrderDto> orders) {
+        this(orders, null);
+    }
 }
@@ -0,0 +1,9 @@
+package org.yandex.mymarketapp.model.dto;
+
+/**
+ * Orders of a user and money spent on them, cancelled orders are not counted
+ */
+public record UserOrderStatsDto(long ordersCount, double totalSpent) {
+
+    public static final UserOrderStatsDto EMPTY = new UserOrderStatsDto(0, 0.0);
+}
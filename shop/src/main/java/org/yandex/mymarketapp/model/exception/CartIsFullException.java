@@ -0,0 +1,7 @@
+package org.yandex.mymarketapp.model.exception;
+
+public class CartIsFullException extends MarketException {
+    public CartIsFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package org.yandex.mymarketapp.model.exception;
+
+public class CheckoutRejectedException extends MarketException {
+    public CheckoutRejectedException(String message) {
+        super(message);
+    }
+}
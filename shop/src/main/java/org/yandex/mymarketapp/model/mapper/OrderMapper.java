@@ -7,6 +7,7 @@ import org.yandex.mymarketapp.model.domain.Order;
 import org.yandex.mymarketapp.model.domain.OrderPosition;
 import org.yandex.mymarketapp.model.dto.ItemDto;
 import org.yandex.mymarketapp.model.dto.OrderDto;
+import org.yandex.mymarketapp.model.dto.OrderExportDto;
 
 import java.util.List;
 
@@ -14,6 +15,9 @@ import java.util.List;
 public interface OrderMapper {
 
     @Mapping(target = "id", ignore = true)
+    @Mapping(target = "orderId", ignore = true)
+    @Mapping(target = "itemId", source = "id")
+    @Mapping(target = "snapshotHash", ignore = true)
     OrderPosition toEntity(ItemDto dto);
 
     List<OrderPosition> toEntities(List<ItemDto> dtos);
@@ -23,4 +27,6 @@ public interface OrderMapper {
     OrderDto toDto(Order entity);
 
     List<OrderDto> toDtos(List<Order> orders);
+
+    OrderExportDto toExportDto(Order entity);
 }
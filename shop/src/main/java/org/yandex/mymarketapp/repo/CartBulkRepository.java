@@ -0,0 +1,83 @@
+package org.yandex.mymarketapp.repo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class CartBulkRepository {
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Applies changes to several positions of the user's cart in one statement.
+     * Returns ids of items that would be added to the cart but do not exist; nothing is inserted for them.
+     * The positions are read with a row lock, so concurrent changes of them are applied one after another.
+     * A position missing at the start may be inserted concurrently, the change is then applied to the count it got.
+     */
+    public Flux<Long> applyChanges(Long userId, Map<Long, QuantityChange> changes) {
+        String sql = """
+            WITH changes AS (
+                SELECT * FROM unnest(:itemIds::bigint[], :resets::boolean[], :shifts::int[], :floors::int[])
+                    AS c(item_id, reset, shift, floor)
+            ), locked AS (
+                SELECT id, item_id, count FROM cart_positions
+                WHERE user_id = :userId AND item_id = ANY(:itemIds::bigint[])
+                FOR UPDATE
+            ), computed AS (
+                SELECT c.item_id, cp.id AS position_id, i.id IS NULL AS missing,
+                       CASE WHEN c.reset THEN c.floor
+                            ELSE GREATEST(COALESCE(cp.count, 0) + c.shift, c.floor) END AS new_count
+                FROM changes c
+                LEFT JOIN items i ON i.id = c.item_id
+                LEFT JOIN locked cp ON cp.item_id = c.item_id
+            ), deleted AS (
+                DELETE FROM cart_positions cp USING computed c
+                WHERE cp.id = c.position_id AND c.new_count = 0
+            ), updated AS (
+                UPDATE cart_positions cp SET count = c.new_count, updated_at = now()
+                FROM computed c
+                WHERE cp.id = c.position_id AND c.new_count > 0 AND cp.count <> c.new_count
+            ), inserted AS (
+                INSERT INTO cart_positions (item_id, user_id, count)
+                SELECT c.item_id, :userId, c.new_count FROM computed c
+                WHERE c.position_id IS NULL AND c.new_count > 0 AND NOT c.missing
+                ON CONFLICT (user_id, item_id) DO UPDATE
+                SET count = (SELECT CASE WHEN ch.reset THEN ch.floor
+                                         ELSE GREATEST(cart_positions.count + ch.shift, ch.floor) END
+                             FROM changes ch WHERE ch.item_id = EXCLUDED.item_id),
+                    updated_at = now()
+            )
+            SELECT item_id FROM computed
+            WHERE position_id IS NULL AND new_count > 0 AND missing
+            """;
+
+        int size = changes.size();
+        Long[] itemIds = new Long[size];
+        Boolean[] resets = new Boolean[size];
+        Integer[] shifts = new Integer[size];
+        Integer[] floors = new Integer[size];
+        int i = 0;
+        for (Map.Entry<Long, QuantityChange> change : changes.entrySet()) {
+            itemIds[i] = change.getKey();
+            resets[i] = change.getValue().reset();
+            shifts[i] = change.getValue().shift();
+            floors[i] = change.getValue().floor();
+            i++;
+        }
+
+        return databaseClient.sql(sql)
+                .bind("userId", userId)
+                .bind("itemIds", itemIds)
+                .bind("resets", resets)
+                .bind("shifts", shifts)
+                .bind("floors", floors)
+                .map(row -> row.get("item_id", Long.class))
+                .all();
+    }
+}
@@ -3,6 +3,8 @@ package org.yandex.mymarketapp.repo;
 import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.relational.core.sql.LockMode;
+import org.springframework.data.relational.repository.Lock;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.yandex.mymarketapp.model.domain.CartPosition;
@@ -10,24 +12,71 @@ import org.yandex.mymarketapp.model.dto.ItemDto;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+
 @Repository
 public interface CartPositionsRepository extends R2dbcRepository<CartPosition, Long> {
 
+    /**
+     * First key of the advisory locks of carts, the second one is a hash of the user id
+     */
+    int CART_LOCK_CLASS = 0x43415254;
+
     Flux<CartPosition> findByUserId(@Param("userId") Long userId);
 
     Mono<CartPosition> findByItemIdAndUserId(Long itemId, Long userId);
 
+    @Lock(LockMode.PESSIMISTIC_WRITE)
+    Mono<CartPosition> findForUpdateByItemIdAndUserId(Long itemId, Long userId);
+
+    /**
+     * Locks the cart of the user until the end of the current transaction.
+     * Writers that copy a cart into cart_positions take it, so a copy waits for a checkout of the same cart to commit.
+     */
+    @Query("SELECT 1 FROM pg_advisory_xact_lock(" + CART_LOCK_CLASS + ", hashint8(:userId))")
+    Mono<Integer> lockCart(@Param("userId") Long userId);
+
     @Query("SELECT cart_positions.count from cart_positions where item_id = :itemId and user_id = :userId")
     Mono<Integer> findCountByUserIdAndItemId(@Param("userId") Long userId, @Param("itemId") Long itemId);
 
+    /**
+     * Adds one item to the cart in one statement, returns 0 when there is no such item
+     */
+    @Modifying
+    @Query("""
+        INSERT INTO cart_positions (item_id, user_id, count)
+        SELECT i.id, :userId, 1 FROM items i WHERE i.id = :itemId
+        ON CONFLICT (user_id, item_id) DO UPDATE SET count = cart_positions.count + 1, updated_at = now()
+        """)
+    Mono<Integer> addItem(@Param("itemId") Long itemId, @Param("userId") Long userId);
+
+    /**
+     * Adds the item with the change applied to a zero count in one statement; a position inserted concurrently
+     * gets the change applied to its count instead. Returns 0 when there is no such item
+     */
+    @Modifying
+    @Query("""
+        INSERT INTO cart_positions (item_id, user_id, count)
+        SELECT i.id, :userId, CASE WHEN :reset THEN :floor ELSE GREATEST(:shift, :floor) END FROM items i WHERE i.id = :itemId
+        ON CONFLICT (user_id, item_id) DO UPDATE
+        SET count = CASE WHEN :reset THEN :floor ELSE GREATEST(cart_positions.count + :shift, :floor) END, updated_at = now()
+        """)
+    Mono<Integer> addItem(@Param("itemId") Long itemId, @Param("userId") Long userId,
+                          @Param("reset") boolean reset, @Param("shift") int shift, @Param("floor") int floor);
+
     @Modifying
-    @Query("UPDATE cart_positions SET count = count + 1 WHERE item_id = :itemId and user_id = :userId")
+    @Query("UPDATE cart_positions SET count = count + 1, updated_at = now() WHERE item_id = :itemId and user_id = :userId")
     Mono<Integer> increaseItemCount(@Param("id") Long itemId, @Param("userId") Long userId);
 
     @Modifying
-    @Query("UPDATE cart_positions SET count = count - 1 WHERE item_id = :id and user_id = :userId")
+    @Query("UPDATE cart_positions SET count = count - 1, updated_at = now() WHERE item_id = :id and user_id = :userId")
     Mono<Integer> decreaseItemCount(@Param("id") Long itemId, @Param("userId") Long userId);
 
+    @Modifying
+    @Query("UPDATE cart_positions SET count = :count, updated_at = now() WHERE item_id = :itemId and user_id = :userId")
+    Mono<Integer> setItemCount(@Param("itemId") Long itemId, @Param("userId") Long userId, @Param("count") int count);
+
     @Modifying
     @Query("DELETE FROM cart_positions WHERE item_id = :itemId and user_id = :userId")
     Mono<Integer> removeItemFromCartByItemId(@Param("itemId") Long itemId, @Param("userId") Long userId);
@@ -37,10 +86,41 @@ public interface CartPositionsRepository extends R2dbcRepository<CartPosition, L
     @Query("DELETE FROM cart_positions where user_id = :userId")
     Mono<Integer>  clearCart(@Param("userId") Long userId);
 
+    @Modifying
+    @Query("DELETE FROM cart_positions WHERE user_id = :userId AND item_id IN (:itemIds)")
+    Mono<Integer> removePositions(@Param("userId") Long userId, @Param("itemIds") Collection<Long> itemIds);
+
+    /**
+     * Next users (by id, after {@code afterUserId}) whose whole cart was not touched since {@code cutoff}
+     */
+    @Query("""
+        SELECT user_id FROM cart_positions
+        WHERE user_id > :afterUserId
+        GROUP BY user_id
+        HAVING max(updated_at) < :cutoff
+        ORDER BY user_id
+        LIMIT :limit
+        """)
+    Flux<Long> findAbandonedUserIds(@Param("afterUserId") Long afterUserId, @Param("cutoff") OffsetDateTime cutoff, @Param("limit") int limit);
+
+    /**
+     * Deletes the carts of the users still idle since {@code cutoff}
+     *
+     * @return user id of every deleted row
+     */
+    @Query("""
+        DELETE FROM cart_positions cp
+        WHERE cp.user_id IN (:userIds)
+          AND NOT EXISTS (SELECT 1 FROM cart_positions t WHERE t.user_id = cp.user_id AND t.updated_at >= :cutoff)
+        RETURNING cp.user_id
+        """)
+    Flux<Long> deleteAbandonedCarts(@Param("userIds") Collection<Long> userIds, @Param("cutoff") OffsetDateTime cutoff);
+
     @Query("""
         SELECT i.*, cp.count FROM cart_positions cp
         JOIN items i on cp.item_id = i.id
         WHERE cp.user_id = :userId
+        FOR UPDATE OF cp
         """)
     Flux<ItemDto> getAllCartPositions(@Param("userId") Long userId);
 }
@@ -0,0 +1,76 @@
+package org.yandex.mymarketapp.repo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Idempotency keys of checkout requests with the orders they created
+ */
+@Repository
+@RequiredArgsConstructor
+public class CheckoutRequestRepository {
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Registers the key, a key older than {@code expiredBefore} is taken over.
+     * While another transaction holds the same key the insert waits for it, so a duplicate
+     * running on another instance only sees the key once the first checkout is committed or rolled back.
+     *
+     * @return false when the key is already used
+     */
+    public Mono<Boolean> claim(Long userId, String key, OffsetDateTime expiredBefore) {
+        return databaseClient.sql("""
+                        INSERT INTO checkout_requests (user_id, idempotency_key)
+                        VALUES (:userId, :key)
+                        ON CONFLICT (user_id, idempotency_key) DO UPDATE SET order_id = NULL, created_at = now()
+                        WHERE checkout_requests.created_at < :expiredBefore
+                        """)
+                .bind("userId", userId)
+                .bind("key", key)
+                .bind("expiredBefore", expiredBefore)
+                .fetch()
+                .rowsUpdated()
+                .map(rows -> rows > 0);
+    }
+
+    public Mono<Integer> complete(Long userId, String key, Long orderId) {
+        return databaseClient.sql("UPDATE checkout_requests SET order_id = :orderId WHERE user_id = :userId AND idempotency_key = :key")
+                .bind("orderId", orderId)
+                .bind("userId", userId)
+                .bind("key", key)
+                .fetch()
+                .rowsUpdated()
+                .map(Long::intValue);
+    }
+
+    public Mono<Long> findOrderId(Long userId, String key) {
+        return databaseClient.sql("SELECT order_id FROM checkout_requests WHERE user_id = :userId AND idempotency_key = :key AND order_id IS NOT NULL")
+                .bind("userId", userId)
+                .bind("key", key)
+                .map(row -> row.get("order_id", Long.class))
+                .one();
+    }
+
+    /**
+     * Deletes up to {@code limit} keys older than {@code expiredBefore}
+     */
+    public Mono<Long> deleteExpired(OffsetDateTime expiredBefore, int limit) {
+        return databaseClient.sql("""
+                        DELETE FROM checkout_requests
+                        WHERE (user_id, idempotency_key) IN (
+                            SELECT user_id, idempotency_key FROM checkout_requests
+                            WHERE created_at < :expiredBefore
+                            LIMIT :limit
+                        )
+                        """)
+                .bind("expiredBefore", expiredBefore)
+                .bind("limit", limit)
+                .fetch()
+                .rowsUpdated();
+    }
+}
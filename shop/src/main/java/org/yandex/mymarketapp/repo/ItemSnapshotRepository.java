@@ -0,0 +1,119 @@
+package org.yandex.mymarketapp.repo;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.yandex.mymarketapp.model.domain.ItemSnapshot;
+import org.yandex.mymarketapp.model.domain.Order;
+import org.yandex.mymarketapp.model.domain.OrderPosition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Item snapshots of order positions. A snapshot never changes once stored, so the ones seen are kept in memory:
+ * positions are filled from them without reading item_snapshots, and a checkout sends the fields of a snapshot
+ * only when it is not known to be stored yet.
+ */
+@Slf4j
+@Repository
+public class ItemSnapshotRepository {
+
+    private final DatabaseClient databaseClient;
+    private final int cacheSize;
+    private final Map<String, ItemSnapshot> stored = new ConcurrentHashMap<>();
+
+    public ItemSnapshotRepository(DatabaseClient databaseClient,
+                                  @Value("${market.orders.snapshots.cache-size:10000}") int cacheSize) {
+        this.databaseClient = databaseClient;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Whether the snapshot is known to be in item_snapshots
+     */
+    public boolean isStored(String hash) {
+        return stored.containsKey(hash);
+    }
+
+    /**
+     * Marks the snapshots as stored once the current transaction commits, right away without one
+     */
+    public Mono<Void> rememberAfterCommit(Collection<ItemSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return Mono.empty();
+        }
+        return TransactionHooks.afterCommit(Mono.fromRunnable(() -> snapshots.forEach(this::remember)));
+    }
+
+    /**
+     * Fills title, description and image path of the order positions from their snapshots,
+     * only snapshots not seen before are read from the database
+     */
+    public Mono<Order> fillPositions(Order order) {
+        Map<String, ItemSnapshot> snapshots = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (OrderPosition position : order.getItems()) {
+            String hash = position.getSnapshotHash();
+            if (hash == null || snapshots.containsKey(hash)) {
+                continue;
+            }
+            ItemSnapshot snapshot = stored.get(hash);
+            if (snapshot == null) {
+                missing.add(hash);
+            }
+            snapshots.put(hash, snapshot);
+        }
+        if (missing.isEmpty()) {
+            return Mono.just(fill(order, snapshots));
+        }
+        return findAll(missing)
+                .doOnNext(snapshot -> snapshots.put(snapshot.hash(), snapshot))
+                .then(Mono.fromCallable(() -> fill(order, snapshots)));
+    }
+
+    private static Order fill(Order order, Map<String, ItemSnapshot> snapshots) {
+        for (OrderPosition position : order.getItems()) {
+            if (position.getSnapshotHash() == null) {
+                continue;
+            }
+            ItemSnapshot snapshot = snapshots.get(position.getSnapshotHash());
+            if (snapshot == null) {
+                throw new IllegalStateException("Missing item snapshot " + position.getSnapshotHash()
+                        + " of order " + order.getId());
+            }
+            position.setTitle(snapshot.title());
+            position.setDescription(snapshot.description());
+            position.setImgPath(snapshot.imgPath());
+        }
+        return order;
+    }
+
+    private Flux<ItemSnapshot> findAll(List<String> hashes) {
+        if (hashes.isEmpty()) {
+            return Flux.empty();
+        }
+        return databaseClient.sql("""
+                        SELECT encode(hash, 'hex') AS hash, title, description, img_path
+                        FROM item_snapshots
+                        WHERE hash = ANY(SELECT decode(h, 'hex') FROM unnest(:hashes::text[]) AS h)
+                        """)
+                .bind("hashes", hashes.toArray(String[]::new))
+                .map(row -> new ItemSnapshot(row.get("hash", String.class), row.get("title", String.class),
+                        row.get("description", String.class), row.get("img_path", String.class)))
+                .all()
+                .doOnNext(this::remember);
+    }
+
+    private void remember(ItemSnapshot snapshot) {
+        // snapshots never change, dropping all of them at once only costs rereading the ones still in use
+        if (stored.size() >= cacheSize) {
+            log.info("Item snapshot cache reached {} entries, clearing it", cacheSize);
+            stored.clear();
+        }
+        stored.put(snapshot.hash(), snapshot);
+    }
+}
@@ -0,0 +1,203 @@
+package org.yandex.mymarketapp.repo;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.yandex.mymarketapp.model.domain.Order;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cold orders moved out of the database into compressed append-only segment files of a local directory.
+ * Every archived batch becomes a new segment, existing segments are never modified, replaced or removed.
+ * Segment names carry the range of order ids in the segment and a random suffix, so segments written by
+ * different instances never collide. Other instances' segments are picked up by a periodic rescan of the directory,
+ * lookups only read the segments already open and never list the directory.
+ * With the archive disabled the directory is not touched and the archive is empty.
+ * Reads touch memory mapped files and may fault pages in, so they run on the bounded elastic scheduler.
+ */
+@Slf4j
+@Repository
+public class OrderArchiveRepository {
+
+    private static final String SEGMENT_PREFIX = "orders-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String UNFINISHED_SUFFIX = SEGMENT_SUFFIX + ".tmp";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("orders-(\\d+)-(\\d+)-[0-9a-f-]+\\.seg");
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int blockSize;
+    /**
+     * Open segments by file name, names start with the first order id so iteration goes from the oldest segment
+     */
+    private final Map<String, Segment> segments = new ConcurrentSkipListMap<>();
+
+    public OrderArchiveRepository(@Value("${market.orders.archive.enabled:false}") boolean enabled,
+                                  @Value("${market.orders.archive.dir:order-archive}") String dir,
+                                  @Value("${market.orders.archive.block-size:64}") int blockSize) throws IOException {
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.blockSize = blockSize;
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(this.dir);
+        scan();
+        log.info("Opened {} order archive segments in {}", segments.size(), this.dir.toAbsolutePath());
+    }
+
+    /**
+     * Writes the orders not archived yet to a new segment, so repeating a batch after a crash is harmless.
+     * Only segments whose order id range overlaps the batch are checked for the orders.
+     * Appends to one directory must not run concurrently, {@code OrderArchiver} holds a database lock for them,
+     * which also makes the {@code .tmp} files left behind by an interrupted append safe to delete here.
+     *
+     * @return orders written
+     */
+    public Mono<Integer> append(List<Order> orders) {
+        return Mono.fromCallable(() -> {
+                    if (!enabled) {
+                        throw new IllegalStateException("Order archive is disabled");
+                    }
+                    if (orders.isEmpty()) {
+                        return 0;
+                    }
+                    deleteUnfinished();
+                    scan();
+                    LongSummaryStatistics ids = orders.stream().mapToLong(Order::getId).summaryStatistics();
+                    Set<Long> archived = segments.values().stream()
+                            .filter(segment -> segment.overlaps(ids.getMin(), ids.getMax()))
+                            .flatMap(segment -> segment.file().findAll().stream())
+                            .map(Order::getId)
+                            .collect(Collectors.toSet());
+                    List<Order> fresh = orders.stream()
+                            .filter(order -> !archived.contains(order.getId()))
+                            .toList();
+                    if (!fresh.isEmpty()) {
+                        writeSegment(fresh);
+                    }
+                    return fresh.size();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Mono<Order> findOrder(long orderId, Long userId) {
+        if (segments.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> find(userId, orderId).orElse(null))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Archived orders of the user, of all users when {@code userId} is null, read one segment at a time
+     */
+    public Flux<Order> findAll(Long userId) {
+        return Flux.defer(() -> Flux.fromIterable(segments.values()))
+                .concatMap(segment -> Mono.fromCallable(() -> userId == null
+                                ? segment.file().findAll()
+                                : segment.file().findByUser(userId))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .flatMapIterable(orders -> orders);
+    }
+
+    private Optional<Order> find(long userId, long orderId) {
+        for (Segment segment : segments.values()) {
+            if (segment.overlaps(orderId, orderId)) {
+                Optional<Order> order = segment.file().find(userId, orderId);
+                if (order.isPresent()) {
+                    return order;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Opens the segments other instances wrote since the last rescan, segments of this instance are open right away
+     */
+    @Scheduled(fixedDelayString = "${market.orders.archive.rescan-interval:PT1M}", initialDelayString = "${market.orders.archive.rescan-interval:PT1M}")
+    public Mono<Void> rescan() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(this::scan)
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(found -> {
+                    if (found) {
+                        log.info("Opened new order archive segments, {} in total", segments.size());
+                    }
+                })
+                .onErrorMap(IOException.class, e -> new UncheckedIOException("Failed to list order archive segments in " + dir, e))
+                .then();
+    }
+
+    /**
+     * Opens the segments written since the last scan, by this or any other instance
+     *
+     * @return whether new segments were found
+     */
+    private synchronized boolean scan() throws IOException {
+        boolean found = false;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                Matcher matcher = SEGMENT_NAME.matcher(name);
+                if (matcher.matches() && !segments.containsKey(name)) {
+                    segments.put(name, new Segment(OrderArchiveSegment.open(file),
+                            Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))));
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    private void deleteUnfinished() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(UNFINISHED_SUFFIX)).toList()) {
+                log.warn("Deleting unfinished order archive segment {}", file);
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private void writeSegment(List<Order> orders) {
+        LongSummaryStatistics ids = orders.stream().mapToLong(Order::getId).summaryStatistics();
+        String name = SEGMENT_PREFIX + "%019d-%019d-%s".formatted(ids.getMin(), ids.getMax(), UUID.randomUUID()) + SEGMENT_SUFFIX;
+        Path path = dir.resolve(name);
+        try {
+            segments.put(name, new Segment(OrderArchiveSegment.write(path, orders, blockSize), ids.getMin(), ids.getMax()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write order archive segment " + path, e);
+        }
+        log.info("Archived {} orders to {}", orders.size(), path);
+    }
+
+    private record Segment(OrderArchiveSegment file, long minOrderId, long maxOrderId) {
+
+        boolean overlaps(long fromOrderId, long toOrderId) {
+            return minOrderId <= toOrderId && maxOrderId >= fromOrderId;
+        }
+    }
+}
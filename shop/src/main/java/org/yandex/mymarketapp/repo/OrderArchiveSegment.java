@@ -0,0 +1,308 @@
+package org.yandex.mymarketapp.repo;
+
+import org.yandex.mymarketapp.model.domain.Order;
+import org.yandex.mymarketapp.model.domain.OrderPosition;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable file of archived orders sorted by (user_id, order_id).
+ * Orders are stored in deflated blocks followed by a sparse index with the first key of every block,
+ * so looking an order up inflates a single block of the memory mapped file.
+ * <pre>
+ * block*  index: int blocks, (long firstUserId, long firstOrderId, int offset, int length, int rawLength)*  long indexOffset, int magic
+ * </pre>
+ */
+final class OrderArchiveSegment {
+
+    static final Comparator<Order> KEY_ORDER = Comparator.comparing(Order::getUserId).thenComparing(Order::getId);
+
+    private static final int MAGIC = 0x4F524441;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int INDEX_ENTRY_SIZE = 2 * Long.BYTES + 3 * Integer.BYTES;
+
+    private final Path path;
+    private final MappedByteBuffer data;
+    private final long[] firstUserIds;
+    private final long[] firstOrderIds;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] rawLengths;
+
+    private OrderArchiveSegment(Path path, MappedByteBuffer data) {
+        this.path = path;
+        this.data = data;
+        int size = data.capacity();
+        if (size < Integer.BYTES + TRAILER_SIZE || data.getInt(size - Integer.BYTES) != MAGIC) {
+            throw new IllegalStateException("Not an order archive segment: " + path);
+        }
+        int indexOffset = (int) data.getLong(size - TRAILER_SIZE);
+        int blocks = data.getInt(indexOffset);
+        firstUserIds = new long[blocks];
+        firstOrderIds = new long[blocks];
+        offsets = new int[blocks];
+        lengths = new int[blocks];
+        rawLengths = new int[blocks];
+        int position = indexOffset + Integer.BYTES;
+        for (int block = 0; block < blocks; block++, position += INDEX_ENTRY_SIZE) {
+            firstUserIds[block] = data.getLong(position);
+            firstOrderIds[block] = data.getLong(position + Long.BYTES);
+            offsets[block] = data.getInt(position + 2 * Long.BYTES);
+            lengths[block] = data.getInt(position + 2 * Long.BYTES + Integer.BYTES);
+            rawLengths[block] = data.getInt(position + 2 * Long.BYTES + 2 * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Maps the segment, the mapping outlives the channel and is released with the segment
+     */
+    static OrderArchiveSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new OrderArchiveSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the orders to a new segment at {@code path}. The file only appears under its name once it is
+     * complete and flushed to disk, an interrupted write leaves a {@code .tmp} file behind.
+     * An existing file at {@code path} is never replaced, the write fails with {@link FileAlreadyExistsException}.
+     */
+    static OrderArchiveSegment write(Path path, List<Order> orders, int blockSize) throws IOException {
+        List<Order> sorted = orders.stream().sorted(KEY_ORDER).toList();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream indexOut = new DataOutputStream(index);
+            int blocks = 0;
+            long offset = 0;
+            for (int from = 0; from < sorted.size(); from += blockSize) {
+                List<Order> block = sorted.subList(from, Math.min(from + blockSize, sorted.size()));
+                byte[] raw = encode(block);
+                byte[] compressed = deflate(deflater, raw);
+                if (offset + compressed.length > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Order archive segment " + path + " exceeds 2GB, archive smaller batches");
+                }
+                writeFully(channel, ByteBuffer.wrap(compressed));
+                indexOut.writeLong(block.get(0).getUserId());
+                indexOut.writeLong(block.get(0).getId());
+                indexOut.writeInt((int) offset);
+                indexOut.writeInt(compressed.length);
+                indexOut.writeInt(raw.length);
+                offset += compressed.length;
+                blocks++;
+            }
+            ByteBuffer tail = ByteBuffer.allocate(Integer.BYTES + index.size() + TRAILER_SIZE);
+            tail.putInt(blocks).put(index.toByteArray()).putLong(offset).putInt(MAGIC).flip();
+            writeFully(channel, tail);
+            channel.force(true);
+        } finally {
+            deflater.end();
+        }
+        // unlike a move, linking fails instead of silently replacing a segment already under the name
+        try {
+            Files.createLink(path, tmp);
+        } finally {
+            Files.delete(tmp);
+        }
+        return open(path);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    Optional<Order> find(long userId, long orderId) {
+        int block = floorBlock(userId, orderId);
+        if (block < 0) {
+            return Optional.empty();
+        }
+        return decode(block).stream()
+                .filter(order -> order.getUserId() == userId && order.getId() == orderId)
+                .findFirst();
+    }
+
+    /**
+     * Orders of the user ordered by id, only the blocks the sparse index points to are inflated
+     */
+    List<Order> findByUser(long userId) {
+        List<Order> orders = new ArrayList<>();
+        for (int block = Math.max(floorBlock(userId, Long.MIN_VALUE), 0);
+             block < firstUserIds.length && firstUserIds[block] <= userId; block++) {
+            for (Order order : decode(block)) {
+                if (order.getUserId() == userId) {
+                    orders.add(order);
+                }
+            }
+        }
+        return orders;
+    }
+
+    List<Order> findAll() {
+        List<Order> orders = new ArrayList<>();
+        for (int block = 0; block < firstUserIds.length; block++) {
+            orders.addAll(decode(block));
+        }
+        return orders;
+    }
+
+    /**
+     * Last block whose first key is not greater than the given one, -1 when the key precedes the segment
+     */
+    private int floorBlock(long userId, long orderId) {
+        int low = 0;
+        int high = firstUserIds.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = firstUserIds[mid] != userId
+                    ? Long.compare(firstUserIds[mid], userId)
+                    : Long.compare(firstOrderIds[mid], orderId);
+            if (cmp <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private List<Order> decode(int block) {
+        try {
+            return decode(new DataInputStream(new ByteArrayInputStream(inflate(block))));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Broken block " + block + " of order archive segment " + path, e);
+        }
+    }
+
+    private byte[] inflate(int block) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data.slice(offsets[block], lengths[block]));
+            byte[] raw = new byte[rawLengths[block]];
+            int read = 0;
+            while (read < raw.length) {
+                int inflated = inflater.inflate(raw, read, raw.length - read);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Truncated block " + block + " of order archive segment " + path);
+                }
+                read += inflated;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Broken block " + block + " of order archive segment " + path, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encode(List<Order> orders) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(orders.size());
+        for (Order order : orders) {
+            out.writeLong(order.getUserId());
+            out.writeLong(order.getId());
+            out.writeDouble(order.getTotalSum());
+            out.writeUTF(order.getStatus().name());
+            out.writeInt(order.getItems().size());
+            for (OrderPosition position : order.getItems()) {
+                out.writeLong(position.getId());
+                out.writeBoolean(position.getItemId() != null);
+                out.writeLong(position.getItemId() == null ? 0 : position.getItemId());
+                writeString(out, position.getTitle());
+                writeString(out, position.getDescription());
+                writeString(out, position.getImgPath());
+                out.writeDouble(position.getPrice());
+                out.writeInt(position.getCount());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Order> decode(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Order order = new Order();
+            order.setUserId(in.readLong());
+            order.setId(in.readLong());
+            order.setTotalSum(in.readDouble());
+            order.setStatus(OrderStatus.valueOf(in.readUTF()));
+            int positions = in.readInt();
+            List<OrderPosition> items = new ArrayList<>(positions);
+            for (int p = 0; p < positions; p++) {
+                OrderPosition position = new OrderPosition();
+                position.setId(in.readLong());
+                position.setOrderId(order.getId());
+                boolean hasItem = in.readBoolean();
+                long itemId = in.readLong();
+                position.setItemId(hasItem ? itemId : null);
+                position.setTitle(readString(in));
+                position.setDescription(readString(in));
+                position.setImgPath(readString(in));
+                position.setPrice(in.readDouble());
+                position.setCount(in.readInt());
+                items.add(position);
+            }
+            order.setItems(items);
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * Unlike writeUTF, not limited to 64KB and keeps nulls
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
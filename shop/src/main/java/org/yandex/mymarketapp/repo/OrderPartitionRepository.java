@@ -0,0 +1,105 @@
+package org.yandex.mymarketapp.repo;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.yandex.mymarketapp.model.dto.OrderPartitionDto;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Partitions of orders and order_positions, both are split by the same ranges of the order id
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class OrderPartitionRepository {
+
+    private static final Pattern RANGE_BOUND = Pattern.compile("FROM \\('?(-?\\d+)'?\\) TO \\('?(-?\\d+)'?\\)");
+
+    private final DatabaseClient databaseClient;
+
+    public Flux<OrderPartitionDto> findPartitions() {
+        return databaseClient.sql("""
+                        SELECT c.relname AS name, pg_get_expr(c.relpartbound, c.oid) AS bound
+                        FROM pg_inherits i
+                        JOIN pg_class c ON c.oid = i.inhrelid
+                        WHERE i.inhparent = 'orders'::regclass
+                        """)
+                .map(row -> toPartition(row.get("name", String.class), row.get("bound", String.class)))
+                .all()
+                .sort((a, b) -> Long.compare(a.fromId(), b.fromId()));
+    }
+
+    /**
+     * The last id handed out for orders, ids reserved but not yet used count as well
+     */
+    public Mono<Long> findLastOrderId() {
+        return databaseClient.sql("SELECT CASE WHEN is_called THEN last_value ELSE last_value - 1 END AS last_id FROM orders_id_seq")
+                .map(row -> row.get("last_id", Long.class))
+                .one();
+    }
+
+    /**
+     * The new partitions get the indexes of the parent tables, orders_user_id_id_idx included,
+     * so the order history of a user reads an index in every partition instead of scanning it
+     */
+    public Mono<OrderPartitionDto> createPartition(long fromId, long toId) {
+        OrderPartitionDto partition = new OrderPartitionDto(ordersPartition(fromId), positionsPartition(fromId), fromId, toId);
+        return execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF orders FOR VALUES FROM (%d) TO (%d)"
+                        .formatted(partition.orders(), fromId, toId))
+                .then(execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF order_positions FOR VALUES FROM (%d) TO (%d)"
+                        .formatted(partition.orderPositions(), fromId, toId)))
+                .doOnSuccess(v -> log.info("Created order partitions for ids from {} to {}", fromId, toId))
+                .thenReturn(partition);
+    }
+
+    /**
+     * Detaches both partitions of the range without blocking writes to the other partitions.
+     * They stay as standalone tables to be archived or dropped; orders of the range must have no
+     * pending payments or live checkout keys referencing them.
+     */
+    public Mono<Void> detachPartition(OrderPartitionDto partition) {
+        return execute("ALTER TABLE order_positions DETACH PARTITION %s CONCURRENTLY".formatted(partition.orderPositions()))
+                .then(dropForeignKeys(partition.orderPositions()))
+                .then(execute("ALTER TABLE orders DETACH PARTITION %s CONCURRENTLY".formatted(partition.orders())))
+                .doOnSuccess(v -> log.info("Detached order partitions {} and {}", partition.orders(), partition.orderPositions()));
+    }
+
+    /**
+     * A detached positions table keeps its foreign key to orders, which would block detaching the orders of the range
+     */
+    private Mono<Void> dropForeignKeys(String table) {
+        return databaseClient.sql("SELECT conname FROM pg_constraint WHERE conrelid = to_regclass(:table) AND contype = 'f'")
+                .bind("table", table)
+                .map(row -> row.get("conname", String.class))
+                .all()
+                .concatMap(constraint -> execute("ALTER TABLE %s DROP CONSTRAINT \"%s\"".formatted(table, constraint)))
+                .then();
+    }
+
+    private Mono<Void> execute(String ddl) {
+        return databaseClient.sql(ddl).then();
+    }
+
+    private static OrderPartitionDto toPartition(String name, String bound) {
+        Matcher matcher = RANGE_BOUND.matcher(bound);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Unexpected bound of order partition " + name + ": " + bound);
+        }
+        long fromId = Long.parseLong(matcher.group(1));
+        return new OrderPartitionDto(name, positionsPartition(fromId), fromId, Long.parseLong(matcher.group(2)));
+    }
+
+    private static String ordersPartition(long fromId) {
+        return "orders_p" + fromId;
+    }
+
+    private static String positionsPartition(long fromId) {
+        return "order_positions_p" + fromId;
+    }
+}
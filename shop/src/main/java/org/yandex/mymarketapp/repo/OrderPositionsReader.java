@@ -0,0 +1,58 @@
+package org.yandex.mymarketapp.repo;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.yandex.mymarketapp.model.domain.OrderPosition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the positions snapshot of an order token by token straight from the bytes of the jsonb value,
+ * without decoding it to a string or binding it through bean introspection
+ */
+public class OrderPositionsReader {
+
+    private final JsonFactory jsonFactory;
+
+    public OrderPositionsReader(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    public List<OrderPosition> read(byte[] snapshot, Long orderId) {
+        try (JsonParser parser = jsonFactory.createParser(snapshot)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalStateException("Positions snapshot of order " + orderId + " is not an array");
+            }
+            List<OrderPosition> positions = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                OrderPosition position = new OrderPosition();
+                position.setOrderId(orderId);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if (value == JsonToken.VALUE_NULL) {
+                        continue;
+                    }
+                    switch (field) {
+                        case "id" -> position.setId(parser.getLongValue());
+                        case "itemId" -> position.setItemId(parser.getLongValue());
+                        case "snapshotHash" -> position.setSnapshotHash(parser.getText());
+                        case "price" -> position.setPrice(parser.getDoubleValue());
+                        case "count" -> position.setCount(parser.getIntValue());
+                        case "title" -> position.setTitle(parser.getText());
+                        case "description" -> position.setDescription(parser.getText());
+                        case "imgPath" -> position.setImgPath(parser.getText());
+                        default -> parser.skipChildren();
+                    }
+                }
+                positions.add(position);
+            }
+            return positions;
+        } catch (IOException e) {
+            throw new IllegalStateException("Broken positions snapshot of order " + orderId, e);
+        }
+    }
+}
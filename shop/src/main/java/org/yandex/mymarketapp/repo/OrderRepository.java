@@ -1,108 +1,304 @@
 package org.yandex.mymarketapp.repo;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.r2dbc.postgresql.codec.Json;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Row;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Repository;
+import org.yandex.mymarketapp.model.domain.ItemSnapshot;
 import org.yandex.mymarketapp.model.domain.Order;
 import org.yandex.mymarketapp.model.domain.OrderPosition;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Repository
-@RequiredArgsConstructor
 public class OrderRepository {
 
+    /**
+     * Orders written before the positions snapshot existed have none, their positions are aggregated on read
+     */
+    private static final String ORDER_COLUMNS = """
+            o.id, o.user_id, o.total_sum, o.status,
+                   COALESCE(o.positions,
+                            (SELECT jsonb_agg(%s ORDER BY op.id) FROM order_positions op WHERE op.order_id = o.id),
+                            '[]'::jsonb) AS positions""".formatted(positionJson("op"));
+
     private final DatabaseClient databaseClient;
-    private final R2dbcEntityTemplate template;
+    private final OrderPositionsReader positionsReader;
+    private final ItemSnapshotRepository snapshots;
+    private final SequenceIdAllocator positionIds;
+
+    public OrderRepository(DatabaseClient databaseClient, ObjectMapper objectMapper, ItemSnapshotRepository snapshots,
+                           @Value("${market.orders.ids.position-block-size:500}") int positionBlockSize) {
+        this.databaseClient = databaseClient;
+        this.snapshots = snapshots;
+        this.positionIds = new SequenceIdAllocator(databaseClient, "order_positions_id_seq", positionBlockSize);
+        this.positionsReader = new OrderPositionsReader(objectMapper.getFactory());
+    }
 
+    /**
+     * Inserts the order with all its positions in one statement, which also stores their snapshot in the order row
+     * and adds the order to the daily and per item sales rollups and to the order stats of its user.
+     * Rollup rows of items are locked in item id order so concurrent checkouts cannot deadlock, and the day is
+     * spread over shards of daily_sales so checkouts of the same day do not queue on one row.
+     * Ids of the positions are taken from blocks reserved in advance. The order id is drawn from its sequence by the
+     * statement itself: order ids must follow the order of creation across instances, the history is ordered and
+     * paged by them and partitions of orders are ranges of them.
+     * Title, description and image path go to item_snapshots, sent only for snapshots not known to be stored.
+     */
     public Mono<Order> save(Order order) {
-        return template.insert(Order.class)
-                .using(order)
-                .flatMap(savedOrder -> {
-                    order.getItems().forEach(e-> e.setOrderId(savedOrder.getId()));
-                    Mono<List<OrderPosition>> savedPos= Flux.fromIterable(order.getItems())
-                            .flatMap(position -> template.insert(OrderPosition.class).using(position))
-                            .collectList();
-                    return Mono.zip(savedPos, Mono.just(savedOrder));
-                })
-                .map(tuple -> {
-                    tuple.getT2().setItems(tuple.getT1());
-                    return tuple.getT2();
-                });
+        return positionIds.next(order.getItems().size())
+                .flatMap(ids -> insert(order, ids));
     }
 
+    private Mono<Order> insert(Order order, long[] positionIds) {
+        String sql = """
+            WITH new_order_id AS (
+                SELECT nextval('orders_id_seq') AS id
+            ), item_snapshot AS (
+                INSERT INTO item_snapshots (hash, title, description, img_path)
+                SELECT decode(s.hash, 'hex'), s.title, s.description, s.img_path
+                FROM unnest(:newHashes::text[], :titles::text[], :descriptions::text[], :imgPaths::text[])
+                    AS s(hash, title, description, img_path)
+                ON CONFLICT (hash) DO NOTHING
+            ), inserted AS (
+                INSERT INTO order_positions (id, order_id, item_id, snapshot_hash, price, count)
+                SELECT p.id, (SELECT id FROM new_order_id), p.item_id, decode(p.hash, 'hex'), p.price, p.count
+                FROM unnest(:ids::bigint[], :itemIds::bigint[], :hashes::text[], :prices::float8[], :counts::int[])
+                    AS p(id, item_id, hash, price, count)
+                RETURNING id, item_id, snapshot_hash, price, count
+            ), new_order AS (
+                INSERT INTO orders (id, total_sum, user_id, status, positions)
+                SELECT (SELECT id FROM new_order_id), :totalSum, :userId, :status,
+                       (SELECT coalesce(jsonb_agg(%s ORDER BY i.id), '[]'::jsonb) FROM inserted i)
+            ), day_rollup AS (
+                INSERT INTO daily_sales (day, shard, orders_count, units, revenue)
+                SELECT (now() AT TIME ZONE 'UTC')::date, (SELECT id FROM new_order_id) %% %d, 1, sum(i.count), sum(i.price * i.count) FROM inserted i
+                HAVING count(*) > 0
+                ON CONFLICT (day, shard) DO UPDATE SET orders_count = daily_sales.orders_count + excluded.orders_count,
+                                                units = daily_sales.units + excluded.units,
+                                                revenue = daily_sales.revenue + excluded.revenue
+            ), item_rollup AS (
+                INSERT INTO item_sales (item_id, orders_count, units, revenue)
+                SELECT i.item_id, count(*), sum(i.count), sum(i.price * i.count) FROM inserted i
+                WHERE i.item_id IS NOT NULL
+                GROUP BY i.item_id
+                ORDER BY i.item_id
+                ON CONFLICT (item_id) DO UPDATE SET orders_count = item_sales.orders_count + excluded.orders_count,
+                                                    units = item_sales.units + excluded.units,
+                                                    revenue = item_sales.revenue + excluded.revenue
+            ), user_stats AS (
+                INSERT INTO user_order_stats (user_id, orders_count, total_spent)
+                VALUES (:userId, 1, :totalSum)
+                ON CONFLICT (user_id) DO UPDATE SET orders_count = user_order_stats.orders_count + 1,
+                                                    total_spent = user_order_stats.total_spent + excluded.total_spent
+            )
+            SELECT id FROM new_order_id
+            """.formatted(positionJson("i"), SalesRollupRepository.DAILY_SALES_SHARDS);
+
+        List<OrderPosition> positions = order.getItems();
+        int size = positions.size();
+        Long[] ids = new Long[size];
+        Long[] itemIds = new Long[size];
+        String[] hashes = new String[size];
+        Double[] prices = new Double[size];
+        Integer[] counts = new Integer[size];
+        Map<String, ItemSnapshot> newSnapshots = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            OrderPosition position = positions.get(i);
+            ItemSnapshot snapshot = ItemSnapshot.of(position.getTitle(), position.getDescription(), position.getImgPath());
+            position.setId(positionIds[i]);
+            position.setSnapshotHash(snapshot.hash());
+            if (!snapshots.isStored(snapshot.hash())) {
+                newSnapshots.putIfAbsent(snapshot.hash(), snapshot);
+            }
+            ids[i] = positionIds[i];
+            itemIds[i] = position.getItemId();
+            hashes[i] = snapshot.hash();
+            prices[i] = position.getPrice();
+            counts[i] = position.getCount();
+        }
+
+        return databaseClient.sql(sql)
+                .bind("totalSum", order.getTotalSum())
+                .bind("userId", order.getUserId())
+                .bind("status", order.getStatus().name())
+                .bind("newHashes", newSnapshots.keySet().toArray(String[]::new))
+                .bind("titles", newSnapshots.values().stream().map(ItemSnapshot::title).toArray(String[]::new))
+                .bind("descriptions", newSnapshots.values().stream().map(ItemSnapshot::description).toArray(String[]::new))
+                .bind("imgPaths", newSnapshots.values().stream().map(ItemSnapshot::imgPath).toArray(String[]::new))
+                .bind("ids", ids)
+                .bind("itemIds", itemIds)
+                .bind("hashes", hashes)
+                .bind("prices", prices)
+                .bind("counts", counts)
+                .map(row -> row.get("id", Long.class))
+                .one()
+                .flatMap(orderId -> snapshots.rememberAfterCommit(newSnapshots.values()).then(Mono.fromSupplier(() -> {
+                    order.setId(orderId);
+                    positions.forEach(position -> position.setOrderId(orderId));
+                    log.info("Saved order {} with {} positions, {} new item snapshots", orderId, size, newSnapshots.size());
+                    return order;
+                })));
+    }
 
     public Flux<Order> getAllWithPositions(Long userId) {
         String sql = """
-            SELECT o.id, o.total_sum, op.id as position_id, op.order_id, op.title, op.description, op.img_path, op.price, op.count
+            SELECT %s
             FROM orders o
-            LEFT JOIN order_positions op ON o.id = op.order_id
             WHERE o.user_id = :userId
             ORDER BY o.id
-            """;
+            """.formatted(ORDER_COLUMNS);
 
         return databaseClient.sql(sql)
                 .bind("userId", userId)
-                .fetch()
+                .map((row, metadata) -> mapToOrder(row))
                 .all()
-                .bufferUntilChanged(result -> result.get("id"))
-                .map(e -> mapToOrderWithPositions(e));
+                .concatMap(snapshots::fillPositions);
+    }
+
+    /**
+     * Orders of the user (of all users when {@code userId} is null) with their positions, ordered by id.
+     * Rows are pulled from a server-side cursor {@code fetchSize} at a time as downstream requests them,
+     * so the whole history is never held in memory.
+     */
+    public Flux<Order> streamWithPositions(Long userId, int fetchSize) {
+        String sql = """
+            SELECT %s
+            FROM orders o
+            %s
+            ORDER BY o.id
+            """.formatted(ORDER_COLUMNS, userId == null ? "" : "WHERE o.user_id = :userId");
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql)
+                .filter(statement -> statement.fetchSize(fetchSize));
+        if (userId != null) {
+            spec = spec.bind("userId", userId);
+        }
+        return spec.map((row, metadata) -> mapToOrder(row))
+                .all()
+                .concatMap(snapshots::fillPositions);
     }
 
     public Mono<Order> getByIdAndUserIdWithPositions(long orderId, Long userId) {
         String sql = """
-            SELECT o.*, op.id as position_id, op.order_id, op.title, op.description, op.img_path, op.price, op.count
-            FROM orders o 
-            LEFT JOIN order_positions op ON o.id = op.order_id
+            SELECT %s
+            FROM orders o
             WHERE o.id = :id and o.user_id = :userId
-            """;
+            """.formatted(ORDER_COLUMNS);
 
         return databaseClient.sql(sql)
                 .bind("id", orderId)
                 .bind("userId", userId)
-                .fetch()
+                .map((row, metadata) -> mapToOrder(row))
+                .one()
+                .flatMap(snapshots::fillPositions);
+    }
+
+    public Flux<Long> findIdsByUserId(Long userId) {
+        return databaseClient.sql("SELECT id FROM orders WHERE user_id = :userId")
+                .bind("userId", userId)
+                .map(row -> row.get("id", Long.class))
+                .all();
+    }
+
+    /**
+     * Orders of the user among {@code orderIds} with their positions, ids of other users' orders are skipped
+     */
+    public Flux<Order> findByIdsWithPositions(Long userId, List<Long> orderIds) {
+        String sql = """
+            SELECT %s
+            FROM orders o
+            WHERE o.user_id = :userId AND o.id = ANY(:ids)
+            """.formatted(ORDER_COLUMNS);
+
+        return databaseClient.sql(sql)
+                .bind("userId", userId)
+                .bind("ids", orderIds.toArray(Long[]::new))
+                .map((row, metadata) -> mapToOrder(row))
                 .all()
-                .collectList()
-                .flatMap(rows -> {
-                    Order order = mapToOrderWithPositions(rows);
-                    return order != null ? Mono.just(order) : Mono.empty();
-                });
+                .concatMap(snapshots::fillPositions);
     }
 
-    private Order mapToOrderWithPositions(List<Map<String, Object>> rows) {
-        if (rows.isEmpty()) return null;
+    /**
+     * Up to {@code limit} settled orders with ids above {@code afterId} made before {@code createdBefore}, ordered by id
+     */
+    public Flux<Order> findArchivable(OffsetDateTime createdBefore, long afterId, int limit) {
+        String sql = """
+            SELECT %s
+            FROM orders o
+            WHERE o.created_at < :createdBefore AND o.id > :afterId AND o.status <> 'PENDING_PAYMENT'
+              AND NOT EXISTS (SELECT 1 FROM payment_outbox p WHERE p.order_id = o.id)
+            ORDER BY o.id
+            LIMIT :limit
+            """.formatted(ORDER_COLUMNS);
 
-        Map<String, Object> firstRow = rows.get(0);
-        Order order = new Order();
-        order.setId((Long) firstRow.get("id"));
-        order.setTotalSum((Double) firstRow.get("total_sum"));
+        return databaseClient.sql(sql)
+                .bind("createdBefore", createdBefore)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map((row, metadata) -> mapToOrder(row))
+                .all()
+                .concatMap(snapshots::fillPositions);
+    }
 
-        List<OrderPosition> positions = rows.stream()
-                .filter(row -> row.get("position_id") != null)
-                .map(this::mapToOrderPosition)
-                .collect(Collectors.toList());
+    /**
+     * Deletes the orders with their positions, their checkout keys go with them
+     *
+     * @return orders deleted
+     */
+    public Mono<Long> deleteOrders(List<Long> orderIds) {
+        return databaseClient.sql("""
+                        WITH positions AS (
+                            DELETE FROM order_positions WHERE order_id = ANY(:ids)
+                        )
+                        DELETE FROM orders WHERE id = ANY(:ids)
+                        """)
+                .bind("ids", orderIds.toArray(Long[]::new))
+                .fetch()
+                .rowsUpdated();
+    }
 
-        order.setItems(positions);
-        return order;
+    /**
+     * Runs the work while this instance holds the session advisory lock with the given key,
+     * completes empty without running it when another session holds the lock.
+     * The lock is taken and released on a connection kept for the whole work, the work itself may use any connection.
+     */
+    public <T> Mono<T> withAdvisoryLock(long key, Mono<T> work) {
+        return databaseClient.inConnection(connection -> Mono.usingWhen(
+                advisoryLock(connection, "pg_try_advisory_lock", key).filter(Boolean::booleanValue),
+                locked -> work,
+                locked -> advisoryLock(connection, "pg_advisory_unlock", key)));
     }
 
-    private OrderPosition mapToOrderPosition(Map<String, Object> row) {
-        OrderPosition position = new OrderPosition();
-        position.setId((Long) row.get("position_id"));
-        position.setOrderId((Long) row.get("id"));
-        position.setTitle((String) row.get("title"));
-        position.setDescription((String) row.get("description"));
-        position.setImgPath((String) row.get("image_path"));
-        position.setPrice((Double) row.get("price"));
-        position.setCount((Integer) row.get("count"));
-        return position;
+    private static Mono<Boolean> advisoryLock(Connection connection, String function, long key) {
+        return Mono.from(connection.createStatement("SELECT " + function + "($1)").bind("$1", key).execute())
+                .flatMap(result -> Mono.from(result.map((row, metadata) -> row.get(0, Boolean.class))));
     }
-}
 
+    private static String positionJson(String alias) {
+        return """
+            jsonb_build_object('id', %1$s.id, 'itemId', %1$s.item_id, 'snapshotHash', encode(%1$s.snapshot_hash, 'hex'),
+                               'price', %1$s.price, 'count', %1$s.count)""".formatted(alias);
+    }
+
+    private Order mapToOrder(Row row) {
+        Order order = new Order();
+        order.setId(row.get("id", Long.class));
+        order.setUserId(row.get("user_id", Long.class));
+        order.setTotalSum(row.get("total_sum", Double.class));
+        order.setStatus(OrderStatus.valueOf(row.get("status", String.class)));
+        order.setItems(positionsReader.read(row.get("positions", Json.class).asArray(), order.getId()));
+        return order;
+    }
+}
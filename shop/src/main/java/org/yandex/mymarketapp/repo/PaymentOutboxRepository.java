@@ -0,0 +1,83 @@
+package org.yandex.mymarketapp.repo;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.yandex.mymarketapp.model.domain.PaymentOutboxEntry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+
+@Repository
+public interface PaymentOutboxRepository extends R2dbcRepository<PaymentOutboxEntry, Long> {
+
+    /**
+     * Takes up to {@code limit} due entries and hides them from other relays until {@code leaseUntil}.
+     * The claim commits on its own, so no transaction stays open while the payment is sent.
+     */
+    @Query("""
+        UPDATE payment_outbox o SET attempts = o.attempts + 1, next_attempt_at = :leaseUntil
+        WHERE o.id IN (
+            SELECT id FROM payment_outbox
+            WHERE next_attempt_at <= now()
+            ORDER BY next_attempt_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+        )
+        RETURNING o.*
+        """)
+    Flux<PaymentOutboxEntry> claimDue(@Param("leaseUntil") OffsetDateTime leaseUntil, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE payment_outbox SET next_attempt_at = :nextAttemptAt, last_error = :error WHERE id = :id")
+    Mono<Integer> reschedule(@Param("id") Long id, @Param("nextAttemptAt") OffsetDateTime nextAttemptAt, @Param("error") String error);
+
+    /**
+     * Removes the entry and moves its pending order to {@code status} in one statement,
+     * a cancelled order is taken back out of the sales rollups and the order stats of its user.
+     * The rollups get negative amounts added to the daily_sales shard of the order
+     * (its id modulo {@link SalesRollupRepository#DAILY_SALES_SHARDS}) and to item rows in item id order, like checkout does.
+     *
+     * @return number of orders moved, 0 when the order was settled before
+     */
+    @Query("""
+        WITH done AS (
+            DELETE FROM payment_outbox WHERE id = :id RETURNING order_id
+        ), settled AS (
+            UPDATE orders SET status = :status
+            WHERE id IN (SELECT order_id FROM done) AND status = 'PENDING_PAYMENT'
+            RETURNING id, user_id, total_sum, created_at
+        ), user_stats AS (
+            UPDATE user_order_stats u
+            SET orders_count = u.orders_count - 1, total_spent = u.total_spent - s.total_sum
+            FROM settled s
+            WHERE u.user_id = s.user_id AND :status = 'CANCELLED'
+        ), cancelled AS (
+            SELECT (s.created_at AT TIME ZONE 'UTC')::date AS day, s.id AS order_id, op.item_id, op.count, op.price
+            FROM settled s
+            JOIN order_positions op ON op.order_id = s.id
+            WHERE :status = 'CANCELLED'
+        ), day_rollup AS (
+            INSERT INTO daily_sales (day, orders_count, units, revenue, shard)
+            SELECT day, -1, -sum(count), -sum(price * count), order_id %\s""" + SalesRollupRepository.DAILY_SALES_SHARDS + """
+            FROM cancelled GROUP BY day, order_id
+            ON CONFLICT (day, shard) DO UPDATE SET orders_count = daily_sales.orders_count + excluded.orders_count,
+                                                   units = daily_sales.units + excluded.units,
+                                                   revenue = daily_sales.revenue + excluded.revenue
+        ), item_rollup AS (
+            INSERT INTO item_sales (item_id, orders_count, units, revenue)
+            SELECT item_id, -count(*), -sum(count), -sum(price * count) FROM cancelled
+            WHERE item_id IS NOT NULL
+            GROUP BY item_id
+            ORDER BY item_id
+            ON CONFLICT (item_id) DO UPDATE SET orders_count = item_sales.orders_count + excluded.orders_count,
+                                                units = item_sales.units + excluded.units,
+                                                revenue = item_sales.revenue + excluded.revenue
+        )
+        SELECT count(*) AS settled FROM settled
+        """)
+    Mono<Long> settle(@Param("id") Long id, @Param("status") String status);
+}
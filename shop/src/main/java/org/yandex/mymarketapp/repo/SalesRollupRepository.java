@@ -0,0 +1,61 @@
+package org.yandex.mymarketapp.repo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.yandex.mymarketapp.model.dto.DailySalesDto;
+import org.yandex.mymarketapp.model.dto.ItemSalesDto;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+
+/**
+ * Reads the sales rollups kept up to date by {@link OrderRepository#save} and {@link PaymentOutboxRepository#settle}
+ */
+@Repository
+@RequiredArgsConstructor
+public class SalesRollupRepository {
+
+    /**
+     * Rows each day of daily_sales is spread over, an order goes to the shard of its id
+     */
+    public static final int DAILY_SALES_SHARDS = 16;
+
+    private final DatabaseClient databaseClient;
+
+    public Flux<DailySalesDto> findDailySales(LocalDate from, LocalDate to) {
+        return databaseClient.sql("""
+                        SELECT day, sum(orders_count)::bigint AS orders_count, sum(units)::bigint AS units, sum(revenue) AS revenue
+                        FROM daily_sales
+                        WHERE day BETWEEN :from AND :to
+                        GROUP BY day
+                        ORDER BY day
+                        """)
+                .bind("from", from)
+                .bind("to", to)
+                .map(row -> new DailySalesDto(
+                        row.get("day", LocalDate.class),
+                        row.get("orders_count", Long.class),
+                        row.get("units", Long.class),
+                        row.get("revenue", Double.class)))
+                .all();
+    }
+
+    public Flux<ItemSalesDto> findTopItems(int limit) {
+        return databaseClient.sql("""
+                        SELECT s.item_id, i.title, s.orders_count, s.units, s.revenue
+                        FROM item_sales s
+                        LEFT JOIN items i ON i.id = s.item_id
+                        ORDER BY s.revenue DESC, s.item_id
+                        LIMIT :limit
+                        """)
+                .bind("limit", limit)
+                .map(row -> new ItemSalesDto(
+                        row.get("item_id", Long.class),
+                        row.get("title", String.class),
+                        row.get("orders_count", Long.class),
+                        row.get("units", Long.class),
+                        row.get("revenue", Double.class)))
+                .all();
+    }
+}
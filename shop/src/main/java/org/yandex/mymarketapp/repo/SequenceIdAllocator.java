@@ -0,0 +1,84 @@
+package org.yandex.mymarketapp.repo;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Ids of a database sequence reserved a block at a time, so rows get their ids before they are inserted
+ * and rows referencing each other go to the database in one statement.
+ * A block is reserved with one query when the reserved ids run out; ids left unused when the application
+ * stops are skipped like ids of rolled back inserts. Ids of one instance grow, ids of several instances
+ * interleave by blocks.
+ */
+@Slf4j
+public class SequenceIdAllocator {
+
+    private final DatabaseClient databaseClient;
+    private final String sequence;
+    private final int blockSize;
+    private final Deque<Long> reserved = new ArrayDeque<>();
+
+    public SequenceIdAllocator(DatabaseClient databaseClient, String sequence, int blockSize) {
+        this.databaseClient = databaseClient;
+        this.sequence = sequence;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * {@code count} ids not given out before, in ascending order
+     */
+    public Mono<long[]> next(int count) {
+        if (count == 0) {
+            return Mono.just(new long[0]);
+        }
+        return Mono.defer(() -> {
+            long[] ids = take(count);
+            if (ids != null) {
+                return Mono.just(ids);
+            }
+            // a block of its own, what this request leaves is kept for the next ones
+            return reserve(Math.max(count, blockSize))
+                    .map(block -> {
+                        long[] taken = new long[count];
+                        for (int i = 0; i < count; i++) {
+                            taken[i] = block.get(i);
+                        }
+                        synchronized (reserved) {
+                            reserved.addAll(block.subList(count, block.size()));
+                        }
+                        return taken;
+                    });
+        });
+    }
+
+    private long[] take(int count) {
+        synchronized (reserved) {
+            if (reserved.size() < count) {
+                return null;
+            }
+            long[] ids = new long[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = reserved.poll();
+            }
+            // blocks reserved at the same time may have been queued out of order
+            Arrays.sort(ids);
+            return ids;
+        }
+    }
+
+    private Mono<List<Long>> reserve(int size) {
+        return databaseClient.sql("SELECT nextval(:sequence::regclass) AS id FROM generate_series(1, :size) ORDER BY 1")
+                .bind("sequence", sequence)
+                .bind("size", size)
+                .map(row -> row.get("id", Long.class))
+                .all()
+                .collectList()
+                .doOnNext(block -> log.debug("Reserved {} ids of {}", block.size(), sequence));
+    }
+}
@@ -0,0 +1,34 @@
+package org.yandex.mymarketapp.repo;
+
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
+
+public final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    /**
+     * Runs the action once the reactive transaction of the subscriber commits, never when it rolls back.
+     * Without a transaction the action runs right away.
+     */
+    public static Mono<Void> afterCommit(Mono<Void> action) {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .map(sync -> {
+                    if (!sync.isSynchronizationActive()) {
+                        return false;
+                    }
+                    sync.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public Mono<Void> afterCommit() {
+                            return action;
+                        }
+                    });
+                    return true;
+                })
+                .onErrorResume(NoTransactionException.class, e -> Mono.just(false))
+                .flatMap(registered -> registered ? Mono.<Void>empty() : action);
+    }
+}
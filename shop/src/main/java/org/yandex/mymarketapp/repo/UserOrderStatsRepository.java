@@ -0,0 +1,27 @@
+package org.yandex.mymarketapp.repo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.yandex.mymarketapp.model.dto.UserOrderStatsDto;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reads the per-user order stats kept up to date by {@link OrderRepository#save} and {@link PaymentOutboxRepository#settle}
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserOrderStatsRepository {
+
+    private final DatabaseClient databaseClient;
+
+    public Mono<UserOrderStatsDto> findByUserId(Long userId) {
+        return databaseClient.sql("SELECT orders_count, total_spent FROM user_order_stats WHERE user_id = :userId")
+                .bind("userId", userId)
+                .map(row -> new UserOrderStatsDto(
+                        row.get("orders_count", Long.class),
+                        row.get("total_spent", Double.class)))
+                .one()
+                .defaultIfEmpty(UserOrderStatsDto.EMPTY);
+    }
+}
@@ -0,0 +1,98 @@
+package org.yandex.mymarketapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Deletes carts whose positions were all untouched for longer than the idle age.
+ * Walks users in id order, a bounded batch per statement with a pause between batches,
+ * so a run never holds many row locks nor keeps the pool busy for long.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "market.cart.sweeper.enabled", havingValue = "true")
+public class AbandonedCartSweeper {
+
+    private final CartPositionsRepository cartRepo;
+    private final Counter reclaimedRows;
+    private final Counter reclaimedCarts;
+    private final Timer runTimer;
+
+    @Value("${market.cart.sweeper.idle-age:P30D}")
+    private Duration idleAge;
+
+    @Value("${market.cart.sweeper.batch-size:200}")
+    private int batchSize;
+
+    @Value("${market.cart.sweeper.batch-pause:PT0.5S}")
+    private Duration batchPause;
+
+    @Value("${market.cart.sweeper.max-batches-per-run:50}")
+    private int maxBatchesPerRun;
+
+    public AbandonedCartSweeper(CartPositionsRepository cartRepo, MeterRegistry meterRegistry) {
+        this.cartRepo = cartRepo;
+        this.reclaimedRows = Counter.builder("market.cart.sweeper.reclaimed.rows")
+                .description("cart_positions rows deleted by the abandoned cart sweeper")
+                .register(meterRegistry);
+        this.reclaimedCarts = Counter.builder("market.cart.sweeper.reclaimed.carts")
+                .description("Abandoned carts deleted by the sweeper")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("market.cart.sweeper.run")
+                .description("Duration of abandoned cart sweeper runs")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${market.cart.sweeper.interval:PT10M}", initialDelayString = "${market.cart.sweeper.interval:PT10M}")
+    public Mono<Long> sweep() {
+        OffsetDateTime cutoff = OffsetDateTime.now().minus(idleAge);
+        Timer.Sample sample = Timer.start();
+        return sweepBatch(Long.MIN_VALUE, cutoff, 1)
+                .doOnNext(deleted -> {
+                    sample.stop(runTimer);
+                    if (deleted > 0) {
+                        log.info("Abandoned cart sweeper deleted {} cart positions idle since {}", deleted, cutoff);
+                    }
+                })
+                .doOnError(e -> log.error("Abandoned cart sweeper failed", e));
+    }
+
+    private Mono<Long> sweepBatch(Long afterUserId, OffsetDateTime cutoff, int batch) {
+        return cartRepo.findAbandonedUserIds(afterUserId, cutoff, batchSize)
+                .collectList()
+                .flatMap(userIds -> {
+                    if (userIds.isEmpty()) {
+                        return Mono.just(0L);
+                    }
+                    // carts touched since they were found are skipped by the delete, only deleted ones are counted
+                    return cartRepo.deleteAbandonedCarts(userIds, cutoff)
+                            .collectList()
+                            .flatMap(deletedRows -> {
+                                long deleted = deletedRows.size();
+                                reclaimedRows.increment(deleted);
+                                reclaimedCarts.increment(deletedRows.stream().distinct().count());
+                                return next(userIds, cutoff, batch).map(rest -> rest + deleted);
+                            });
+                });
+    }
+
+    private Mono<Long> next(List<Long> userIds, OffsetDateTime cutoff, int batch) {
+        if (userIds.size() < batchSize || batch >= maxBatchesPerRun) {
+            return Mono.just(0L);
+        }
+        return Mono.delay(batchPause)
+                .then(Mono.defer(() -> sweepBatch(userIds.get(userIds.size() - 1), cutoff, batch + 1)));
+    }
+}
@@ -0,0 +1,113 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Folds bursts of changes of the same cart position into one write.
+ * A change is written right away unless a write of the same position is still running;
+ * changes arriving meanwhile are folded together and written once it is done.
+ * Every caller completes only after the write containing its change, so the redirect
+ * that follows a click always sees it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CartMutationCoalescer {
+
+    private final CartStore cartStore;
+
+    @Value("${market.cart.coalesce.linger:PT0S}")
+    private Duration linger;
+
+    private final Map<PositionKey, Batch> open = new ConcurrentHashMap<>();
+    private final Map<PositionKey, Batch> writing = new ConcurrentHashMap<>();
+
+    public Mono<Void> submit(Long itemId, Long userId, QuantityChange change) {
+        return Mono.defer(() -> {
+            PositionKey key = new PositionKey(userId, itemId);
+            Batch[] created = new Batch[1];
+            Batch batch = open.compute(key, (k, current) -> {
+                if (current != null) {
+                    current.change = current.change.andThen(change);
+                    current.operations++;
+                    return current;
+                }
+                Batch previous = writing.get(k);
+                created[0] = new Batch(change, previous == null ? Mono.empty() : previous.done());
+                return created[0];
+            });
+            if (created[0] != null) {
+                schedule(key, batch);
+            }
+            return batch.done();
+        });
+    }
+
+    private void schedule(PositionKey key, Batch batch) {
+        Mono<?> ready = linger.isZero() ? batch.previous : batch.previous.then(Mono.delay(linger));
+        ready.then(Mono.defer(() -> write(key, batch)))
+                .subscribe(null,
+                        error -> batch.sink.tryEmitError(error),
+                        () -> batch.sink.tryEmitEmpty());
+    }
+
+    private Mono<Void> write(PositionKey key, Batch batch) {
+        open.compute(key, (k, current) -> {
+            if (current == batch) {
+                writing.put(k, batch);
+                return null;
+            }
+            return current;
+        });
+        if (batch.operations > 1) {
+            log.info("Coalesced {} changes of item {} for user {} into one write", batch.operations, key.itemId(), key.userId());
+        }
+        return apply(key.itemId(), key.userId(), batch.change)
+                .doFinally(signal -> writing.remove(key, batch));
+    }
+
+    private Mono<Void> apply(Long itemId, Long userId, QuantityChange change) {
+        if (QuantityChange.PLUS.equals(change)) {
+            return cartStore.increase(itemId, userId);
+        }
+        if (QuantityChange.MINUS.equals(change)) {
+            return cartStore.decrease(itemId, userId);
+        }
+        if (QuantityChange.REMOVE.equals(change)) {
+            return cartStore.remove(itemId, userId);
+        }
+        if (QuantityChange.NONE.equals(change)) {
+            return Mono.empty();
+        }
+        return cartStore.apply(itemId, userId, change);
+    }
+
+    private record PositionKey(Long userId, Long itemId) {
+    }
+
+    private static final class Batch {
+        private final Sinks.Empty<Void> sink = Sinks.empty();
+        private final Mono<Void> previous;
+        private QuantityChange change;
+        private int operations = 1;
+
+        private Batch(QuantityChange change, Mono<Void> previous) {
+            this.change = change;
+            this.previous = previous.onErrorResume(e -> Mono.empty());
+        }
+
+        private Mono<Void> done() {
+            return sink.asMono();
+        }
+    }
+}
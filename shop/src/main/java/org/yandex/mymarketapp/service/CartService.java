@@ -2,100 +2,136 @@ package org.yandex.mymarketapp.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.yandex.mymarketapp.model.domain.CartPosition;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import org.yandex.mymarketapp.model.dto.CartChangeDto;
 import org.yandex.mymarketapp.model.dto.CartItemsDto;
 import org.yandex.mymarketapp.model.dto.ItemDto;
 import org.yandex.mymarketapp.model.exception.ItemNotFoundException;
 import org.yandex.mymarketapp.model.mapper.ItemMapper;
-import org.yandex.mymarketapp.repo.CartPositionsRepository;
 import org.yandex.mymarketapp.repo.ItemRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
-@Transactional(readOnly = true)
 public class CartService {
 
+    private static final String CART_ITEMS_CACHE = "cart_items";
+
     private final ItemRepository itemsRepo;
-    private final CartPositionsRepository cartRepo;
+    private final CartStore cartStore;
+    private final CartMutationCoalescer coalescer;
+    private final CookieCartStore cookieCartStore;
     private final ItemMapper itemMapper;
     private final org.yandex.payment.api.BalanceApi balanceApi;
+    private final ObjectProvider<CacheManager> cacheManager;
+
+    @Value("${market.cart.anonymous-storage:server}")
+    private String anonymousStorage;
 
-    @Transactional
-    @CacheEvict(value = {"cart_items"}, key = "#userId")
+    @CacheEvict(value = "cart_items", key = "#userId", condition = "#root.target.isServerSide(#userId)")
     public Mono<Void> increaseQuantityInCart(Long itemId, Long userId) {
-        return cartRepo.findByItemIdAndUserId(itemId, userId)
-                .hasElement()
-                .flatMap(itemExists -> {
-                    if (itemExists) {
-                        log.info("Count of items with id {} for user {} increased", itemId, userId);
-                        return cartRepo.increaseItemCount(itemId, userId).then();
-                    } else {
-                        return itemsRepo.findById(itemId)
-                                .switchIfEmpty(Mono.error(new ItemNotFoundException("Item not found with id " + itemId + " for user "+ userId)))
-                                .doOnNext(item -> log.info("Saved item with id {} for user {} increased", item.getId(), userId))
-                                .flatMap(item -> cartRepo.save(new CartPosition(item.getId(), userId)))
-                                .then();
-                    }
-                });
+        return change(itemId, userId, QuantityChange.PLUS);
     }
 
-    @Transactional
-    @CacheEvict(value = "cart_items", key = "#userId")
+    @CacheEvict(value = "cart_items", key = "#userId", condition = "#root.target.isServerSide(#userId)")
     public Mono<Void> decreaseQuantityInCart(Long itemId, Long userId) {
-        return cartRepo.findByItemIdAndUserId(itemId, userId)
-                .flatMap(cartPosition -> {
-                    if (cartPosition.getCount() <= 1) {
-                        log.info("Count of items with id {} is 1 or less, removing from cart", itemId);
-                        return removeFromCart(itemId, userId);
-                    } else {
-                        log.info("Count of items with id {} for user {} decreased", itemId, userId);
-                        return cartRepo.decreaseItemCount(itemId, userId).then();
-                    }
-                })
-                .switchIfEmpty(Mono.fromRunnable(() ->
-                        log.info("there is nothing to remove from cart for id {} for user {}", itemId, userId)
-                ));
+        return change(itemId, userId, QuantityChange.MINUS);
     }
 
-    @Transactional
-    @CacheEvict(value = "cart_items", key = "#userId")
+    @CacheEvict(value = "cart_items", key = "#userId", condition = "#root.target.isServerSide(#userId)")
     public Mono<Void> removeFromCart(Long itemId, Long userId) {
-        return cartRepo.removeItemFromCartByItemId(itemId, userId)
-                .doFirst(() -> log.info("removing position for id {} for user {}", itemId, userId))
-                .doOnNext(res -> {
-                    if (res > 0) {
-                        log.info("successfully removed position from cart for id {} for user {}", itemId, userId);
-                    } else {
-                        log.warn("Positions for item id {} for user {} was not found for cart", itemId, userId);
-                    }
-                }).then();
+        return change(itemId, userId, QuantityChange.REMOVE);
+    }
+
+    /**
+     * Folds all changes of the same item in request order and applies the result at once, with one cache eviction
+     */
+    @CacheEvict(value = "cart_items", key = "#userId", condition = "#root.target.isServerSide(#userId)")
+    public Mono<Void> applyChanges(Long userId, List<CartChangeDto> changes) {
+        Map<Long, QuantityChange> folded = new LinkedHashMap<>();
+        changes.forEach(change -> folded.merge(change.itemId(), change.toQuantityChange(), QuantityChange::andThen));
+        folded.values().removeIf(QuantityChange.NONE::equals);
+        if (folded.isEmpty()) {
+            return Mono.empty();
+        }
+        return isServerSide(userId) ? cartStore.applyAll(userId, folded) : cookieCartStore.applyAll(folded);
     }
 
-    @Cacheable(value = "cart_items", key = "#userId")
+    @Cacheable(value = "cart_items", key = "#userId", condition = "#root.target.isServerSide(#userId)")
     public Mono<CartItemsDto> getCartItems(Long userId) {
-        return cartRepo.findByUserId(userId)
-                .doOnNext(c -> log.info("getting cart items for user {} from DB", userId))
-                .flatMap(cp -> itemsRepo.getItemById(cp.getItemId())
-                        .switchIfEmpty(Mono.error(new ItemNotFoundException("Item not found: " + cp.getItemId())))
-                        .map(item -> itemMapper.toDto(item, cp.getCount())))
+        Mono<Map<Long, Integer>> cartCounts = isServerSide(userId) ? cartStore.getCounts(userId) : cookieCartStore.getCounts();
+        return cartCounts
+                .flatMapMany(counts -> Flux.fromIterable(counts.entrySet()))
+                .flatMap(position -> itemsRepo.getItemById(position.getKey())
+                        .switchIfEmpty(Mono.error(new ItemNotFoundException("Item not found: " + position.getKey())))
+                        .map(item -> itemMapper.toDto(item, position.getValue())))
                 .collectList()
                 .map(CartItemsDto::new);
     }
 
+    /**
+     * Answered from the cached cart when it is in the cache, only a miss costs a query to the store
+     */
     public Mono<Integer> getCountOfItemInCartByUserId(Long userId, Long itemId) {
-        return cartRepo.findCountByUserIdAndItemId(userId, itemId)
-                .switchIfEmpty(Mono.just(0));
+        if (!isServerSide(userId)) {
+            return cookieCartStore.getCount(itemId);
+        }
+        return cachedCartItems(userId)
+                .map(cart -> cart.items().stream()
+                        .filter(item -> item.getId() == itemId)
+                        .mapToInt(ItemDto::getCount)
+                        .findFirst()
+                        .orElse(0))
+                .switchIfEmpty(Mono.defer(() -> cartStore.getCount(userId, itemId)));
+    }
+
+    public Mono<Void> prepareCheckout(Long userId) {
+        return isServerSide(userId) ? cartStore.flush(userId) : cookieCartStore.exportTo(userId);
     }
 
+    @CacheEvict(value = "cart_items", key = "#userId", condition = "#root.target.isServerSide(#userId)")
+    public Mono<Void> completeCheckout(Long userId) {
+        return isServerSide(userId) ? cartStore.invalidate(userId) : cookieCartStore.clear();
+    }
+
+    /**
+     * Anonymous (negative) users keep their carts in the cart cookie when market.cart.anonymous-storage=cookie
+     */
+    public boolean isServerSide(Long userId) {
+        return userId >= 0 || !"cookie".equals(anonymousStorage);
+    }
+
+    private Mono<CartItemsDto> cachedCartItems(Long userId) {
+        CacheManager manager = cacheManager.getIfAvailable();
+        Cache cache = manager == null ? null : manager.getCache(CART_ITEMS_CACHE);
+        if (cache == null) {
+            return Mono.empty();
+        }
+        return Mono.<Object>fromFuture(() -> cache.retrieve(userId))
+                .map(value -> value instanceof Cache.ValueWrapper wrapper ? wrapper.get() : value)
+                .ofType(CartItemsDto.class)
+                .onErrorResume(e -> {
+                    log.warn("Failed to read cart of user {} from cache", userId, e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> change(Long itemId, Long userId, QuantityChange change) {
+        return isServerSide(userId) ? coalescer.submit(itemId, userId, change) : cookieCartStore.apply(itemId, change);
+    }
 
     public Mono<Boolean> isMoneyEnoughToBuy(Double totalPrice, Long userId) {
         return balanceApi.getUserBalance(userId)
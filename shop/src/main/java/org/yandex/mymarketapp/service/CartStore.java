@@ -0,0 +1,42 @@
+package org.yandex.mymarketapp.service;
+
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+public interface CartStore {
+
+    Mono<Void> increase(Long itemId, Long userId);
+
+    Mono<Void> decrease(Long itemId, Long userId);
+
+    Mono<Void> remove(Long itemId, Long userId);
+
+    /**
+     * Applies a folded change of the position in one write
+     */
+    Mono<Void> apply(Long itemId, Long userId, QuantityChange change);
+
+    /**
+     * Applies folded changes of several positions (itemId -> change) at once
+     */
+    Mono<Void> applyAll(Long userId, Map<Long, QuantityChange> changes);
+
+    /**
+     * itemId -> count for every position of the user's cart
+     */
+    Mono<Map<Long, Integer>> getCounts(Long userId);
+
+    Mono<Integer> getCount(Long userId, Long itemId);
+
+    /**
+     * Makes cart_positions reflect the current cart before checkout reads it.
+     */
+    Mono<Void> flush(Long userId);
+
+    /**
+     * Drops any state kept outside cart_positions once the cart was checked out.
+     */
+    Mono<Void> invalidate(Long userId);
+}
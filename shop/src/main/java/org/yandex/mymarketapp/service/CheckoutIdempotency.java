@@ -0,0 +1,80 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.yandex.mymarketapp.repo.CheckoutRequestRepository;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs a checkout once per idempotency key.
+ * Duplicates arriving while the checkout runs wait for it and get its result without touching the database,
+ * later ones get the order stored with the key by {@link OrderService#makeOrder}. Keys expire after the ttl.
+ * The checkout runs with the reactor context of the request that started it, which holds the cookie cart of an
+ * anonymous visitor, so that cart is read and emptied in the response like in any other request.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CheckoutIdempotency {
+
+    private final OrderService orderService;
+    private final CheckoutRequestRepository checkoutRequests;
+
+    @Value("${market.orders.idempotency.ttl:PT24H}")
+    private Duration ttl;
+
+    @Value("${market.orders.idempotency.purge-batch-size:1000}")
+    private int purgeBatchSize;
+
+    private final Map<RequestKey, Sinks.One<Long>> inFlight = new ConcurrentHashMap<>();
+
+    public Mono<Long> checkout(Long userId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return orderService.makeOrder(userId, null);
+        }
+        return Mono.deferContextual(ctx -> {
+            RequestKey key = new RequestKey(userId, idempotencyKey);
+            boolean[] created = new boolean[1];
+            Sinks.One<Long> result = inFlight.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return Sinks.one();
+            });
+            if (created[0]) {
+                // not tied to the caller: a dropped connection must not cancel a checkout its duplicates wait for
+                orderService.makeOrder(userId, idempotencyKey)
+                        .doOnTerminate(() -> inFlight.remove(key, result))
+                        .contextWrite(ctx)
+                        .subscribe(result::tryEmitValue, result::tryEmitError, result::tryEmitEmpty);
+            } else {
+                log.info("Checkout of user {} is already running, waiting for it", userId);
+            }
+            return result.asMono();
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${market.orders.idempotency.purge-interval:PT10M}", initialDelayString = "${market.orders.idempotency.purge-interval:PT10M}")
+    public Mono<Long> purgeExpired() {
+        OffsetDateTime expiredBefore = OffsetDateTime.now().minus(ttl);
+        return checkoutRequests.deleteExpired(expiredBefore, purgeBatchSize)
+                .expand(deleted -> deleted < purgeBatchSize ? Mono.empty() : checkoutRequests.deleteExpired(expiredBefore, purgeBatchSize))
+                .reduce(0L, Long::sum)
+                .doOnNext(deleted -> {
+                    if (deleted > 0) {
+                        log.info("Deleted {} expired checkout idempotency keys", deleted);
+                    }
+                })
+                .doOnError(e -> log.error("Failed to delete expired checkout idempotency keys", e));
+    }
+
+    private record RequestKey(Long userId, String idempotencyKey) {
+    }
+}
@@ -0,0 +1,183 @@
+package org.yandex.mymarketapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.yandex.mymarketapp.model.dto.CheckoutStatusDto;
+import org.yandex.mymarketapp.model.dto.CheckoutStatusDto.State;
+import org.yandex.mymarketapp.model.exception.CheckoutRejectedException;
+import org.yandex.mymarketapp.repo.CheckoutRequestRepository;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checkouts accepted without waiting for them. A submitted checkout is queued and answered with its
+ * idempotency key, workers run at most {@code workers} checkouts at a time and the queue refuses new ones
+ * once {@code capacity} are waiting or running, so a peak is served at the pace the database sustains.
+ * Only checkouts queued, running or failed are kept in memory: a completed one is dropped right away and
+ * read through the order stored with its key, a failed one is kept for the result ttl so its error can be shown.
+ * The cookie cart of an anonymous visitor is copied into the job when it is queued and emptied in the response,
+ * the job runs with the copy since the request is answered before the job starts.
+ */
+@Slf4j
+@Component
+public class CheckoutQueue {
+
+    private final CheckoutIdempotency checkoutIdempotency;
+    private final CheckoutRequestRepository checkoutRequests;
+    private final CartService cartService;
+    private final Sinks.Many<CheckoutJob> jobs = Sinks.many().unicast().onBackpressureBuffer();
+    private final Map<JobKey, CheckoutJob> known = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final int capacity;
+    private final Counter rejected;
+    private final Disposable workers;
+
+    @Value("${market.orders.checkout.result-ttl:PT10M}")
+    private Duration resultTtl;
+
+    public CheckoutQueue(CheckoutIdempotency checkoutIdempotency, CheckoutRequestRepository checkoutRequests,
+                         CartService cartService, MeterRegistry meterRegistry,
+                         @Value("${market.orders.checkout.queue-capacity:1000}") int capacity,
+                         @Value("${market.orders.checkout.workers:8}") int workers) {
+        this.checkoutIdempotency = checkoutIdempotency;
+        this.checkoutRequests = checkoutRequests;
+        this.cartService = cartService;
+        this.capacity = capacity;
+        this.rejected = Counter.builder("market.orders.checkout.rejected")
+                .description("Checkouts refused because the checkout queue was full")
+                .register(meterRegistry);
+        Gauge.builder("market.orders.checkout.pending", pending, AtomicInteger::get)
+                .description("Checkouts waiting in the queue or running")
+                .register(meterRegistry);
+        // flatMap requests only as many jobs as it may run, the rest wait in the sink
+        this.workers = jobs.asFlux()
+                .flatMap(this::process, workers)
+                .subscribe();
+    }
+
+    /**
+     * Queues the checkout, a key already queued, running or recently failed returns its current state.
+     * A completed key is queued again and completes with the order stored with it.
+     *
+     * @param idempotencyKey generated when null
+     */
+    public Mono<CheckoutStatusDto> submit(Long userId, String idempotencyKey) {
+        return Mono.deferContextual(ctx -> {
+            String key = idempotencyKey != null ? idempotencyKey : UUID.randomUUID().toString();
+            JobKey jobKey = new JobKey(userId, key);
+            Optional<CookieCart> cookieCart = cartService.isServerSide(userId) ? Optional.empty() : ctx.getOrEmpty(CookieCart.class);
+            Context jobContext = cookieCart
+                    .map(cart -> Context.of(CookieCart.class, new CookieCart(cart.counts())))
+                    .orElse(Context.empty());
+            CheckoutJob job = new CheckoutJob(userId, key, jobContext);
+            CheckoutJob existing = known.putIfAbsent(jobKey, job);
+            // a failed checkout may be retried with its key
+            if (existing != null && (existing.state != State.FAILED || !known.replace(jobKey, existing, job))) {
+                return Mono.just(existing.status());
+            }
+            if (pending.incrementAndGet() > capacity) {
+                pending.decrementAndGet();
+                known.remove(jobKey, job);
+                rejected.increment();
+                return Mono.error(new CheckoutRejectedException("Too many checkouts in progress, try again later"));
+            }
+            Sinks.EmitResult result;
+            while ((result = jobs.tryEmitNext(job)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                Thread.onSpinWait();
+            }
+            if (result.isFailure()) {
+                pending.decrementAndGet();
+                known.remove(jobKey, job);
+                return Mono.error(new CheckoutRejectedException("Checkout queue is closed"));
+            }
+            cookieCart.ifPresent(CookieCart::clear);
+            return Mono.just(job.status());
+        });
+    }
+
+    /**
+     * State of the checkout started with the key, empty when it is unknown
+     */
+    public Mono<CheckoutStatusDto> status(Long userId, String idempotencyKey) {
+        return Mono.defer(() -> {
+            CheckoutJob job = known.get(new JobKey(userId, idempotencyKey));
+            if (job != null) {
+                return Mono.just(job.status());
+            }
+            return checkoutRequests.findOrderId(userId, idempotencyKey)
+                    .map(orderId -> new CheckoutStatusDto(idempotencyKey, State.COMPLETED, orderId, null));
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${market.orders.checkout.result-ttl:PT10M}", initialDelayString = "${market.orders.checkout.result-ttl:PT10M}")
+    public void purgeResults() {
+        long expiredBefore = System.nanoTime() - resultTtl.toNanos();
+        known.values().removeIf(job -> job.finishedAt != 0 && job.finishedAt - expiredBefore < 0);
+    }
+
+    @PreDestroy
+    public void stop() {
+        jobs.tryEmitComplete();
+        workers.dispose();
+    }
+
+    private Mono<Void> process(CheckoutJob job) {
+        job.state = State.RUNNING;
+        return checkoutIdempotency.checkout(job.userId, job.key)
+                .doOnNext(orderId -> {
+                    job.orderId = orderId;
+                    job.state = State.COMPLETED;
+                    known.remove(new JobKey(job.userId, job.key), job);
+                })
+                .onErrorResume(e -> {
+                    log.warn("Checkout {} of user {} failed: {}", job.key, job.userId, e.getMessage());
+                    job.error = e.getMessage();
+                    job.state = State.FAILED;
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    job.finishedAt = System.nanoTime();
+                    pending.decrementAndGet();
+                })
+                .contextWrite(job.context)
+                .then();
+    }
+
+    private record JobKey(Long userId, String key) {
+    }
+
+    private static final class CheckoutJob {
+        private final Long userId;
+        private final String key;
+        private final Context context;
+        private volatile State state = State.QUEUED;
+        private volatile Long orderId;
+        private volatile String error;
+        private volatile long finishedAt;
+
+        private CheckoutJob(Long userId, String key, Context context) {
+            this.userId = userId;
+            this.key = key;
+            this.context = context;
+        }
+
+        private CheckoutStatusDto status() {
+            return new CheckoutStatusDto(key, state, orderId, error);
+        }
+    }
+}
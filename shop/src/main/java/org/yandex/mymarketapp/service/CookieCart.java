@@ -0,0 +1,56 @@
+package org.yandex.mymarketapp.service;
+
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cart of an anonymous visitor decoded from the request cookie.
+ * Bound to the request's reactor context, written back to the response only when changed.
+ */
+public class CookieCart {
+
+    private final TreeMap<Long, Integer> counts;
+    private boolean dirty;
+
+    public CookieCart(Map<Long, Integer> counts) {
+        this.counts = new TreeMap<>(counts);
+    }
+
+    public synchronized Map<Long, Integer> counts() {
+        return Collections.unmodifiableMap(new TreeMap<>(counts));
+    }
+
+    public synchronized int count(Long itemId) {
+        return counts.getOrDefault(itemId, 0);
+    }
+
+    public synchronized int size() {
+        return counts.size();
+    }
+
+    public synchronized int apply(Long itemId, QuantityChange change) {
+        int current = counts.getOrDefault(itemId, 0);
+        int updated = change.applyTo(current);
+        if (updated != current) {
+            if (updated > 0) {
+                counts.put(itemId, updated);
+            } else {
+                counts.remove(itemId);
+            }
+            dirty = true;
+        }
+        return updated;
+    }
+
+    public synchronized void clear() {
+        dirty |= !counts.isEmpty();
+        counts.clear();
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+}
@@ -0,0 +1,123 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cookie format: base64url(version, (varint itemId delta, varint count)*, hmac-sha256[0..16]).
+ * Item ids are sorted and stored as deltas, so a typical position takes 2-3 bytes.
+ * Anything that does not parse or does not carry a valid signature decodes to an empty cart.
+ */
+@Slf4j
+@Component
+public class CookieCartCodec {
+
+    private static final byte VERSION = 1;
+    private static final int MAC_LENGTH = 16;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+
+    public CookieCartCodec(@Value("${market.cart.cookie.secret:}") String secret) {
+        byte[] keyBytes;
+        if (secret.isBlank()) {
+            log.warn("market.cart.cookie.secret is not set, cookie carts will not survive a restart");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, MAC_ALGORITHM);
+    }
+
+    public String encode(Map<Long, Integer> counts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 + counts.size() * 3 + MAC_LENGTH);
+        out.write(VERSION);
+        long previous = 0;
+        for (Map.Entry<Long, Integer> position : new TreeMap<>(counts).entrySet()) {
+            writeVarLong(out, position.getKey() - previous);
+            writeVarLong(out, position.getValue());
+            previous = position.getKey();
+        }
+        byte[] payload = out.toByteArray();
+        byte[] signed = Arrays.copyOf(payload, payload.length + MAC_LENGTH);
+        System.arraycopy(sign(payload), 0, signed, payload.length, MAC_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(signed);
+    }
+
+    public Map<Long, Integer> decode(String value) {
+        byte[] signed;
+        try {
+            signed = Base64.getUrlDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyMap();
+        }
+        if (signed.length < 1 + MAC_LENGTH || signed[0] != VERSION) {
+            return Collections.emptyMap();
+        }
+        byte[] payload = Arrays.copyOf(signed, signed.length - MAC_LENGTH);
+        byte[] mac = Arrays.copyOfRange(signed, payload.length, signed.length);
+        if (!MessageDigest.isEqual(mac, Arrays.copyOf(sign(payload), MAC_LENGTH))) {
+            log.warn("Ignoring cart cookie with invalid signature");
+            return Collections.emptyMap();
+        }
+
+        Map<Long, Integer> counts = new TreeMap<>();
+        int[] position = {1};
+        long itemId = 0;
+        while (position[0] < payload.length) {
+            long delta = readVarLong(payload, position);
+            long count = readVarLong(payload, position);
+            if (delta <= 0 || count <= 0 || count > Integer.MAX_VALUE) {
+                return Collections.emptyMap();
+            }
+            itemId += delta;
+            counts.put(itemId, (int) count);
+        }
+        return counts;
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign cart cookie", e);
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] bytes, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64 && position[0] < bytes.length; shift += 7) {
+            byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,87 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.yandex.mymarketapp.model.domain.CartPosition;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import org.yandex.mymarketapp.model.exception.CartIsFullException;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Carts of anonymous visitors kept in the signed cart cookie. Nothing is written server-side
+ * until checkout copies the cookie cart into cart_positions.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CookieCartStore {
+
+    private final ItemService itemService;
+    private final CartPositionsRepository cartRepo;
+
+    @Value("${market.cart.cookie.max-positions:50}")
+    private int maxPositions;
+
+    public Mono<Void> apply(Long itemId, QuantityChange change) {
+        return cart().flatMap(cart -> {
+            if (cart.count(itemId) > 0 || change.applyTo(0) == 0) {
+                return Mono.fromRunnable(() -> cart.apply(itemId, change));
+            }
+            if (cart.size() >= maxPositions) {
+                return Mono.error(new CartIsFullException("Cart cannot hold more than " + maxPositions + " positions"));
+            }
+            return itemService.getItemById(itemId)
+                    .doOnNext(item -> cart.apply(itemId, change))
+                    .then();
+        });
+    }
+
+    public Mono<Void> applyAll(Map<Long, QuantityChange> changes) {
+        return Flux.fromIterable(changes.entrySet())
+                .concatMap(change -> apply(change.getKey(), change.getValue()))
+                .then();
+    }
+
+    public Mono<Map<Long, Integer>> getCounts() {
+        return cart().map(CookieCart::counts);
+    }
+
+    public Mono<Integer> getCount(Long itemId) {
+        return cart().map(cart -> cart.count(itemId));
+    }
+
+    /**
+     * Copies the cookie cart into cart_positions, so checkout reads it like any other cart.
+     */
+    public Mono<Void> exportTo(Long userId) {
+        return cart().flatMap(cart -> {
+            List<CartPosition> positions = new ArrayList<>(cart.size());
+            cart.counts().forEach((itemId, count) -> {
+                CartPosition position = new CartPosition(itemId, userId);
+                position.setCount(count);
+                positions.add(position);
+            });
+            log.info("Exporting cookie cart of user {}, {} positions", userId, positions.size());
+            return cartRepo.clearCart(userId)
+                    .thenMany(cartRepo.saveAll(positions))
+                    .then();
+        });
+    }
+
+    public Mono<Void> clear() {
+        return cart().doOnNext(CookieCart::clear).then();
+    }
+
+    private Mono<CookieCart> cart() {
+        return Mono.deferContextual(ctx -> Mono.justOrEmpty(ctx.<CookieCart>getOrEmpty(CookieCart.class)))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("No cart cookie bound to the request")));
+    }
+}
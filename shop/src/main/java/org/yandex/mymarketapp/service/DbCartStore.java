@@ -0,0 +1,129 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.yandex.mymarketapp.model.domain.CartPosition;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import org.yandex.mymarketapp.model.exception.ItemNotFoundException;
+import org.yandex.mymarketapp.repo.CartBulkRepository;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+@ConditionalOnProperty(name = "market.cart.storage", havingValue = "db", matchIfMissing = true)
+public class DbCartStore implements CartStore {
+
+    private final CartPositionsRepository cartRepo;
+    private final CartBulkRepository bulkRepo;
+
+    @Override
+    @Transactional
+    public Mono<Void> increase(Long itemId, Long userId) {
+        return cartRepo.addItem(itemId, userId)
+                .flatMap(added -> added > 0
+                        ? Mono.<Void>empty()
+                        : Mono.error(new ItemNotFoundException("Item not found with id " + itemId + " for user "+ userId)))
+                .doOnSuccess(v -> log.info("Count of items with id {} for user {} increased", itemId, userId));
+    }
+
+    @Override
+    @Transactional
+    public Mono<Void> decrease(Long itemId, Long userId) {
+        return cartRepo.findForUpdateByItemIdAndUserId(itemId, userId)
+                .flatMap(cartPosition -> {
+                    if (cartPosition.getCount() <= 1) {
+                        log.info("Count of items with id {} is 1 or less, removing from cart", itemId);
+                        return remove(itemId, userId);
+                    } else {
+                        log.info("Count of items with id {} for user {} decreased", itemId, userId);
+                        return cartRepo.decreaseItemCount(itemId, userId).then();
+                    }
+                })
+                .switchIfEmpty(Mono.fromRunnable(() ->
+                        log.info("there is nothing to remove from cart for id {} for user {}", itemId, userId)
+                ));
+    }
+
+    @Override
+    @Transactional
+    public Mono<Void> remove(Long itemId, Long userId) {
+        return cartRepo.removeItemFromCartByItemId(itemId, userId)
+                .doFirst(() -> log.info("removing position for id {} for user {}", itemId, userId))
+                .doOnNext(res -> {
+                    if (res > 0) {
+                        log.info("successfully removed position from cart for id {} for user {}", itemId, userId);
+                    } else {
+                        log.warn("Positions for item id {} for user {} was not found for cart", itemId, userId);
+                    }
+                }).then();
+    }
+
+    @Override
+    @Transactional
+    public Mono<Void> apply(Long itemId, Long userId, QuantityChange change) {
+        return cartRepo.findForUpdateByItemIdAndUserId(itemId, userId)
+                .map(CartPosition::getCount)
+                .defaultIfEmpty(0)
+                .flatMap(current -> {
+                    int updated = change.applyTo(current);
+                    if (updated == current) {
+                        return Mono.empty();
+                    }
+                    if (updated == 0) {
+                        return remove(itemId, userId);
+                    }
+                    log.info("Count of items with id {} for user {} changed from {} to {}", itemId, userId, current, updated);
+                    if (current == 0) {
+                        // there was no row to lock: a concurrent first add of the item is merged by the upsert
+                        return cartRepo.addItem(itemId, userId, change.reset(), change.shift(), change.floor())
+                                .flatMap(added -> added > 0
+                                        ? Mono.<Void>empty()
+                                        : Mono.error(new ItemNotFoundException("Item not found with id " + itemId + " for user "+ userId)));
+                    }
+                    return cartRepo.setItemCount(itemId, userId, updated).then();
+                });
+    }
+
+    @Override
+    @Transactional
+    public Mono<Void> applyAll(Long userId, Map<Long, QuantityChange> changes) {
+        return bulkRepo.applyChanges(userId, changes)
+                .collectList()
+                .flatMap(missing -> missing.isEmpty()
+                        ? Mono.<Void>empty()
+                        : Mono.error(new ItemNotFoundException("Items not found with ids " + missing + " for user " + userId)))
+                .doOnSuccess(v -> log.info("Applied {} cart changes for user {}", changes.size(), userId));
+    }
+
+    @Override
+    public Mono<Map<Long, Integer>> getCounts(Long userId) {
+        return cartRepo.findByUserId(userId)
+                .doOnNext(c -> log.info("getting cart items for user {} from DB", userId))
+                .collectMap(CartPosition::getItemId, CartPosition::getCount, LinkedHashMap::new);
+    }
+
+    @Override
+    public Mono<Integer> getCount(Long userId, Long itemId) {
+        return cartRepo.findCountByUserIdAndItemId(userId, itemId)
+                .switchIfEmpty(Mono.just(0));
+    }
+
+    @Override
+    public Mono<Void> flush(Long userId) {
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<Void> invalidate(Long userId) {
+        return Mono.empty();
+    }
+}
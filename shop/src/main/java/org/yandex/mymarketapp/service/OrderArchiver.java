@@ -0,0 +1,92 @@
+package org.yandex.mymarketapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.yandex.mymarketapp.model.domain.Order;
+import org.yandex.mymarketapp.repo.OrderArchiveRepository;
+import org.yandex.mymarketapp.repo.OrderRepository;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Moves settled orders older than the minimal age from the database to the archive segments.
+ * A batch is written to the archive before it is deleted from the database, a batch repeated after
+ * a crash in between is skipped by the archive and only deleted.
+ * A run holds a database advisory lock, so of several instances sharing the archive directory only one archives at a time.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "market.orders.archive.enabled", havingValue = "true")
+public class OrderArchiver {
+
+    static final long LOCK_KEY = 0x4F52_4445_5241_5243L;
+
+    private final OrderRepository orderRepo;
+    private final OrderArchiveRepository archiveRepo;
+    private final Counter archivedOrders;
+
+    @Value("${market.orders.archive.min-age:P90D}")
+    private Duration minAge;
+
+    @Value("${market.orders.archive.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${market.orders.archive.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    public OrderArchiver(OrderRepository orderRepo, OrderArchiveRepository archiveRepo, MeterRegistry meterRegistry) {
+        this.orderRepo = orderRepo;
+        this.archiveRepo = archiveRepo;
+        this.archivedOrders = Counter.builder("market.orders.archive.archived")
+                .description("Orders moved from the database to the archive segments")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return orders removed from the database, 0 when another instance is archiving
+     */
+    @Scheduled(fixedDelayString = "${market.orders.archive.interval:PT6H}", initialDelayString = "${market.orders.archive.interval:PT6H}")
+    public Mono<Long> archive() {
+        OffsetDateTime cutoff = OffsetDateTime.now().minus(minAge);
+        return orderRepo.withAdvisoryLock(LOCK_KEY, archiveBatch(0L, cutoff, 1))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.debug("Order archiving skipped, another instance is running it");
+                    return 0L;
+                }))
+                .doOnNext(archived -> {
+                    if (archived > 0) {
+                        log.info("Archived {} orders made before {}", archived, cutoff);
+                    }
+                })
+                .doOnError(e -> log.error("Order archiving failed", e));
+    }
+
+    private Mono<Long> archiveBatch(long afterId, OffsetDateTime cutoff, int batch) {
+        return orderRepo.findArchivable(cutoff, afterId, batchSize)
+                .collectList()
+                .flatMap(orders -> {
+                    if (orders.isEmpty()) {
+                        return Mono.just(0L);
+                    }
+                    List<Long> orderIds = orders.stream().map(Order::getId).toList();
+                    return archiveRepo.append(orders)
+                            .then(orderRepo.deleteOrders(orderIds))
+                            .flatMap(deleted -> {
+                                archivedOrders.increment(deleted);
+                                if (orders.size() < batchSize || batch >= maxBatchesPerRun) {
+                                    return Mono.just(deleted);
+                                }
+                                return archiveBatch(orderIds.get(orderIds.size() - 1), cutoff, batch + 1)
+                                        .map(rest -> rest + deleted);
+                            });
+                });
+    }
+}
@@ -0,0 +1,222 @@
+package org.yandex.mymarketapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.yandex.mymarketapp.model.domain.Order;
+import org.yandex.mymarketapp.model.dto.OrderDto;
+import org.yandex.mymarketapp.model.mapper.OrderMapper;
+import org.yandex.mymarketapp.repo.OrderArchiveRepository;
+import org.yandex.mymarketapp.repo.OrderRepository;
+import org.yandex.mymarketapp.repo.TransactionHooks;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Order history of users in redis: one entry per order plus a per-user index, a sorted set of order ids.
+ * A new order is only appended to the index, its entry is stored by the first read. A settled order has its entry
+ * overwritten with the settled status, and a pending entry never replaces a settled one, so a read of the database
+ * made before the settlement cannot put the old status back. Keeping the cache current costs the same for any
+ * length of history.
+ * The index is read only once it holds the {@code loaded} member, which is added with all ids of the user.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderHistoryCache {
+
+    static final String LOADED_MEMBER = "loaded";
+
+    // ARGV: ttl, orderId
+    // also added to an index being loaded: the order may be committed after its ids were read from the db
+    private static final RedisScript<Long> APPEND_SCRIPT = RedisScript.of("""
+            redis.call('ZADD', KEYS[1], ARGV[2], ARGV[2])
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    // ARGV: ttl, then order ids
+    private static final RedisScript<Long> LOAD_SCRIPT = RedisScript.of("""
+            if redis.call('ZSCORE', KEYS[1], 'loaded') then
+                return 0
+            end
+            for i = 2, #ARGV do
+                redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i])
+            end
+            redis.call('ZADD', KEYS[1], 0, 'loaded')
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    // ARGV: ttl, order json, status
+    // a payment settles an order once, so only a pending entry may be replaced
+    static final RedisScript<Long> STORE_SCRIPT = RedisScript.of("""
+            if ARGV[3] == 'PENDING_PAYMENT' then
+                local current = redis.call('GET', KEYS[1])
+                if current and cjson.decode(current)['status'] ~= 'PENDING_PAYMENT' then
+                    return 0
+                end
+            end
+            redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[1])
+            return 1
+            """, Long.class);
+
+    private final ReactiveStringRedisTemplate redis;
+    private final ObjectMapper objectMapper;
+    private final OrderRepository orderRepo;
+    private final OrderArchiveRepository archiveRepo;
+    private final OrderMapper orderMapper;
+
+    @Value("${market.orders.cache.ttl:PT30M}")
+    private Duration ttl;
+
+    /**
+     * Up to {@code limit} orders of the user with ids below {@code before}, newest first.
+     * Entries missing in redis are read from the database or the archive and stored.
+     */
+    public Flux<OrderDto> getPage(Long userId, long before, int limit) {
+        return loadIndex(userId)
+                .thenMany(redis.opsForZSet().reverseRangeByScore(indexKey(userId),
+                        Range.open(0.0, (double) before), Limit.limit().count(limit)))
+                .map(Long::valueOf)
+                .collectList()
+                .flatMapMany(ids -> getOrders(userId, ids));
+    }
+
+    public Mono<OrderDto> getOrder(Long userId, long orderId) {
+        return getOrders(userId, List.of(orderId)).next();
+    }
+
+    /**
+     * Adds the order to the history once the current transaction commits, right away without one
+     */
+    public Mono<Void> appendAfterCommit(Long userId, Long orderId) {
+        return TransactionHooks.afterCommit(append(userId, orderId));
+    }
+
+    /**
+     * Stores the order as it is in the database once the current transaction commits, right away without one.
+     * Called when the order is settled, the stored entry replaces a pending one even if it was read concurrently.
+     */
+    public Mono<Void> refreshAfterCommit(Long userId, Long orderId) {
+        return TransactionHooks.afterCommit(refresh(userId, orderId));
+    }
+
+    private Mono<Void> append(Long userId, Long orderId) {
+        return redis.execute(APPEND_SCRIPT, List.of(indexKey(userId)),
+                        List.of(Long.toString(ttl.toMillis()), Long.toString(orderId)))
+                .then()
+                .doOnSuccess(v -> log.info("Appended order {} to cached history of user {}", orderId, userId))
+                // an index missing the order would hide it until it expires
+                .onErrorResume(e -> {
+                    log.error("Failed to append order {} to cached history of user {}", orderId, userId, e);
+                    return redis.delete(indexKey(userId)).onErrorResume(ignored -> Mono.empty()).then();
+                });
+    }
+
+    private Mono<Void> refresh(Long userId, Long orderId) {
+        return orderRepo.findByIdsWithPositions(userId, List.of(orderId))
+                .map(orderMapper::toDto)
+                .concatMap(order -> store(userId, order))
+                .then()
+                // a pending entry left behind would show the old status until it expires
+                .onErrorResume(e -> {
+                    log.error("Failed to refresh cached order {} of user {}", orderId, userId, e);
+                    return redis.delete(orderKey(userId, orderId)).onErrorResume(ignored -> Mono.empty()).then();
+                });
+    }
+
+    private Mono<OrderDto> store(Long userId, OrderDto order) {
+        return redis.execute(STORE_SCRIPT, List.of(orderKey(userId, order.id())),
+                        List.of(Long.toString(ttl.toMillis()), write(order), order.status().name()))
+                .then(Mono.just(order));
+    }
+
+    private Mono<Void> loadIndex(Long userId) {
+        return redis.opsForZSet().score(indexKey(userId), LOADED_MEMBER)
+                .hasElement()
+                .flatMap(loaded -> loaded ? Mono.empty() : orderRepo.findIdsByUserId(userId)
+                        .concatWith(archiveRepo.findAll(userId).map(Order::getId))
+                        .collectList()
+                        .flatMap(ids -> {
+                            List<String> args = new ArrayList<>(ids.size() + 1);
+                            args.add(Long.toString(ttl.toMillis()));
+                            ids.forEach(id -> args.add(id.toString()));
+                            log.info("Loading order index of user {} into redis, {} orders", userId, ids.size());
+                            return redis.execute(LOAD_SCRIPT, List.of(indexKey(userId)), args).then();
+                        }));
+    }
+
+    /**
+     * Orders in the order of {@code ids}, ids no longer found anywhere are left out
+     */
+    private Flux<OrderDto> getOrders(Long userId, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return redis.opsForValue().multiGet(ids.stream().map(id -> orderKey(userId, id)).toList())
+                .flatMapMany(values -> {
+                    Map<Long, OrderDto> found = new HashMap<>();
+                    List<Long> missing = new ArrayList<>();
+                    for (int i = 0; i < ids.size(); i++) {
+                        String value = values.get(i);
+                        if (value == null) {
+                            missing.add(ids.get(i));
+                        } else {
+                            found.put(ids.get(i), read(value));
+                        }
+                    }
+                    return loadOrders(userId, missing)
+                            .doOnNext(order -> found.put(order.id(), order))
+                            .thenMany(Flux.fromIterable(ids)
+                                    .mapNotNull(found::get));
+                });
+    }
+
+    private Flux<OrderDto> loadOrders(Long userId, List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return Flux.empty();
+        }
+        Set<Long> notInDb = new HashSet<>(orderIds);
+        return orderRepo.findByIdsWithPositions(userId, orderIds)
+                .doOnNext(order -> notInDb.remove(order.getId()))
+                .concatWith(Flux.defer(() -> Flux.fromIterable(notInDb))
+                        .concatMap(orderId -> archiveRepo.findOrder(orderId, userId)))
+                .map(orderMapper::toDto)
+                .concatMap(order -> store(userId, order));
+    }
+
+    private String write(OrderDto order) {
+        try {
+            return objectMapper.writeValueAsString(order);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize order " + order.id(), e);
+        }
+    }
+
+    private OrderDto read(String value) {
+        try {
+            return objectMapper.readValue(value, OrderDto.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Broken cached order: " + value, e);
+        }
+    }
+
+    static String indexKey(Long userId) {
+        return "orders:" + userId;
+    }
+
+    static String orderKey(Long userId, long orderId) {
+        return "orders:" + userId + ":" + orderId;
+    }
+}
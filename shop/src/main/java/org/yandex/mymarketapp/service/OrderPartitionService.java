@@ -0,0 +1,79 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.yandex.mymarketapp.model.dto.OrderPartitionDto;
+import org.yandex.mymarketapp.repo.OrderPartitionRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Keeps empty order partitions ahead of the order id sequence and detaches old ones on request.
+ * Orders cannot be inserted into a range without a partition, so the maintenance runs at startup and then periodically.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OrderPartitionService {
+
+    private final OrderPartitionRepository partitionRepo;
+
+    @Value("${market.orders.partitions.size:1000000}")
+    private long partitionSize;
+
+    @Value("${market.orders.partitions.ahead:2}")
+    private int partitionsAhead;
+
+    public Flux<OrderPartitionDto> getPartitions() {
+        return partitionRepo.findPartitions();
+    }
+
+    /**
+     * @return partitions created
+     */
+    @Scheduled(fixedDelayString = "${market.orders.partitions.maintenance-interval:PT1H}")
+    public Mono<Long> ensurePartitions() {
+        return Mono.zip(partitionRepo.findPartitions().collectList(), partitionRepo.findLastOrderId())
+                .flatMapMany(state -> {
+                    List<OrderPartitionDto> partitions = state.getT1();
+                    long upper = partitions.isEmpty() ? 0 : partitions.get(partitions.size() - 1).toId();
+                    long needed = state.getT2() + partitionsAhead * partitionSize;
+                    return Flux.<Long, Long>generate(() -> upper, (from, sink) -> {
+                                if (from >= needed) {
+                                    sink.complete();
+                                } else {
+                                    sink.next(from);
+                                }
+                                return from + partitionSize;
+                            })
+                            .concatMap(from -> partitionRepo.createPartition(from, from + partitionSize));
+                })
+                .count()
+                .doOnError(e -> log.error("Failed to create order partitions", e));
+    }
+
+    /**
+     * Detaches the partitions starting at {@code fromId}, ranges that may still get orders are refused
+     */
+    public Mono<OrderPartitionDto> detach(long fromId) {
+        return Mono.zip(partitionRepo.findPartitions().collectList(), partitionRepo.findLastOrderId())
+                .flatMap(state -> {
+                    OrderPartitionDto partition = state.getT1().stream()
+                            .filter(p -> p.fromId() == fromId)
+                            .findFirst()
+                            .orElse(null);
+                    if (partition == null) {
+                        return Mono.error(new IllegalArgumentException("No order partition starts at " + fromId));
+                    }
+                    if (partition.toId() > state.getT2()) {
+                        return Mono.error(new IllegalArgumentException("Order partition " + partition.orders() + " still receives orders"));
+                    }
+                    return partitionRepo.detachPartition(partition).thenReturn(partition);
+                });
+    }
+}
@@ -2,22 +2,29 @@ package org.yandex.mymarketapp.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.yandex.mymarketapp.model.domain.Order;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
+import org.yandex.mymarketapp.model.domain.PaymentOutboxEntry;
+import org.yandex.mymarketapp.model.dto.ItemDto;
 import org.yandex.mymarketapp.model.dto.OrderDto;
+import org.yandex.mymarketapp.model.dto.OrderExportDto;
 import org.yandex.mymarketapp.model.dto.OrdersDto;
 import org.yandex.mymarketapp.model.exception.OrderCreateException;
 import org.yandex.mymarketapp.model.exception.OrderNotFoundException;
 import org.yandex.mymarketapp.model.mapper.OrderMapper;
 import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import org.yandex.mymarketapp.repo.CheckoutRequestRepository;
+import org.yandex.mymarketapp.repo.OrderArchiveRepository;
 import org.yandex.mymarketapp.repo.OrderRepository;
-import org.yandex.payment.model.PaymentRequest;
+import org.yandex.mymarketapp.repo.PaymentOutboxRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.OffsetDateTime;
 import java.util.List;
 
 @Slf4j
@@ -28,41 +35,108 @@ public class OrderService {
     private final OrderRepository orderRepo;
     private final CartPositionsRepository cartRepo;
     private final OrderMapper orderMapper;
-    private final org.yandex.payment.api.PaymentsApi payApi;
+    private final CartService cartService;
+    private final PaymentOutboxRepository outboxRepo;
+    private final CheckoutRequestRepository checkoutRequests;
+    private final OrderArchiveRepository archiveRepo;
+    private final OrderHistoryCache historyCache;
+    private final UserOrderStatsService statsService;
 
+    @Value("${market.orders.page-size:20}")
+    private int pageSize;
+
+    @Value("${market.orders.export.fetch-size:500}")
+    private int exportFetchSize;
+
+    @Value("${market.orders.idempotency.ttl:PT24H}")
+    private Duration idempotencyTtl;
+
+    /**
+     * Writes the order with its payment to the outbox in one local transaction, the payment service is called
+     * later by {@link PaymentOutboxRelay}, so no connection waits on the network during checkout.
+     * A repeated {@code idempotencyKey} of the user returns the order created with it instead of a new one.
+     *
+     * @return id of the order
+     */
     @Transactional
-    @CacheEvict(value = "orders", key = "#userId")
-    public Mono<Void> makeOrder(Long userId) {
+    public Mono<Long> makeOrder(Long userId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return placeOrder(userId);
+        }
+        return checkoutRequests.claim(userId, idempotencyKey, OffsetDateTime.now().minus(idempotencyTtl))
+                .flatMap(claimed -> claimed
+                        ? placeOrder(userId).flatMap(orderId -> checkoutRequests.complete(userId, idempotencyKey, orderId).thenReturn(orderId))
+                        : checkoutRequests.findOrderId(userId, idempotencyKey)
+                                .doOnNext(orderId -> log.info("Repeated checkout of user {} returns order {}", userId, orderId))
+                                .switchIfEmpty(Mono.error(() -> new OrderCreateException("Checkout with this key is still in progress"))));
+    }
+
+    private Mono<Long> placeOrder(Long userId) {
         log.info("Making order");
-        return cartRepo.getAllCartPositions(userId)
+        return cartService.prepareCheckout(userId)
+                .thenMany(cartRepo.getAllCartPositions(userId))
                 .switchIfEmpty(Mono.defer(() -> Mono.error(new OrderCreateException("Cannot create order. cart is empty"))))
                 .collectList()
                 .flatMap(items -> {
                     Order order = new Order();
+                    order.setUserId(userId);
+                    order.setStatus(OrderStatus.PENDING_PAYMENT);
                     var orderItems = orderMapper.toEntities(items);
                     order.setItems(orderItems);
                     order.setTotalSum(orderItems.stream().mapToDouble(e -> e.getPrice()*e.getCount()).sum());
-                    return orderRepo.save(order);
+                    // only the ordered positions are removed: items added while checking out stay in the cart
+                    List<Long> orderedItemIds = items.stream().map(ItemDto::id).toList();
+                    return orderRepo.save(order)
+                            .flatMap(o -> historyCache.appendAfterCommit(userId, o.getId()).thenReturn(o))
+                            .flatMap(o -> statsService.evictAfterCommit(userId).thenReturn(o))
+                            .flatMap(o -> outboxRepo.save(new PaymentOutboxEntry(o)))
+                            .doOnNext(entry -> log.info("Order {} of user {} is waiting for payment", entry.getOrderId(), userId))
+                            .flatMap(entry -> cartRepo.removePositions(userId, orderedItemIds).thenReturn(entry.getOrderId()));
                 })
-                .flatMap(o -> payApi.processPayment(userId, new PaymentRequest().amount(o.getTotalSum().floatValue())))
-                .doOnError(throwable -> log.error("Failed to pay order", throwable))
-                .doOnNext(b -> log.info("Payment processed for user {}, balance {}", userId, b.getBalance()))
-                .flatMap(o -> cartRepo.clearCart(userId))
-                .then();
+                .flatMap(orderId -> cartService.completeCheckout(userId).thenReturn(orderId));
     }
 
-    @Cacheable(value = "orders", key = "#userId")
-    public Mono<OrdersDto> getAllOrders(Long userId) {
-        return orderRepo.getAllWithPositions(userId)
-                .map(orderMapper::toDto)
+    /**
+     * Closes the outbox entry of a sent payment and moves its order to {@code status}
+     */
+    public Mono<Void> settlePayment(PaymentOutboxEntry entry, OrderStatus status) {
+        return outboxRepo.settle(entry.getId(), status.name())
+                .doOnNext(updated -> log.info("Order {} of user {} is {}", entry.getOrderId(), entry.getUserId(), status))
+                .then(historyCache.refreshAfterCommit(entry.getUserId(), entry.getOrderId()))
+                .then(status == OrderStatus.CANCELLED ? statsService.evictAfterCommit(entry.getUserId()) : Mono.empty());
+    }
+
+    /**
+     * Page of the order history older than {@code before}, the newest page when it is null
+     */
+    public Mono<OrdersDto> getOrdersPage(Long userId, Long before) {
+        return historyCache.getPage(userId, before == null ? Long.MAX_VALUE : before, pageSize + 1)
                 .collectList()
-                .doOnNext(or -> log.info("Get orders for user {} from DB", userId))
-                .map(orders -> new OrdersDto(orders));
+                .doOnNext(orders -> log.info("Get page of {} orders before {} for user {}", orders.size(), before, userId))
+                .map(orders -> orders.size() > pageSize
+                        ? new OrdersDto(List.copyOf(orders.subList(0, pageSize)), orders.get(pageSize - 1).id())
+                        : new OrdersDto(orders));
+    }
+
+    /**
+     * Archived orders come first, they are older than the ones still in the database
+     */
+    public Flux<OrderExportDto> exportOrders(Long userId) {
+        return archiveRepo.findAll(userId)
+                .concatWith(orderRepo.streamWithPositions(userId, exportFetchSize))
+                .map(orderMapper::toExportDto)
+                .doOnSubscribe(s -> log.info("Exporting orders of user {}", userId));
+    }
+
+    public Flux<OrderExportDto> exportAllOrders() {
+        return archiveRepo.findAll(null)
+                .concatWith(orderRepo.streamWithPositions(null, exportFetchSize))
+                .map(orderMapper::toExportDto)
+                .doOnSubscribe(s -> log.info("Exporting orders of all users"));
     }
 
     public Mono<OrderDto> getOrderById(Long id, Long userId) {
-        return orderRepo.getByIdAndUserIdWithPositions(id, userId)
-                .switchIfEmpty(Mono.error(() -> new OrderNotFoundException("order with id " + id + " not found!")))
-                .map(orderMapper::toDto);
+        return historyCache.getOrder(userId, id)
+                .switchIfEmpty(Mono.error(() -> new OrderNotFoundException("order with id " + id + " not found!")));
     }
 }
@@ -0,0 +1,146 @@
+package org.yandex.mymarketapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
+import org.yandex.mymarketapp.model.domain.PaymentOutboxEntry;
+import org.yandex.mymarketapp.repo.PaymentOutboxRepository;
+import org.yandex.payment.api.PaymentsApi;
+import org.yandex.payment.model.PaymentRequest;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+/**
+ * Sends payments of the outbox to the payment service and settles their orders.
+ * Failed calls are retried with exponential backoff, a payment the service rejects
+ * or that runs out of attempts is compensated by cancelling its order.
+ * The payment API has no idempotency key, so a payment whose result was lost may be sent again.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "market.orders.payment.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class PaymentOutboxRelay {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final PaymentOutboxRepository outboxRepo;
+    private final OrderService orderService;
+    private final PaymentsApi payApi;
+    private final Counter paidOrders;
+    private final Counter cancelledOrders;
+    private final Counter retriedPayments;
+
+    @Value("${market.orders.payment.relay.batch-size:50}")
+    private int batchSize;
+
+    @Value("${market.orders.payment.relay.concurrency:8}")
+    private int concurrency;
+
+    @Value("${market.orders.payment.relay.lease:PT30S}")
+    private Duration lease;
+
+    @Value("${market.orders.payment.relay.request-timeout:PT10S}")
+    private Duration requestTimeout;
+
+    @Value("${market.orders.payment.relay.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${market.orders.payment.relay.backoff:PT2S}")
+    private Duration backoff;
+
+    @Value("${market.orders.payment.relay.max-backoff:PT5M}")
+    private Duration maxBackoff;
+
+    public PaymentOutboxRelay(PaymentOutboxRepository outboxRepo, OrderService orderService, PaymentsApi payApi,
+                              MeterRegistry meterRegistry) {
+        this.outboxRepo = outboxRepo;
+        this.orderService = orderService;
+        this.payApi = payApi;
+        this.paidOrders = Counter.builder("market.orders.payment.relay.paid")
+                .description("Orders paid through the payment outbox")
+                .register(meterRegistry);
+        this.cancelledOrders = Counter.builder("market.orders.payment.relay.cancelled")
+                .description("Orders cancelled because their payment was rejected or ran out of attempts")
+                .register(meterRegistry);
+        this.retriedPayments = Counter.builder("market.orders.payment.relay.retried")
+                .description("Payment attempts that failed and were rescheduled")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${market.orders.payment.relay.interval:PT1S}", initialDelayString = "${market.orders.payment.relay.interval:PT1S}")
+    public Mono<Long> relay() {
+        return outboxRepo.claimDue(OffsetDateTime.now().plus(lease), batchSize)
+                .flatMap(this::send, concurrency)
+                .count()
+                .doOnNext(sent -> {
+                    if (sent > 0) {
+                        log.info("Payment outbox relay handled {} payments", sent);
+                    }
+                })
+                .doOnError(e -> log.error("Payment outbox relay failed", e));
+    }
+
+    private Mono<Void> send(PaymentOutboxEntry entry) {
+        return pay(entry)
+                .flatMap(paid -> paid ? settle(entry, OrderStatus.PAID) : Mono.<Void>empty())
+                .onErrorResume(e -> {
+                    log.error("Failed to settle payment of order {}, it is retried after the lease", entry.getOrderId(), e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Boolean> pay(PaymentOutboxEntry entry) {
+        return Mono.defer(() -> payApi.processPayment(entry.getUserId(), new PaymentRequest().amount((float) entry.getAmount())))
+                .timeout(requestTimeout)
+                .doOnNext(balance -> log.info("Payment of order {} processed for user {}, balance {}",
+                        entry.getOrderId(), entry.getUserId(), balance.getBalance()))
+                .thenReturn(true)
+                .onErrorResume(e -> (isRejected(e) || entry.getAttempts() >= maxAttempts ? compensate(entry, e) : retryLater(entry, e))
+                        .thenReturn(false));
+    }
+
+    private Mono<Void> compensate(PaymentOutboxEntry entry, Throwable e) {
+        log.warn("Payment of order {} failed after {} attempts, cancelling the order", entry.getOrderId(), entry.getAttempts(), e);
+        return settle(entry, OrderStatus.CANCELLED);
+    }
+
+    private Mono<Void> retryLater(PaymentOutboxEntry entry, Throwable e) {
+        Duration delay = backoff.multipliedBy(1L << Math.min(entry.getAttempts() - 1, 20));
+        if (delay.compareTo(maxBackoff) > 0) {
+            delay = maxBackoff;
+        }
+        log.warn("Payment of order {} failed on attempt {}, retrying in {}", entry.getOrderId(), entry.getAttempts(), delay, e);
+        retriedPayments.increment();
+        return outboxRepo.reschedule(entry.getId(), OffsetDateTime.now().plus(delay), errorMessage(e))
+                .then();
+    }
+
+    private Mono<Void> settle(PaymentOutboxEntry entry, OrderStatus status) {
+        return orderService.settlePayment(entry, status)
+                .doOnSuccess(v -> (OrderStatus.PAID.equals(status) ? paidOrders : cancelledOrders).increment());
+    }
+
+    /**
+     * The payment service refused the payment itself, e.g. not enough money or an unknown user
+     */
+    private static boolean isRejected(Throwable e) {
+        return e instanceof WebClientResponseException response
+                && response.getStatusCode().is4xxClientError()
+                && response.getStatusCode().value() != HttpStatus.REQUEST_TIMEOUT.value()
+                && response.getStatusCode().value() != HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    private static String errorMessage(Throwable e) {
+        String message = String.valueOf(e.getMessage());
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+}
@@ -0,0 +1,265 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.yandex.mymarketapp.model.domain.CartPosition;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps carts in a per-user redis hash (itemId -> count) and writes them behind to cart_positions.
+ * Every mutation marks the user as dirty, the scheduled flush rewrites whole carts of dirty users,
+ * so any number of clicks between two flushes costs one write.
+ * Writes to cart_positions and loads from it hold the cart lock of the user and read the hash under it,
+ * so a write-behind racing a checkout waits for the checkout to commit and then sees the cart it left.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "market.cart.storage", havingValue = "redis")
+public class RedisCartStore implements CartStore {
+
+    static final String DIRTY_KEY = "cart:dirty";
+    static final String LOADED_FIELD = "loaded";
+
+    // ARGV: ttl, userId, then (field, reset, shift, floor) per changed position
+    // returns the last updated count or -1 when the hash was not loaded from the db yet
+    private static final RedisScript<Long> CHANGE_SCRIPT = RedisScript.of("""
+            if redis.call('HEXISTS', KEYS[1], 'loaded') == 0 then
+                return -1
+            end
+            local updated = 0
+            local changed = false
+            for i = 3, #ARGV, 4 do
+                local current = tonumber(redis.call('HGET', KEYS[1], ARGV[i]) or '0')
+                updated = tonumber(ARGV[i + 3])
+                if ARGV[i + 1] == '0' then
+                    updated = math.max(current + tonumber(ARGV[i + 2]), updated)
+                end
+                if updated ~= current then
+                    changed = true
+                    if updated > 0 then
+                        redis.call('HSET', KEYS[1], ARGV[i], updated)
+                    else
+                        redis.call('HDEL', KEYS[1], ARGV[i])
+                    end
+                end
+            end
+            if changed then
+                redis.call('PEXPIRE', KEYS[1], ARGV[1])
+                redis.call('SADD', KEYS[2], ARGV[2])
+            end
+            return updated
+            """, Long.class);
+
+    private static final RedisScript<Long> LOAD_SCRIPT = RedisScript.of("""
+            if redis.call('HEXISTS', KEYS[1], 'loaded') == 1 then
+                return 0
+            end
+            for i = 2, #ARGV, 2 do
+                redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            redis.call('HSET', KEYS[1], 'loaded', '1')
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    private final ReactiveStringRedisTemplate redis;
+    private final CartPositionsRepository cartRepo;
+    private final ItemService itemService;
+    private final TransactionalOperator tx;
+
+    @Value("${market.cart.redis.ttl:P7D}")
+    private Duration ttl;
+
+    @Value("${market.cart.redis.flush-batch-size:100}")
+    private int flushBatchSize;
+
+    @Value("${market.cart.redis.flush-concurrency:4}")
+    private int flushConcurrency;
+
+    @Override
+    public Mono<Void> increase(Long itemId, Long userId) {
+        return itemService.getItemById(itemId)
+                .flatMap(item -> change(itemId, userId, QuantityChange.PLUS))
+                .doOnNext(count -> log.info("Count of items with id {} for user {} increased to {}", itemId, userId, count))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> decrease(Long itemId, Long userId) {
+        return change(itemId, userId, QuantityChange.MINUS)
+                .doOnNext(count -> log.info("Count of items with id {} for user {} decreased to {}", itemId, userId, count))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> remove(Long itemId, Long userId) {
+        return change(itemId, userId, QuantityChange.REMOVE)
+                .doOnNext(count -> log.info("removed position for id {} for user {}", itemId, userId))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> apply(Long itemId, Long userId, QuantityChange change) {
+        Mono<?> itemCheck = change.applyTo(0) > 0 ? itemService.getItemById(itemId) : Mono.empty();
+        return itemCheck
+                .then(change(itemId, userId, change))
+                .doOnNext(count -> log.info("Count of items with id {} for user {} changed to {}", itemId, userId, count))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> applyAll(Long userId, Map<Long, QuantityChange> changes) {
+        return Flux.fromIterable(changes.entrySet())
+                .filter(change -> change.getValue().applyTo(0) > 0)
+                .flatMap(change -> itemService.getItemById(change.getKey()))
+                .then(change(userId, changes))
+                .doOnNext(count -> log.info("Applied {} cart changes for user {}", changes.size(), userId))
+                .then();
+    }
+
+    @Override
+    public Mono<Map<Long, Integer>> getCounts(Long userId) {
+        return readHash(userId)
+                .flatMap(hash -> hash.containsKey(LOADED_FIELD)
+                        ? Mono.just(hash)
+                        : load(userId).then(readHash(userId)))
+                .map(RedisCartStore::toCounts);
+    }
+
+    @Override
+    public Mono<Integer> getCount(Long userId, Long itemId) {
+        return redis.<String, String>opsForHash().multiGet(cartKey(userId), List.of(itemId.toString(), LOADED_FIELD))
+                .flatMap(values -> {
+                    if (values.get(1) == null) {
+                        return cartRepo.findCountByUserIdAndItemId(userId, itemId).defaultIfEmpty(0);
+                    }
+                    return Mono.just(values.get(0) == null ? 0 : Integer.parseInt(values.get(0)));
+                });
+    }
+
+    @Override
+    public Mono<Void> flush(Long userId) {
+        // written even when not marked dirty: a scheduled flush may have taken the mark without having committed yet.
+        // the dirty mark stays: if checkout rolls back the scheduled flush will write the cart again
+        return writeBehind(userId);
+    }
+
+    @Override
+    public Mono<Void> invalidate(Long userId) {
+        return redis.delete(cartKey(userId))
+                .then(redis.opsForSet().remove(DIRTY_KEY, userId.toString()))
+                .then();
+    }
+
+    @Scheduled(fixedDelayString = "${market.cart.redis.flush-interval-ms:2000}")
+    public Mono<Void> flushDirtyCarts() {
+        return redis.opsForSet().pop(DIRTY_KEY, flushBatchSize)
+                .map(Long::valueOf)
+                .flatMap(userId -> writeBehind(userId)
+                        .onErrorResume(e -> {
+                            log.error("Failed to write behind cart of user {}", userId, e);
+                            return redis.opsForSet().add(DIRTY_KEY, userId.toString()).then();
+                        })
+                        .thenReturn(userId), flushConcurrency)
+                .count()
+                .doOnNext(flushed -> {
+                    if (flushed > 0) {
+                        log.info("Written behind {} carts", flushed);
+                    }
+                })
+                .then();
+    }
+
+    private Mono<Void> writeBehind(Long userId) {
+        return cartRepo.lockCart(userId)
+                .then(readHash(userId))
+                // an expired hash says nothing about the cart, the db copy stays as is
+                .filter(hash -> hash.containsKey(LOADED_FIELD))
+                .map(RedisCartStore::toCounts)
+                .flatMap(counts -> {
+                    List<CartPosition> positions = new ArrayList<>(counts.size());
+                    counts.forEach((itemId, count) -> {
+                        CartPosition position = new CartPosition(itemId, userId);
+                        position.setCount(count);
+                        positions.add(position);
+                    });
+                    return cartRepo.clearCart(userId)
+                            .thenMany(cartRepo.saveAll(positions))
+                            .then();
+                })
+                .as(tx::transactional);
+    }
+
+    private Mono<Long> change(Long itemId, Long userId, QuantityChange change) {
+        return change(userId, Map.of(itemId, change));
+    }
+
+    private Mono<Long> change(Long userId, Map<Long, QuantityChange> changes) {
+        List<String> keys = List.of(cartKey(userId), DIRTY_KEY);
+        List<String> args = new ArrayList<>(2 + changes.size() * 4);
+        args.add(Long.toString(ttl.toMillis()));
+        args.add(userId.toString());
+        changes.forEach((itemId, change) -> {
+            args.add(itemId.toString());
+            args.add(change.reset() ? "1" : "0");
+            args.add(Integer.toString(change.shift()));
+            args.add(Integer.toString(change.floor()));
+        });
+        Mono<Long> script = Mono.defer(() -> redis.execute(CHANGE_SCRIPT, keys, args).next());
+        return script.flatMap(result -> result < 0 ? load(userId).then(script) : Mono.just(result));
+    }
+
+    private Mono<Void> load(Long userId) {
+        // under the lock, so a cart being checked out is loaded as the checkout leaves it
+        return cartRepo.lockCart(userId)
+                .thenMany(cartRepo.findByUserId(userId))
+                .collectList()
+                .flatMap(positions -> {
+                    List<String> args = new ArrayList<>(positions.size() * 2 + 1);
+                    args.add(Long.toString(ttl.toMillis()));
+                    for (CartPosition position : positions) {
+                        args.add(position.getItemId().toString());
+                        args.add(Integer.toString(position.getCount()));
+                    }
+                    log.info("Loading cart of user {} into redis, {} positions", userId, positions.size());
+                    return redis.execute(LOAD_SCRIPT, List.of(cartKey(userId)), args).then();
+                })
+                .as(tx::transactional);
+    }
+
+    private Mono<Map<String, String>> readHash(Long userId) {
+        return redis.<String, String>opsForHash().entries(cartKey(userId))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private static Map<Long, Integer> toCounts(Map<String, String> hash) {
+        Map<Long, Integer> counts = new LinkedHashMap<>();
+        hash.forEach((field, value) -> {
+            if (!LOADED_FIELD.equals(field)) {
+                counts.put(Long.valueOf(field), Integer.valueOf(value));
+            }
+        });
+        return counts;
+    }
+
+    static String cartKey(Long userId) {
+        return "cart:" + userId;
+    }
+}
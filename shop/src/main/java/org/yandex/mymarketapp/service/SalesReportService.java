@@ -0,0 +1,47 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.yandex.mymarketapp.model.dto.DailySalesDto;
+import org.yandex.mymarketapp.model.dto.ItemSalesDto;
+import org.yandex.mymarketapp.repo.SalesRollupRepository;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * Sales reports served from the rollup tables, never from orders
+ */
+@Service
+@RequiredArgsConstructor
+public class SalesReportService {
+
+    private final SalesRollupRepository rollupRepo;
+
+    @Value("${market.reports.max-days:366}")
+    private int maxDays;
+
+    @Value("${market.reports.max-items:100}")
+    private int maxItems;
+
+    /**
+     * Days from {@code from} to {@code to} inclusive, the last 30 days (UTC) by default
+     */
+    public Flux<DailySalesDto> getDailySales(LocalDate from, LocalDate to) {
+        LocalDate last = to == null ? LocalDate.now(ZoneOffset.UTC) : to;
+        LocalDate first = from == null ? last.minusDays(29) : from;
+        if (first.isAfter(last) || first.plusDays(maxDays).isBefore(last)) {
+            return Flux.error(new IllegalArgumentException("Report range must be from 1 to " + maxDays + " days"));
+        }
+        return rollupRepo.findDailySales(first, last);
+    }
+
+    public Flux<ItemSalesDto> getTopItems(int limit) {
+        if (limit < 1 || limit > maxItems) {
+            return Flux.error(new IllegalArgumentException("Limit must be from 1 to " + maxItems));
+        }
+        return rollupRepo.findTopItems(limit);
+    }
+}
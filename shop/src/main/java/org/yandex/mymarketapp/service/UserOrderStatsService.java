@@ -0,0 +1,56 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+import org.yandex.mymarketapp.model.dto.UserOrderStatsDto;
+import org.yandex.mymarketapp.repo.TransactionHooks;
+import org.yandex.mymarketapp.repo.UserOrderStatsRepository;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Order count and money spent of a user, read from user_order_stats which checkout updates with the order
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserOrderStatsService {
+
+    static final String USER_ORDER_STATS_CACHE = "user_order_stats";
+
+    private final UserOrderStatsRepository statsRepo;
+    private final ObjectProvider<CacheManager> cacheManager;
+
+    @Cacheable(value = USER_ORDER_STATS_CACHE, key = "#userId")
+    public Mono<UserOrderStatsDto> getStats(Long userId) {
+        return statsRepo.findByUserId(userId);
+    }
+
+    /**
+     * Drops the cached stats once the current transaction commits, right away without one,
+     * so a read racing the transaction cannot cache the stats it is changing
+     */
+    public Mono<Void> evictAfterCommit(Long userId) {
+        return TransactionHooks.afterCommit(evict(userId));
+    }
+
+    private Mono<Void> evict(Long userId) {
+        CacheManager manager = cacheManager.getIfAvailable();
+        Cache cache = manager == null ? null : manager.getCache(USER_ORDER_STATS_CACHE);
+        if (cache == null) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> cache.evict(userId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.error("Failed to evict order stats of user {}", userId, e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -0,0 +1,3 @@
+alter table cart_positions add column if not exists updated_at timestamptz not null default now();
+
+create index if not exists cart_positions_user_id_updated_at_idx on cart_positions (user_id, updated_at);
@@ -0,0 +1,15 @@
+with duplicates as (
+    select user_id, item_id, min(id) as keep_id, sum(count) as total
+    from cart_positions
+    group by user_id, item_id
+    having count(*) > 1
+)
+update cart_positions cp set count = d.total
+from duplicates d
+where cp.id = d.keep_id;
+
+delete from cart_positions cp
+using cart_positions kept
+where kept.user_id = cp.user_id and kept.item_id = cp.item_id and kept.id < cp.id;
+
+alter table cart_positions add constraint cart_positions_user_id_item_id_key unique (user_id, item_id);
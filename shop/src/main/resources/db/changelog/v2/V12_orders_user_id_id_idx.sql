@@ -0,0 +1,3 @@
+create index if not exists orders_user_id_id_idx on orders (user_id, id);
+
+create index if not exists order_positions_order_id_idx on order_positions (order_id);
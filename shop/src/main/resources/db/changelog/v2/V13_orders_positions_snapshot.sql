@@ -0,0 +1,12 @@
+alter table orders add column if not exists positions jsonb;
+
+update orders o
+set positions = s.positions
+from (select op.order_id,
+             jsonb_agg(jsonb_build_object('id', op.id, 'title', op.title, 'description', op.description,
+                                          'imgPath', op.img_path, 'price', op.price, 'count', op.count)
+                       order by op.id) as positions
+      from order_positions op
+      group by op.order_id) s
+where s.order_id = o.id
+  and o.positions is null;
@@ -0,0 +1,17 @@
+-- orders made before the outbox were paid during checkout
+alter table orders add column if not exists status varchar(32) not null default 'PAID';
+alter table orders alter column status set default 'PENDING_PAYMENT';
+
+create table if not exists payment_outbox
+(
+    id              bigserial primary key,
+    order_id        bigint           not null references orders (id),
+    user_id         bigint           not null,
+    amount          double precision not null,
+    attempts        int              not null default 0,
+    next_attempt_at timestamptz      not null default now(),
+    last_error      text,
+    created_at      timestamptz      not null default now()
+);
+
+create index if not exists payment_outbox_next_attempt_at_idx on payment_outbox (next_attempt_at);
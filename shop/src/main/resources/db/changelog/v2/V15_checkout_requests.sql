@@ -0,0 +1,10 @@
+create table if not exists checkout_requests
+(
+    user_id         bigint      not null,
+    idempotency_key varchar(64) not null,
+    order_id        bigint references orders (id) on delete cascade,
+    created_at      timestamptz not null default now(),
+    primary key (user_id, idempotency_key)
+);
+
+create index if not exists checkout_requests_created_at_idx on checkout_requests (created_at);
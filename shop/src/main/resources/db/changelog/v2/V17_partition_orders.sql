@@ -0,0 +1,81 @@
+--liquibase formatted sql
+
+--changeset market:V17_partition_orders splitStatements:false
+-- orders and order_positions become partitioned by ranges of the order id, which grows with time,
+-- an order and its positions live in partitions with the same bounds (orders_p<from>, order_positions_p<from>)
+
+alter table order_positions drop constraint if exists order_id_fk;
+alter table payment_outbox drop constraint if exists payment_outbox_order_id_fkey;
+alter table checkout_requests drop constraint if exists checkout_requests_order_id_fkey;
+
+create table orders_partitioned
+(
+    id         bigint           not null,
+    total_sum  double precision not null,
+    user_id    bigint           not null default 0,
+    positions  jsonb,
+    status     varchar(32)      not null default 'PENDING_PAYMENT',
+    created_at timestamptz      not null default now(),
+    constraint orders_partitioned_pkey primary key (id)
+) partition by range (id);
+
+create table order_positions_partitioned
+(
+    id          bigint not null,
+    order_id    bigint not null,
+    item_id     bigint,
+    title       text   not null,
+    description text,
+    img_path    text   not null,
+    price       double precision check (price > 0),
+    count       int,
+    constraint order_positions_partitioned_pkey primary key (order_id, id)
+) partition by range (order_id);
+
+-- partitions of 1000000 orders up to two empty ones ahead, OrderPartitionService keeps adding them
+do $$
+declare
+    partition_size constant bigint := 1000000;
+    last_bound bigint := ((select coalesce(max(id), 0) from orders) / partition_size + 2) * partition_size;
+    lower_bound bigint := 0;
+begin
+    while lower_bound < last_bound loop
+        execute format('create table orders_p%1$s partition of orders_partitioned for values from (%1$s) to (%2$s)',
+                       lower_bound, lower_bound + partition_size);
+        execute format('create table order_positions_p%1$s partition of order_positions_partitioned for values from (%1$s) to (%2$s)',
+                       lower_bound, lower_bound + partition_size);
+        lower_bound := lower_bound + partition_size;
+    end loop;
+end $$;
+
+insert into orders_partitioned (id, total_sum, user_id, positions, status, created_at)
+select id, total_sum, user_id, positions, status, created_at
+from orders;
+
+insert into order_positions_partitioned (id, order_id, item_id, title, description, img_path, price, count)
+select id, order_id, item_id, title, description, img_path, price, count
+from order_positions;
+
+drop table order_positions;
+drop table orders;
+
+alter table orders_partitioned rename to orders;
+alter table orders rename constraint orders_partitioned_pkey to orders_pkey;
+alter table order_positions_partitioned rename to order_positions;
+alter table order_positions rename constraint order_positions_partitioned_pkey to order_positions_pkey;
+
+-- identity columns cannot span partitions, plain sequences keep the old names
+create sequence orders_id_seq owned by orders.id;
+select setval('orders_id_seq', coalesce(max(id), 0) + 1, false) from orders;
+alter table orders alter column id set default nextval('orders_id_seq');
+
+create sequence order_positions_id_seq owned by order_positions.id;
+select setval('order_positions_id_seq', coalesce(max(id), 0) + 1, false) from order_positions;
+alter table order_positions alter column id set default nextval('order_positions_id_seq');
+
+-- created on every partition
+create index orders_user_id_id_idx on orders (user_id, id);
+
+alter table order_positions add constraint order_positions_order_id_fk foreign key (order_id) references orders (id);
+alter table payment_outbox add constraint payment_outbox_order_id_fkey foreign key (order_id) references orders (id);
+alter table checkout_requests add constraint checkout_requests_order_id_fkey foreign key (order_id) references orders (id) on delete cascade;
@@ -0,0 +1,45 @@
+--liquibase formatted sql
+
+--changeset market:V18_item_snapshots splitStatements:false
+-- item fields an order position was bought with are stored once per distinct content, keyed by their hash;
+-- ItemSnapshot.hashOf computes the same value, fields are length-prefixed so no two of them collide
+create or replace function item_snapshot_hash(title text, description text, img_path text) returns bytea
+    language sql
+    immutable
+as $$
+select sha256(convert_to(octet_length(title) || ':' || title
+                             || coalesce(octet_length(description) || ':' || description, '-')
+                             || octet_length(img_path) || ':' || img_path, 'UTF8'))
+$$;
+
+create table if not exists item_snapshots
+(
+    hash        bytea primary key,
+    title       text not null,
+    description text,
+    img_path    text not null
+);
+
+insert into item_snapshots (hash, title, description, img_path)
+select item_snapshot_hash(title, description, img_path), title, description, img_path
+from order_positions
+on conflict (hash) do nothing;
+
+alter table order_positions add column snapshot_hash bytea;
+
+update order_positions
+set snapshot_hash = item_snapshot_hash(title, description, img_path);
+
+alter table order_positions alter column snapshot_hash set not null;
+alter table order_positions add constraint order_positions_snapshot_hash_fk foreign key (snapshot_hash) references item_snapshots (hash);
+alter table order_positions drop column title, drop column description, drop column img_path;
+
+-- the positions snapshot of an order refers to item snapshots as well
+update orders o
+set positions = (select coalesce(jsonb_agg(jsonb_build_object('id', op.id, 'itemId', op.item_id,
+                                                              'snapshotHash', encode(op.snapshot_hash, 'hex'),
+                                                              'price', op.price, 'count', op.count)
+                                           order by op.id), '[]'::jsonb)
+                 from order_positions op
+                 where op.order_id = o.id)
+where o.positions is not null;
@@ -0,0 +1,14 @@
+-- order count and money spent per user, kept up to date by checkout and cancelled payments
+create table if not exists user_order_stats
+(
+    user_id      bigint primary key,
+    orders_count bigint           not null,
+    total_spent  double precision not null
+);
+
+insert into user_order_stats (user_id, orders_count, total_spent)
+select user_id, count(*), sum(total_sum)
+from orders
+where status <> 'CANCELLED'
+group by user_id
+on conflict (user_id) do nothing;
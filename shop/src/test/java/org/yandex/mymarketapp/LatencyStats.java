@@ -0,0 +1,36 @@
+package org.yandex.mymarketapp;
+
+import java.util.Arrays;
+
+/**
+ * Throughput and latency percentiles of a load or benchmark run, latencies are in nanoseconds
+ */
+public record LatencyStats(int operations, long elapsedNanos, long p50, long p95, long p99, long max) {
+
+    public static LatencyStats of(long[] latencies, long elapsedNanos) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return new LatencyStats(sorted.length, elapsedNanos,
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+
+    public double throughput() {
+        return elapsedNanos == 0 ? 0 : operations * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d ops in %d ms, %.0f ops/s, p50 %d us, p95 %d us, p99 %d us, max %d us",
+                operations, elapsedNanos / 1_000_000, throughput(),
+                p50 / 1_000, p95 / 1_000, p99 / 1_000, max / 1_000);
+    }
+}
@@ -0,0 +1,117 @@
+package org.yandex.mymarketapp.controller;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.ResponseCookie;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.yandex.mymarketapp.configuration.CurrentUserArgumentResolver;
+import org.yandex.mymarketapp.model.domain.Item;
+import org.yandex.mymarketapp.service.CartService;
+import org.yandex.mymarketapp.service.ItemService;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@WebFluxTest(ItemController.class)
+@TestPropertySource(properties = "market.cart.anonymous-sessions=true")
+class AnonymousCartSessionTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private ItemService itemService;
+
+    @MockitoBean
+    private CartService cartService;
+
+    @Test
+    void firstVisit_ShouldIssueCartCookieAndUseSyntheticUser() {
+        Long itemId = 1L;
+        when(itemService.getItemById(itemId)).thenReturn(Mono.just(new Item(itemId, "Test Item", "Test Description", "/test.jpg", 25.99)));
+        when(cartService.getCountOfItemInCartByUserId(anyLong(), any())).thenReturn(Mono.just(0));
+
+        ResponseCookie cookie = webTestClient.get()
+                .uri("/items/{id}", itemId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectCookie().httpOnly(CurrentUserArgumentResolver.CART_COOKIE, true)
+                .returnResult(String.class)
+                .getResponseCookies()
+                .getFirst(CurrentUserArgumentResolver.CART_COOKIE);
+
+        assertNotNull(cookie);
+        long cartId = Long.parseLong(cookie.getValue());
+        assertTrue(cartId > 0);
+        verify(cartService).getCountOfItemInCartByUserId(-cartId, itemId);
+    }
+
+    @Test
+    void knownCookie_ShouldKeepSameUserWithoutNewCookie() {
+        Long itemId = 1L;
+        when(cartService.increaseQuantityInCart(itemId, -42L)).thenReturn(Mono.empty());
+
+        webTestClient.post()
+                .uri(uriBuilder -> uriBuilder.path("/items/{id}").queryParam("action", "PLUS").build(itemId))
+                .cookie(CurrentUserArgumentResolver.CART_COOKIE, "42")
+                .exchange()
+                .expectStatus().is3xxRedirection()
+                .expectCookie().doesNotExist(CurrentUserArgumentResolver.CART_COOKIE);
+
+        verify(cartService).increaseQuantityInCart(itemId, -42L);
+    }
+
+    @Test
+    void differentVisitors_ShouldGetDifferentCarts() {
+        Long itemId = 1L;
+        when(cartService.increaseQuantityInCart(anyLong(), anyLong())).thenReturn(Mono.empty());
+
+        for (int i = 0; i < 2; i++) {
+            webTestClient.post()
+                    .uri(uriBuilder -> uriBuilder.path("/items/{id}").queryParam("action", "PLUS").build(itemId))
+                    .exchange()
+                    .expectStatus().is3xxRedirection();
+        }
+
+        ArgumentCaptor<Long> users = ArgumentCaptor.forClass(Long.class);
+        verify(cartService, times(2)).increaseQuantityInCart(eq(itemId), users.capture());
+        assertTrue(users.getAllValues().stream().allMatch(userId -> userId < 0));
+        assertNotEquals(users.getAllValues().get(0), users.getAllValues().get(1));
+    }
+
+    @Test
+    void explicitUserId_ShouldWinOverCookie() {
+        Long itemId = 1L;
+        when(cartService.increaseQuantityInCart(itemId, 7L)).thenReturn(Mono.empty());
+
+        webTestClient.post()
+                .uri(uriBuilder -> uriBuilder.path("/items/{id}").queryParam("action", "PLUS").queryParam("userId", 7).build(itemId))
+                .cookie(CurrentUserArgumentResolver.CART_COOKIE, "42")
+                .exchange()
+                .expectStatus().is3xxRedirection();
+
+        verify(cartService).increaseQuantityInCart(itemId, 7L);
+    }
+
+    @Test
+    void malformedCookie_ShouldBeReplaced() {
+        Long itemId = 1L;
+        when(cartService.increaseQuantityInCart(anyLong(), anyLong())).thenReturn(Mono.empty());
+
+        webTestClient.post()
+                .uri(uriBuilder -> uriBuilder.path("/items/{id}").queryParam("action", "PLUS").build(itemId))
+                .cookie(CurrentUserArgumentResolver.CART_COOKIE, "-5")
+                .exchange()
+                .expectStatus().is3xxRedirection()
+                .expectCookie().exists(CurrentUserArgumentResolver.CART_COOKIE);
+
+        verify(cartService, never()).increaseQuantityInCart(itemId, 5L);
+    }
+}
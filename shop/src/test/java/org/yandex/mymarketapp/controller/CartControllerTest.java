@@ -6,12 +6,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.yandex.mymarketapp.model.dto.CartChangeDto;
 import org.yandex.mymarketapp.model.dto.CartItemsDto;
+import org.yandex.mymarketapp.model.dto.CheckoutStatusDto;
 import org.yandex.mymarketapp.model.dto.ItemDto;
+import org.yandex.mymarketapp.model.exception.CheckoutRejectedException;
+import org.yandex.mymarketapp.model.exception.ItemNotFoundException;
 import org.yandex.mymarketapp.service.CartService;
-import org.yandex.mymarketapp.service.OrderService;
+import org.yandex.mymarketapp.service.CheckoutIdempotency;
+import org.yandex.mymarketapp.service.CheckoutQueue;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -21,6 +27,7 @@ import java.util.List;
 import static org.mockito.Mockito.*;
 
 @WebFluxTest(CartController.class)
+@TestPropertySource(properties = "market.cart.anonymous-sessions=false")
 @Import(CartController.class)
 class CartControllerTest {
 
@@ -31,7 +38,10 @@ class CartControllerTest {
     private CartService cartService;
 
     @MockitoBean
-    private OrderService orderService;
+    private CheckoutIdempotency checkoutIdempotency;
+
+    @MockitoBean
+    private CheckoutQueue checkoutQueue;
 
     @Test
     void showCart_ShouldReturnCartViewWithItemsAndTotal() {
@@ -85,7 +95,7 @@ class CartControllerTest {
                 .expectHeader().valueEquals("Location", "/cart/items");
 
         verify(cartService).increaseQuantityInCart(itemId, 0L);
-        verifyNoInteractions(orderService);
+        verifyNoInteractions(checkoutIdempotency);
     }
 
     @Test
@@ -103,7 +113,7 @@ class CartControllerTest {
                 .expectHeader().valueEquals("Location", "/cart/items");
 
         verify(cartService).decreaseQuantityInCart(itemId, 0L);
-        verifyNoInteractions(orderService);
+        verifyNoInteractions(checkoutIdempotency);
     }
 
     @Test
@@ -121,7 +131,7 @@ class CartControllerTest {
                 .expectHeader().valueEquals("Location", "/cart/items");
 
         verify(cartService).removeFromCart(itemId, 0L);
-        verifyNoInteractions(orderService);
+        verifyNoInteractions(checkoutIdempotency);
     }
 
     @Test
@@ -136,7 +146,7 @@ class CartControllerTest {
                 .expectHeader().valueEquals("Location", "/cart/items");
 
         verifyNoInteractions(cartService);
-        verifyNoInteractions(orderService);
+        verifyNoInteractions(checkoutIdempotency);
     }
 
     @Test
@@ -159,7 +169,7 @@ class CartControllerTest {
 
     @Test
     void buyItems_ShouldCreateOrder() {
-        when(orderService.makeOrder(0L)).thenReturn(Mono.empty());
+        when(checkoutIdempotency.checkout(0L, null)).thenReturn(Mono.just(1L));
 
         webTestClient.post()
                 .uri("/cart/buy")
@@ -167,10 +177,103 @@ class CartControllerTest {
                 .expectStatus().is3xxRedirection()
                 .expectHeader().valueEquals("Location", "/orders");
 
-        verify(orderService).makeOrder(0L);
+        verify(checkoutIdempotency).checkout(0L, null);
         verifyNoInteractions(cartService); // Note: Your reactive controller doesn't call cartService in buyItems
     }
 
+    @Test
+    void buyItems_WithFormKey_ShouldPassIdempotencyKey() {
+        when(checkoutIdempotency.checkout(0L, "form-key")).thenReturn(Mono.just(1L));
+
+        webTestClient.post()
+                .uri("/cart/buy")
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .bodyValue("idempotencyKey=form-key")
+                .exchange()
+                .expectStatus().is3xxRedirection()
+                .expectHeader().valueEquals("Location", "/orders");
+
+        verify(checkoutIdempotency).checkout(0L, "form-key");
+    }
+
+    @Test
+    void buyItems_WithHeaderKey_ShouldPreferHeader() {
+        when(checkoutIdempotency.checkout(0L, "header-key")).thenReturn(Mono.just(1L));
+
+        webTestClient.post()
+                .uri("/cart/buy")
+                .header(CartController.IDEMPOTENCY_KEY_HEADER, "header-key")
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .bodyValue("idempotencyKey=form-key")
+                .exchange()
+                .expectStatus().is3xxRedirection();
+
+        verify(checkoutIdempotency).checkout(0L, "header-key");
+    }
+
+    @Test
+    void buyItems_WithTooLongKey_ShouldReturnBadRequest() {
+        webTestClient.post()
+                .uri("/cart/buy")
+                .header(CartController.IDEMPOTENCY_KEY_HEADER, "k".repeat(65))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verifyNoInteractions(checkoutIdempotency);
+    }
+
+    @Test
+    void submitCheckout_ShouldReturnAcceptedWithStatusLocation() {
+        when(checkoutQueue.submit(0L, "header-key"))
+                .thenReturn(Mono.just(new CheckoutStatusDto("header-key", CheckoutStatusDto.State.QUEUED, null, null)));
+
+        webTestClient.post()
+                .uri("/cart/checkouts")
+                .header(CartController.IDEMPOTENCY_KEY_HEADER, "header-key")
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectHeader().valueEquals("Location", "/cart/checkouts/header-key")
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("QUEUED");
+
+        verifyNoInteractions(checkoutIdempotency);
+    }
+
+    @Test
+    void submitCheckout_WhenQueueIsFull_ShouldReturnServiceUnavailable() {
+        when(checkoutQueue.submit(0L, null))
+                .thenReturn(Mono.error(new CheckoutRejectedException("Too many checkouts in progress, try again later")));
+
+        webTestClient.post()
+                .uri("/cart/checkouts")
+                .exchange()
+                .expectStatus().isEqualTo(503);
+    }
+
+    @Test
+    void checkoutStatus_ShouldReturnOrderOfCompletedCheckout() {
+        when(checkoutQueue.status(0L, "key-1"))
+                .thenReturn(Mono.just(new CheckoutStatusDto("key-1", CheckoutStatusDto.State.COMPLETED, 4L, null)));
+
+        webTestClient.get()
+                .uri("/cart/checkouts/key-1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("COMPLETED")
+                .jsonPath("$.orderId").isEqualTo(4);
+    }
+
+    @Test
+    void checkoutStatus_WhenCheckoutIsUnknown_ShouldReturnNotFound() {
+        when(checkoutQueue.status(0L, "missing")).thenReturn(Mono.empty());
+
+        webTestClient.get()
+                .uri("/cart/checkouts/missing")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
     @Test
     void updateCartItem_WithCaseSensitiveActions_ShouldWorkCorrectly() {
         webTestClient.post()
@@ -181,7 +284,7 @@ class CartControllerTest {
                 .expectHeader().valueEquals("Location", "/cart/items");
 
         verifyNoInteractions(cartService);
-        verifyNoInteractions(orderService);
+        verifyNoInteractions(checkoutIdempotency);
     }
 
     // Additional test for reactive error handling
@@ -201,4 +304,46 @@ class CartControllerTest {
 
         verify(cartService).increaseQuantityInCart(itemId, 0L);
     }
-}
\ No newline at end of file
+
+    @Test
+    void updateCartItems_ShouldApplyAllChangesAtOnce() {
+        List<CartChangeDto> changes = List.of(
+                new CartChangeDto(1L, 2, CartChangeDto.Mode.DELTA),
+                new CartChangeDto(2L, 0, CartChangeDto.Mode.SET));
+        when(cartService.applyChanges(0L, changes)).thenReturn(Mono.empty());
+
+        webTestClient.post()
+                .uri("/cart/items/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(changes)
+                .exchange()
+                .expectStatus().isNoContent();
+
+        verify(cartService).applyChanges(0L, changes);
+    }
+
+    @Test
+    void updateCartItems_WithNegativeAbsoluteQuantity_ShouldReturnBadRequest() {
+        webTestClient.post()
+                .uri("/cart/items/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(new CartChangeDto(1L, -1, CartChangeDto.Mode.SET)))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verifyNoInteractions(cartService);
+    }
+
+    @Test
+    void updateCartItems_WhenItemNotFound_ShouldReturnNotFound() {
+        List<CartChangeDto> changes = List.of(new CartChangeDto(999L, 1, CartChangeDto.Mode.DELTA));
+        when(cartService.applyChanges(0L, changes)).thenReturn(Mono.error(new ItemNotFoundException("Item not found")));
+
+        webTestClient.post()
+                .uri("/cart/items/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(changes)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
@@ -3,6 +3,7 @@ package org.yandex.mymarketapp.controller;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.yandex.mymarketapp.model.domain.Item;
@@ -15,6 +16,7 @@ import reactor.core.publisher.Mono;
 import static org.mockito.Mockito.*;
 
 @WebFluxTest(ItemController.class)
+@TestPropertySource(properties = "market.cart.anonymous-sessions=false")
 class ItemControllerTest {
 
     @Autowired
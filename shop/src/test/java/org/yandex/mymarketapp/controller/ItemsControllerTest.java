@@ -3,6 +3,7 @@ package org.yandex.mymarketapp.controller;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.yandex.mymarketapp.model.dto.CartItemsDto;
@@ -17,9 +18,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 @WebFluxTest(ItemsController.class)
+@TestPropertySource(properties = "market.cart.anonymous-sessions=false")
 class ItemsControllerTest {
 
     @Autowired
@@ -62,6 +66,26 @@ class ItemsControllerTest {
         verify(itemService).getPageInfo(10, 1);
     }
 
+    @Test
+    void getItemsPage_ShouldRenderCartCountsWithoutChangingPageItems() {
+        ItemDto pageItem = new ItemDto(1L, "Item 1", "Desc 1", "/img1.jpg", 10.0, 0);
+        ViewPage page = new ViewPage(List.of(List.of(pageItem)));
+
+        when(itemService.searchItems("", "NO", 1, 10)).thenReturn(Mono.just(page));
+        when(itemService.getPageInfo(10, 1)).thenReturn(Mono.just(new Paging(1, 10, false, false)));
+        when(cartService.getCartItems(any())).thenReturn(Mono.just(new CartItemsDto(List.of(
+                new ItemDto(1L, "Item 1", "Desc 1", "/img1.jpg", 10.0, 3)))));
+
+        webTestClient.get()
+                .uri("/")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .value(body -> assertTrue(body.contains("<span>3</span>")));
+
+        assertEquals(0, pageItem.getCount());
+    }
+
     @Test
     void getItemsPage_WithItemsPath_ShouldReturnItemsView() {
         List<List<ItemDto>> mockItems = Collections.emptyList();
@@ -1,15 +1,20 @@
 package org.yandex.mymarketapp.controller;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
 import org.yandex.mymarketapp.model.dto.ItemDto;
 import org.yandex.mymarketapp.model.dto.OrderDto;
 import org.yandex.mymarketapp.model.dto.OrdersDto;
+import org.yandex.mymarketapp.model.dto.UserOrderStatsDto;
 import org.yandex.mymarketapp.model.exception.OrderNotFoundException;
 import org.yandex.mymarketapp.service.OrderService;
+import org.yandex.mymarketapp.service.UserOrderStatsService;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -17,9 +22,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 @WebFluxTest(OrderController.class)
+@TestPropertySource(properties = "market.cart.anonymous-sessions=false")
 class OrderControllerTest {
 
     @Autowired
@@ -28,19 +35,27 @@ class OrderControllerTest {
     @MockitoBean
     private OrderService orderService;
 
+    @MockitoBean
+    private UserOrderStatsService statsService;
+
+    @BeforeEach
+    void setUp() {
+        when(statsService.getStats(anyLong())).thenReturn(Mono.just(UserOrderStatsDto.EMPTY));
+    }
+
     @Test
     void showOrders_ShouldReturnOrdersViewWithOrdersList() {
         List<OrderDto> mockOrders = Arrays.asList(
                 new OrderDto(1L, Arrays.asList(
                         new ItemDto(1L, "Item 1", "Desc 1", "/img1.jpg", 50.0, 3),
                         new ItemDto(2L, "Item 2", "Desc 2", "/img2.jpg", 25.0, 2)
-                ), 150.0),
+                ), 150.0, OrderStatus.PAID),
                 new OrderDto(2L, Arrays.asList(
                         new ItemDto(3L, "Item 3", "Desc 3", "/img3.jpg", 75.0, 1)
-                ), 75.0)
+                ), 75.0, OrderStatus.PAID)
         );
 
-        when(orderService.getAllOrders(0L)).thenReturn(Mono.just(new OrdersDto(mockOrders)));
+        when(orderService.getOrdersPage(0L, null)).thenReturn(Mono.just(new OrdersDto(mockOrders)));
 
         webTestClient.get()
                 .uri("/orders")
@@ -52,19 +67,19 @@ class OrderControllerTest {
                     // We can verify the service was called and response is successful
                 });
 
-        verify(orderService).getAllOrders(0L);
+        verify(orderService).getOrdersPage(0L, null);
     }
 
     @Test
     void showOrders_WhenNoOrdersExist_ShouldReturnEmptyList() {
-        when(orderService.getAllOrders(0L)).thenReturn(Mono.just(new OrdersDto(List.of())));
+        when(orderService.getOrdersPage(0L, null)).thenReturn(Mono.just(new OrdersDto(List.of())));
 
         webTestClient.get()
                 .uri("/orders")
                 .exchange()
                 .expectStatus().isOk();
 
-        verify(orderService).getAllOrders(0L);
+        verify(orderService).getOrdersPage(0L, null);
     }
 
     @Test
@@ -73,7 +88,7 @@ class OrderControllerTest {
         OrderDto mockOrder = new OrderDto(orderId, Arrays.asList(
                 new ItemDto(1L, "Item 1", "Description 1", "/img1.jpg", 50.0, 2),
                 new ItemDto(2L, "Item 2", "Description 2", "/img2.jpg", 25.0, 2)
-        ), 150.0);
+        ), 150.0, OrderStatus.PAID);
 
         when(orderService.getOrderById(orderId, 0L)).thenReturn(Mono.just(mockOrder));
 
@@ -106,10 +121,10 @@ class OrderControllerTest {
 
         OrderDto mockOrder1 = new OrderDto(orderId1, Arrays.asList(
                 new ItemDto(1L, "Item A", "Desc A", "/imgA.jpg", 50.0, 2)
-        ), 100.0);
+        ), 100.0, OrderStatus.PAID);
         OrderDto mockOrder2 = new OrderDto(orderId2, Arrays.asList(
                 new ItemDto(2L, "Item B", "Desc B", "/imgB.jpg", 100.0, 2)
-        ), 200.0);
+        ), 200.0, OrderStatus.PENDING_PAYMENT);
 
         when(orderService.getOrderById(orderId1, 0L)).thenReturn(Mono.just(mockOrder1));
         when(orderService.getOrderById(orderId2, 0L)).thenReturn(Mono.just(mockOrder2));
@@ -159,9 +174,24 @@ class OrderControllerTest {
     }
 
 
+    @Test
+    void showOrders_WithCursor_ShouldRequestOlderPage() {
+        when(orderService.getOrdersPage(0L, 40L)).thenReturn(Mono.just(new OrdersDto(List.of(
+                new OrderDto(39L, List.of(new ItemDto(1L, "Item 1", "Desc 1", "/img1.jpg", 50.0, 1)), 50.0, OrderStatus.PAID)), 39L)));
+
+        webTestClient.get()
+                .uri("/orders?before=40")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .value(body -> assertTrue(body.contains("/orders?before=39")));
+
+        verify(orderService).getOrdersPage(0L, 40L);
+    }
+
     @Test
     void showOrders_WhenServiceReturnsError_ShouldHandleGracefully() {
-        when(orderService.getAllOrders(0L))
+        when(orderService.getOrdersPage(0L, null))
                 .thenReturn(Mono.error(new RuntimeException("Service error")));
 
         webTestClient.get()
@@ -169,7 +199,32 @@ class OrderControllerTest {
                 .exchange()
                 .expectStatus().is5xxServerError();
 
-        verify(orderService).getAllOrders(0L);
+        verify(orderService).getOrdersPage(0L, null);
     }
 
-}
\ No newline at end of file
+    @Test
+    void getOrderStats_ShouldReturnStatsOfUser() {
+        when(statsService.getStats(0L)).thenReturn(Mono.just(new UserOrderStatsDto(3, 450.0)));
+
+        webTestClient.get()
+                .uri("/orders/stats")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.ordersCount").isEqualTo(3)
+                .jsonPath("$.totalSpent").isEqualTo(450.0);
+    }
+
+    @Test
+    void showOrders_ShouldShowOrderStats() {
+        when(orderService.getOrdersPage(0L, null)).thenReturn(Mono.just(new OrdersDto(List.of())));
+        when(statsService.getStats(0L)).thenReturn(Mono.just(new UserOrderStatsDto(2, 300.0)));
+
+        webTestClient.get()
+                .uri("/orders")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .value(body -> assertTrue(body.contains("Заказов: 2, на сумму 300.0 руб.")));
+    }
+}
@@ -0,0 +1,92 @@
+package org.yandex.mymarketapp.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.yandex.mymarketapp.model.dto.ItemDto;
+import org.yandex.mymarketapp.model.dto.OrderExportDto;
+import org.yandex.mymarketapp.service.OrderService;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@WebFluxTest(OrderExportController.class)
+@TestPropertySource(properties = {
+        "market.cart.anonymous-sessions=false",
+        "market.admin.token=secret"
+})
+class OrderExportControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private OrderService orderService;
+
+    @Test
+    void exportOrders_ShouldStreamOneOrderPerLine() {
+        when(orderService.exportOrders(0L)).thenReturn(Flux.just(
+                new OrderExportDto(1L, 0L, 100.0, List.of(new ItemDto(1L, "Item 1", "Desc 1", "/img1.jpg", 50.0, 2))),
+                new OrderExportDto(2L, 0L, 25.0, List.of())));
+
+        List<OrderExportDto> orders = webTestClient.get()
+                .uri("/orders/export")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(OrderExportDto.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals(2, orders.size());
+        assertEquals(2, orders.get(0).items().get(0).count());
+        verify(orderService).exportOrders(0L);
+    }
+
+    @Test
+    void exportAllOrders_WithoutToken_ShouldBeForbidden() {
+        webTestClient.get()
+                .uri("/admin/orders/export")
+                .exchange()
+                .expectStatus().isForbidden();
+
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    void exportAllOrders_WithWrongToken_ShouldBeForbidden() {
+        webTestClient.get()
+                .uri("/admin/orders/export")
+                .header(AdminTokens.ADMIN_TOKEN_HEADER, "guess")
+                .exchange()
+                .expectStatus().isForbidden();
+
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    void exportAllOrders_WithToken_ShouldStreamOrdersOfAllUsers() {
+        when(orderService.exportAllOrders()).thenReturn(Flux.just(
+                new OrderExportDto(1L, 0L, 100.0, List.of()),
+                new OrderExportDto(2L, 7L, 25.0, List.of())));
+
+        webTestClient.get()
+                .uri("/admin/orders/export")
+                .header(AdminTokens.ADMIN_TOKEN_HEADER, "secret")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(OrderExportDto.class)
+                .hasSize(2);
+
+        verify(orderService).exportAllOrders();
+    }
+}
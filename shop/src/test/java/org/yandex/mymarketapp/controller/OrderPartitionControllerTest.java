@@ -0,0 +1,65 @@
+package org.yandex.mymarketapp.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.yandex.mymarketapp.model.dto.OrderPartitionDto;
+import org.yandex.mymarketapp.service.OrderPartitionService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.mockito.Mockito.*;
+
+@WebFluxTest(OrderPartitionController.class)
+@TestPropertySource(properties = {
+        "market.cart.anonymous-sessions=false",
+        "market.admin.token=secret"
+})
+class OrderPartitionControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private OrderPartitionService partitionService;
+
+    @Test
+    void partitions_WithoutToken_ShouldBeForbidden() {
+        webTestClient.get()
+                .uri("/admin/order-partitions")
+                .exchange()
+                .expectStatus().isForbidden();
+
+        verifyNoInteractions(partitionService);
+    }
+
+    @Test
+    void partitions_ShouldReturnRanges() {
+        when(partitionService.getPartitions())
+                .thenReturn(Flux.just(new OrderPartitionDto("orders_p0", "order_positions_p0", 0, 1_000_000)));
+
+        webTestClient.get()
+                .uri("/admin/order-partitions")
+                .header(AdminTokens.ADMIN_TOKEN_HEADER, "secret")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].orders").isEqualTo("orders_p0")
+                .jsonPath("$[0].toId").isEqualTo(1_000_000);
+    }
+
+    @Test
+    void detach_WhenPartitionStillReceivesOrders_ShouldReturnBadRequest() {
+        when(partitionService.detach(0L))
+                .thenReturn(Mono.error(new IllegalArgumentException("Order partition orders_p0 still receives orders")));
+
+        webTestClient.post()
+                .uri("/admin/order-partitions/0/detach")
+                .header(AdminTokens.ADMIN_TOKEN_HEADER, "secret")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
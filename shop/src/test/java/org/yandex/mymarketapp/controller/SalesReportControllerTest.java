@@ -0,0 +1,81 @@
+package org.yandex.mymarketapp.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.yandex.mymarketapp.model.dto.DailySalesDto;
+import org.yandex.mymarketapp.model.dto.ItemSalesDto;
+import org.yandex.mymarketapp.service.SalesReportService;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+
+import static org.mockito.Mockito.*;
+
+@WebFluxTest(SalesReportController.class)
+@TestPropertySource(properties = {
+        "market.cart.anonymous-sessions=false",
+        "market.admin.token=secret"
+})
+class SalesReportControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private SalesReportService reportService;
+
+    @Test
+    void dailySales_WithoutToken_ShouldBeForbidden() {
+        webTestClient.get()
+                .uri("/admin/reports/daily-sales")
+                .exchange()
+                .expectStatus().isForbidden();
+
+        verifyNoInteractions(reportService);
+    }
+
+    @Test
+    void dailySales_ShouldReturnRollupRows() {
+        LocalDate day = LocalDate.of(2025, 3, 1);
+        when(reportService.getDailySales(day, day)).thenReturn(Flux.just(new DailySalesDto(day, 3, 7, 120.5)));
+
+        webTestClient.get()
+                .uri("/admin/reports/daily-sales?from=2025-03-01&to=2025-03-01")
+                .header(AdminTokens.ADMIN_TOKEN_HEADER, "secret")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].day").isEqualTo("2025-03-01")
+                .jsonPath("$[0].orders").isEqualTo(3)
+                .jsonPath("$[0].revenue").isEqualTo(120.5);
+    }
+
+    @Test
+    void itemSales_ShouldReturnTopItems() {
+        when(reportService.getTopItems(5)).thenReturn(Flux.just(new ItemSalesDto(1L, "Item 1", 2, 4, 40.0)));
+
+        webTestClient.get()
+                .uri("/admin/reports/item-sales?limit=5")
+                .header(AdminTokens.ADMIN_TOKEN_HEADER, "secret")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].title").isEqualTo("Item 1")
+                .jsonPath("$[0].units").isEqualTo(4);
+    }
+
+    @Test
+    void itemSales_WithInvalidLimit_ShouldReturnBadRequest() {
+        when(reportService.getTopItems(1000)).thenReturn(Flux.error(new IllegalArgumentException("Limit must be from 1 to 100")));
+
+        webTestClient.get()
+                .uri("/admin/reports/item-sales?limit=1000")
+                .header(AdminTokens.ADMIN_TOKEN_HEADER, "secret")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
@@ -0,0 +1,49 @@
+package org.yandex.mymarketapp.model.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CartCountsTest {
+
+    @Test
+    void get_ShouldReturnCountsOfCartItemsAndZeroForOthers() {
+        CartCounts counts = CartCounts.of(List.of(
+                new ItemDto(1L, "Item 1", "Desc 1", "/img1.jpg", 10.0, 2),
+                new ItemDto(17L, "Item 17", "Desc 17", "/img17.jpg", 20.0, 5)));
+
+        assertEquals(2, counts.get(1L));
+        assertEquals(5, counts.get(17L));
+        assertEquals(0, counts.get(2L));
+        assertEquals(2, counts.size());
+    }
+
+    @Test
+    void get_ShouldMatchHashMapForManyKeys() {
+        Random random = new Random(7);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            expected.put(random.nextLong(1, 1_000_000), random.nextInt(1, 10));
+        }
+
+        CartCounts counts = CartCounts.of(expected);
+
+        assertEquals(expected.size(), counts.size());
+        expected.forEach((itemId, count) -> assertEquals(count, counts.get(itemId)));
+        for (int i = 0; i < 1000; i++) {
+            long itemId = random.nextLong(1_000_000, 2_000_000);
+            assertEquals(0, counts.get(itemId));
+        }
+    }
+
+    @Test
+    void empty_ShouldReturnZero() {
+        assertEquals(0, CartCounts.EMPTY.get(1L));
+        assertEquals(0, CartCounts.of(Map.of()).size());
+    }
+}
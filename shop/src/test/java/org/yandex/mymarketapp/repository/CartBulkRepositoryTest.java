@@ -0,0 +1,77 @@
+package org.yandex.mymarketapp.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.yandex.mymarketapp.model.domain.CartPosition;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import org.yandex.mymarketapp.repo.CartBulkRepository;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import reactor.test.StepVerifier;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class CartBulkRepositoryTest extends PostgresBaseIntegrationTest {
+
+    @Autowired
+    private CartBulkRepository bulkRepository;
+
+    @Autowired
+    private CartPositionsRepository cartPositionsRepository;
+
+    private final Long userId = 0L;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-cartpositions.sql");
+    }
+
+    @Test
+    void applyChanges_ShouldUpdateInsertAndDeleteInOneStatement() {
+        Map<Long, QuantityChange> changes = new LinkedHashMap<>();
+        changes.put(1L, QuantityChange.delta(3));
+        changes.put(2L, QuantityChange.REMOVE);
+        changes.put(3L, QuantityChange.set(4));
+
+        StepVerifier.create(bulkRepository.applyChanges(userId, changes))
+                .verifyComplete();
+
+        StepVerifier.create(cartPositionsRepository.findByUserId(userId).collectMap(CartPosition::getItemId, CartPosition::getCount))
+                .expectNext(Map.of(1L, 5, 3L, 4))
+                .verifyComplete();
+    }
+
+    @Test
+    void applyChanges_ShouldClampAtZero() {
+        StepVerifier.create(bulkRepository.applyChanges(userId, Map.of(1L, QuantityChange.delta(-10), 3L, QuantityChange.MINUS)))
+                .verifyComplete();
+
+        StepVerifier.create(cartPositionsRepository.findByUserId(userId).collectMap(CartPosition::getItemId, CartPosition::getCount))
+                .expectNext(Map.of(2L, 1))
+                .verifyComplete();
+    }
+
+    @Test
+    void applyChanges_WhenItemNotExists_ShouldReturnItsIdAndSkipIt() {
+        StepVerifier.create(bulkRepository.applyChanges(userId, Map.of(999L, QuantityChange.PLUS)))
+                .expectNext(999L)
+                .verifyComplete();
+
+        StepVerifier.create(cartPositionsRepository.findByItemIdAndUserId(999L, userId))
+                .verifyComplete();
+    }
+
+    @Test
+    void applyChanges_ShouldNotTouchOtherUsers() {
+        StepVerifier.create(bulkRepository.applyChanges(7L, Map.of(1L, QuantityChange.set(9))))
+                .verifyComplete();
+
+        StepVerifier.create(cartPositionsRepository.findCountByUserIdAndItemId(userId, 1L))
+                .expectNext(2)
+                .verifyComplete();
+        StepVerifier.create(cartPositionsRepository.findCountByUserIdAndItemId(7L, 1L))
+                .expectNext(9)
+                .verifyComplete();
+    }
+}
@@ -13,6 +13,8 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class CartPositionsRepositoryTest extends PostgresBaseIntegrationTest {
@@ -267,4 +269,41 @@ class CartPositionsRepositoryTest extends PostgresBaseIntegrationTest {
         StepVerifier.create(operation)
                 .verifyError(DataIntegrityViolationException.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    void addItem_WhenItemNotInCart_ShouldInsertPositionWithCountOne() {
+        StepVerifier.create(cartPositionsRepository.addItem(3L, userId)
+                        .then(cartPositionsRepository.findCountByUserIdAndItemId(userId, 3L)))
+                .expectNext(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void addItem_WhenItemNotExists_ShouldInsertNothing() {
+        StepVerifier.create(cartPositionsRepository.addItem(999L, userId))
+                .expectNext(0)
+                .verifyComplete();
+    }
+
+    @Test
+    void addItem_WhenCalledConcurrently_ShouldKeepOnePosition() {
+        Mono<Long> operation = Flux.range(0, 50)
+                .flatMap(i -> cartPositionsRepository.addItem(3L, userId), 16)
+                .then(cartPositionsRepository.findByUserId(userId).filter(p -> p.getItemId() == 3L).count());
+
+        StepVerifier.create(operation)
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(cartPositionsRepository.findCountByUserIdAndItemId(userId, 3L))
+                .expectNext(50)
+                .verifyComplete();
+    }
+
+    @Test
+    void removePositions_ShouldKeepOtherPositions() {
+        StepVerifier.create(cartPositionsRepository.removePositions(userId, List.of(1L))
+                        .thenMany(cartPositionsRepository.findByUserId(userId).map(CartPosition::getItemId)))
+                .expectNext(2L)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,82 @@
+package org.yandex.mymarketapp.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.yandex.mymarketapp.repo.CheckoutRequestRepository;
+import reactor.test.StepVerifier;
+
+import java.time.OffsetDateTime;
+
+class CheckoutRequestRepositoryTest extends PostgresBaseIntegrationTest {
+
+    @Autowired
+    private CheckoutRequestRepository checkoutRequests;
+
+    private final Long userId = 0L;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-orders.sql");
+        databaseClient.sql("DELETE FROM checkout_requests").then().block();
+    }
+
+    @Test
+    void claim_WhenKeyIsNew_ShouldClaimIt() {
+        StepVerifier.create(checkoutRequests.claim(userId, "key-1", OffsetDateTime.now().minusDays(1)))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void claim_WhenKeyIsUsed_ShouldReturnStoredOrder() {
+        OffsetDateTime expiredBefore = OffsetDateTime.now().minusDays(1);
+
+        StepVerifier.create(checkoutRequests.claim(userId, "key-1", expiredBefore)
+                        .then(checkoutRequests.complete(userId, "key-1", 2L))
+                        .then(checkoutRequests.claim(userId, "key-1", expiredBefore)))
+                .expectNext(false)
+                .verifyComplete();
+        StepVerifier.create(checkoutRequests.findOrderId(userId, "key-1"))
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void claim_WhenSameKeyOfOtherUser_ShouldClaimIt() {
+        OffsetDateTime expiredBefore = OffsetDateTime.now().minusDays(1);
+
+        StepVerifier.create(checkoutRequests.claim(userId, "key-1", expiredBefore)
+                        .then(checkoutRequests.claim(7L, "key-1", expiredBefore)))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void claim_WhenKeyExpired_ShouldTakeItOver() {
+        StepVerifier.create(checkoutRequests.claim(userId, "key-1", OffsetDateTime.now().minusDays(1))
+                        .then(checkoutRequests.complete(userId, "key-1", 1L))
+                        .then(checkoutRequests.claim(userId, "key-1", OffsetDateTime.now().plusMinutes(1))))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(checkoutRequests.findOrderId(userId, "key-1"))
+                .verifyComplete();
+    }
+
+    @Test
+    void deleteExpired_ShouldKeepFreshKeys() {
+        databaseClient.sql("""
+                INSERT INTO checkout_requests (user_id, idempotency_key, created_at)
+                VALUES (0, 'old-1', now() - interval '2 days'),
+                       (0, 'old-2', now() - interval '2 days'),
+                       (0, 'fresh', now())
+                """).then().block();
+
+        StepVerifier.create(checkoutRequests.deleteExpired(OffsetDateTime.now().minusDays(1), 10))
+                .expectNext(2L)
+                .verifyComplete();
+        StepVerifier.create(checkoutRequests.claim(userId, "fresh", OffsetDateTime.now().minusDays(1)))
+                .expectNext(false)
+                .verifyComplete();
+    }
+}
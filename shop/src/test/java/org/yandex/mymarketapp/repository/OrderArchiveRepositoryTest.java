@@ -0,0 +1,121 @@
+package org.yandex.mymarketapp.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.yandex.mymarketapp.model.domain.Order;
+import org.yandex.mymarketapp.model.domain.OrderPosition;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
+import org.yandex.mymarketapp.repo.OrderArchiveRepository;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+class OrderArchiveRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void findOrder_ShouldReadOrderFromAnyBlockWithAllFields() throws IOException {
+        OrderArchiveRepository archive = new OrderArchiveRepository(true, dir.toString(), 4);
+        StepVerifier.create(archive.append(orders(3, 10)))
+                .expectNext(30)
+                .verifyComplete();
+
+        StepVerifier.create(archive.findOrder(17L, 2L))
+                .assertNext(order -> {
+                    assertThat(order.getUserId()).isEqualTo(2L);
+                    assertThat(order.getTotalSum()).isEqualTo(17.0);
+                    assertThat(order.getStatus()).isEqualTo(OrderStatus.PAID);
+                    OrderPosition position = order.getItems().get(0);
+                    assertThat(position.getOrderId()).isEqualTo(17L);
+                    assertThat(position.getItemId()).isNull();
+                    assertThat(position.getTitle()).isEqualTo("Item of order 17");
+                    assertThat(position.getDescription()).isNull();
+                    assertThat(position.getImgPath()).isEqualTo("/images/17.jpg");
+                    assertThat(position.getPrice()).isEqualTo(17.0);
+                    assertThat(position.getCount()).isEqualTo(1);
+                })
+                .verifyComplete();
+        StepVerifier.create(archive.findOrder(17L, 1L))
+                .verifyComplete();
+    }
+
+    @Test
+    void findOrder_ShouldReadSegmentWrittenByAnotherInstanceAfterRescan() throws IOException {
+        OrderArchiveRepository archive = new OrderArchiveRepository(true, dir.toString(), 4);
+        OrderArchiveRepository other = new OrderArchiveRepository(true, dir.toString(), 4);
+        List<Order> orders = orders(2, 4);
+        archive.append(orders.subList(0, 4)).block();
+        other.append(orders.subList(4, 8)).block();
+
+        StepVerifier.create(archive.findOrder(7L, 1L))
+                .verifyComplete();
+        archive.rescan().block();
+        StepVerifier.create(archive.findOrder(7L, 1L).map(Order::getId))
+                .expectNext(7L)
+                .verifyComplete();
+        StepVerifier.create(archive.findAll(null).map(Order::getId).collectList())
+                .assertNext(ids -> assertThat(ids).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L))
+                .verifyComplete();
+    }
+
+    @Test
+    void append_ShouldSkipArchivedOrdersAndSurviveReopen() throws IOException {
+        OrderArchiveRepository archive = new OrderArchiveRepository(true, dir.toString(), 4);
+        List<Order> orders = orders(2, 4);
+        archive.append(orders.subList(0, 5)).block();
+        Files.writeString(dir.resolve("orders-0000000002.seg.tmp"), "unfinished");
+
+        OrderArchiveRepository reopened = new OrderArchiveRepository(true, dir.toString(), 4);
+        StepVerifier.create(reopened.append(orders))
+                .expectNext(3)
+                .verifyComplete();
+        StepVerifier.create(reopened.findAll(null).map(Order::getId).collectList())
+                .assertNext(ids -> assertThat(ids).hasSize(8).doesNotHaveDuplicates())
+                .verifyComplete();
+        assertThat(dir.resolve("orders-0000000002.seg.tmp")).doesNotExist();
+    }
+
+    @Test
+    void whenDisabled_ShouldNotTouchDirectoryAndFindNothing() throws IOException {
+        Path archiveDir = dir.resolve("disabled");
+        OrderArchiveRepository archive = new OrderArchiveRepository(false, archiveDir.toString(), 4);
+
+        StepVerifier.create(archive.rescan().then(archive.findOrder(1L, 1L)))
+                .verifyComplete();
+        StepVerifier.create(archive.findAll(null))
+                .verifyComplete();
+        assertThat(archiveDir).doesNotExist();
+    }
+
+    /**
+     * Orders 1..users*perUser, user of the order is its id modulo {@code users}
+     */
+    private static List<Order> orders(int users, int perUser) {
+        List<Order> orders = new ArrayList<>();
+        for (long id = 1; id <= (long) users * perUser; id++) {
+            Order order = new Order();
+            order.setId(id);
+            order.setUserId(id % users);
+            order.setTotalSum((double) id);
+            order.setStatus(OrderStatus.PAID);
+            OrderPosition position = new OrderPosition();
+            position.setId(id);
+            position.setOrderId(id);
+            position.setTitle("Item of order " + id);
+            position.setImgPath("/images/" + id + ".jpg");
+            position.setPrice(id);
+            position.setCount(1);
+            order.setItems(List.of(position));
+            orders.add(order);
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,84 @@
+package org.yandex.mymarketapp.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.yandex.mymarketapp.LatencyStats;
+import org.yandex.mymarketapp.repo.OrderRepository;
+
+import java.time.Duration;
+
+/**
+ * Time to read and map the whole order history of a user, against the number of positions per order.
+ * Run with -Dbenchmark=true.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class OrderMappingBenchmarkTest extends PostgresBaseIntegrationTest {
+
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+    private static final int ORDERS = 5_000;
+    private static final Long USER_ID = 3001L;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-orders.sql");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 50})
+    void streamWithPositions(int positions) {
+        databaseClient.sql("DELETE FROM orders WHERE user_id = :userId")
+                .bind("userId", USER_ID)
+                .then()
+                .block();
+        databaseClient.sql("""
+                        WITH snapshot AS (
+                            INSERT INTO item_snapshots (hash, title, description, img_path)
+                            SELECT item_snapshot_hash('Benchmark item ' || n, 'Description ' || n, '/images/bench' || n || '.jpg'),
+                                   'Benchmark item ' || n, 'Description ' || n, '/images/bench' || n || '.jpg'
+                            FROM generate_series(1, :positions) n
+                            ON CONFLICT (hash) DO NOTHING
+                        )
+                        INSERT INTO orders (user_id, total_sum, status, positions)
+                        SELECT :userId, :positions * 10.0, 'PAID',
+                               (SELECT jsonb_agg(jsonb_build_object('id', o * 1000 + n, 'itemId', n,
+                                        'snapshotHash', encode(item_snapshot_hash('Benchmark item ' || n, 'Description ' || n,
+                                                                                  '/images/bench' || n || '.jpg'), 'hex'),
+                                        'price', 10.0, 'count', 1) ORDER BY n)
+                                FROM generate_series(1, :positions) n)
+                        FROM generate_series(1, :orders) o
+                        """)
+                .bind("userId", USER_ID)
+                .bind("positions", positions)
+                .bind("orders", ORDERS)
+                .then()
+                .block();
+
+        for (int i = 0; i < WARMUP; i++) {
+            readAll();
+        }
+        long[] latencies = new long[ITERATIONS];
+        long elapsed = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            latencies[i] = readAll();
+            elapsed += latencies[i];
+        }
+        log.info("mapping {} orders of {} positions: {}", ORDERS, positions, LatencyStats.of(latencies, elapsed));
+    }
+
+    private long readAll() {
+        long start = System.nanoTime();
+        orderRepository.streamWithPositions(USER_ID, 500)
+                .count()
+                .block(Duration.ofMinutes(1));
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,98 @@
+package org.yandex.mymarketapp.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.yandex.mymarketapp.model.dto.OrderPartitionDto;
+import org.yandex.mymarketapp.repo.OrderPartitionRepository;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+class OrderPartitionRepositoryTest extends PostgresBaseIntegrationTest {
+
+    private static final long FROM_ID = 100_000_000L;
+    private static final long TO_ID = 101_000_000L;
+
+    @Autowired
+    private OrderPartitionRepository partitionRepository;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-orders.sql");
+    }
+
+    @AfterEach
+    void afterEach() {
+        databaseClient.sql("DROP TABLE IF EXISTS order_positions_p" + FROM_ID).then().block();
+        databaseClient.sql("DROP TABLE IF EXISTS orders_p" + FROM_ID).then().block();
+    }
+
+    @Test
+    void findPartitions_ShouldReturnRangesCreatedByMigration() {
+        StepVerifier.create(partitionRepository.findPartitions().collectList())
+                .assertNext(partitions -> {
+                    assertThat(partitions).isNotEmpty();
+                    OrderPartitionDto first = partitions.get(0);
+                    assertThat(first.orders()).isEqualTo("orders_p0");
+                    assertThat(first.orderPositions()).isEqualTo("order_positions_p0");
+                    assertThat(first.fromId()).isEqualTo(0L);
+                    assertThat(first.toId()).isEqualTo(1_000_000L);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void findLastOrderId_ShouldReturnLastIssuedId() {
+        StepVerifier.create(partitionRepository.findLastOrderId())
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void createPartition_ShouldIndexOrdersOfRangeByUser() {
+        StepVerifier.create(partitionRepository.createPartition(FROM_ID, TO_ID)
+                        .flatMapMany(partition -> databaseClient.sql("SELECT indexdef FROM pg_indexes WHERE tablename = :table")
+                                .bind("table", partition.orders())
+                                .map(row -> row.get("indexdef", String.class))
+                                .all())
+                        .collectList())
+                .assertNext(indexes -> assertThat(indexes).anyMatch(index -> index.endsWith("(user_id, id)")))
+                .verifyComplete();
+    }
+
+    @Test
+    void createPartition_ThenDetach_ShouldAcceptOrdersOfRangeAndKeepThemAfterDetach() {
+        StepVerifier.create(partitionRepository.createPartition(FROM_ID, TO_ID)
+                        .flatMap(partition -> databaseClient.sql("""
+                                        INSERT INTO orders (id, total_sum, user_id, status) VALUES (:id, 10.0, 0, 'PAID')
+                                        """)
+                                .bind("id", FROM_ID)
+                                .then()
+                                .then(databaseClient.sql("""
+                                                WITH snapshot AS (
+                                                    INSERT INTO item_snapshots (hash, title, img_path)
+                                                    VALUES (item_snapshot_hash('Partitioned item', NULL, '/images/p.jpg'), 'Partitioned item', '/images/p.jpg')
+                                                    ON CONFLICT (hash) DO NOTHING
+                                                )
+                                                INSERT INTO order_positions (order_id, snapshot_hash, price, count)
+                                                VALUES (:id, item_snapshot_hash('Partitioned item', NULL, '/images/p.jpg'), 10.0, 1)
+                                                """)
+                                        .bind("id", FROM_ID)
+                                        .then())
+                                .then(partitionRepository.detachPartition(partition))
+                                .thenReturn(partition))
+                        .flatMap(partition -> partitionRepository.findPartitions()
+                                .map(OrderPartitionDto::fromId)
+                                .collectList()
+                                .zipWith(databaseClient.sql("SELECT count(*) AS detached FROM " + partition.orderPositions())
+                                        .map(row -> row.get("detached", Long.class))
+                                        .one())))
+                .assertNext(result -> {
+                    assertThat(result.getT1()).doesNotContain(FROM_ID);
+                    assertThat(result.getT2()).isEqualTo(1L);
+                })
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,80 @@
+package org.yandex.mymarketapp.repository;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.yandex.mymarketapp.model.domain.OrderPosition;
+import org.yandex.mymarketapp.repo.OrderPositionsReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the positions snapshot of one order from the bytes of its jsonb value: the streaming
+ * {@link OrderPositionsReader} against the ObjectReader binding over the decoded string it replaced.
+ * No database involved, see {@link OrderMappingBenchmarkTest} for the whole read path. Run with -Dbenchmark=true.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderPositionsReaderBenchmarkTest {
+
+    private static final Long ORDER_ID = 1L;
+
+    @Param({"1", "10", "50"})
+    public int positions;
+
+    private byte[] snapshot;
+    private OrderPositionsReader positionsReader;
+    private ObjectReader objectReader;
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OrderPositionsReaderBenchmarkTest.class.getName())
+                .build())
+                .run();
+    }
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        positionsReader = new OrderPositionsReader(objectMapper.getFactory());
+        objectReader = objectMapper.readerForListOf(OrderPosition.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        // keys in the order and spacing postgres prints jsonb with
+        StringBuilder json = new StringBuilder("[");
+        for (int n = 1; n <= positions; n++) {
+            if (n > 1) {
+                json.append(", ");
+            }
+            json.append("""
+                    {"id": %d, "count": 1, "price": 10.0, "itemId": %d, "snapshotHash": "%064x"}""".formatted(1000 + n, n, n));
+        }
+        snapshot = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<OrderPosition> streamingParser() {
+        return positionsReader.read(snapshot, ORDER_ID);
+    }
+
+    @Benchmark
+    public List<OrderPosition> objectReaderOverString() throws IOException {
+        List<OrderPosition> read = objectReader.readValue(new String(snapshot, StandardCharsets.UTF_8));
+        read.forEach(position -> position.setOrderId(ORDER_ID));
+        return read;
+    }
+}
@@ -4,6 +4,7 @@ package org.yandex.mymarketapp.repository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.yandex.mymarketapp.model.domain.ItemSnapshot;
 import org.yandex.mymarketapp.model.domain.Order;
 import org.yandex.mymarketapp.model.domain.OrderPosition;
 import org.yandex.mymarketapp.repo.OrderRepository;
@@ -12,6 +13,7 @@ import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 
@@ -197,4 +199,137 @@ class OrderRepositoryTest extends PostgresBaseIntegrationTest {
                 })
                 .verifyComplete();
     }
-}
\ No newline at end of file
+
+    @Test
+    void save_WithManyItems_ShouldAssignGeneratedIdsToMatchingPositions() {
+        Order newOrder = new Order();
+        newOrder.setTotalSum(500.0);
+        List<OrderPosition> positions = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            OrderPosition position = new OrderPosition();
+            position.setTitle("Item " + i);
+            position.setPrice(2.5);
+            position.setCount(i + 1);
+            position.setImgPath("/images/item" + i + ".jpg");
+            positions.add(position);
+        }
+        newOrder.setItems(positions);
+
+        Mono<Map<Long, String>> stored = orderRepository.save(newOrder)
+                .flatMap(savedOrder -> orderRepository.getByIdAndUserIdWithPositions(savedOrder.getId(), userId))
+                .map(order -> order.getItems().stream()
+                        .collect(Collectors.toMap(OrderPosition::getId, OrderPosition::getTitle)));
+
+        StepVerifier.create(stored)
+                .assertNext(titles -> {
+                    assertThat(titles).hasSize(200);
+                    positions.forEach(position -> assertThat(titles.get(position.getId())).isEqualTo(position.getTitle()));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void save_ShouldStorePositionsSnapshotReadWithoutPositionsTable() {
+        Order newOrder = new Order();
+        newOrder.setTotalSum(30.0);
+        OrderPosition position = new OrderPosition();
+        position.setTitle("Snapshot Item");
+        position.setDescription("Snapshot Description");
+        position.setImgPath("/images/snapshot.jpg");
+        position.setPrice(15.0);
+        position.setCount(2);
+        newOrder.setItems(new ArrayList<>(List.of(position)));
+
+        Mono<Order> stored = orderRepository.save(newOrder)
+                .flatMap(savedOrder -> databaseClient.sql("DELETE FROM order_positions WHERE order_id = :orderId")
+                        .bind("orderId", savedOrder.getId())
+                        .then()
+                        .then(orderRepository.getByIdAndUserIdWithPositions(savedOrder.getId(), userId)));
+
+        StepVerifier.create(stored)
+                .assertNext(order -> {
+                    assertThat(order.getItems()).hasSize(1);
+                    OrderPosition item = order.getItems().get(0);
+                    assertThat(item.getId()).isEqualTo(position.getId());
+                    assertThat(item.getOrderId()).isEqualTo(order.getId());
+                    assertThat(item.getTitle()).isEqualTo("Snapshot Item");
+                    assertThat(item.getDescription()).isEqualTo("Snapshot Description");
+                    assertThat(item.getImgPath()).isEqualTo("/images/snapshot.jpg");
+                    assertThat(item.getPrice()).isEqualTo(15.0);
+                    assertThat(item.getCount()).isEqualTo(2);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void streamWithPositions_ShouldReturnOrdersOfUserWithPositions() {
+        StepVerifier.create(orderRepository.streamWithPositions(userId, 1), 1)
+                .assertNext(order -> {
+                    assertThat(order.getId()).isEqualTo(1L);
+                    assertThat(order.getUserId()).isEqualTo(userId);
+                    assertThat(order.getItems()).hasSize(2);
+                })
+                .thenRequest(1)
+                .assertNext(order -> assertThat(order.getItems()).hasSize(1))
+                .thenRequest(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void streamWithPositions_WithoutUser_ShouldReturnOrdersOfAllUsers() {
+        Order otherUsersOrder = new Order();
+        otherUsersOrder.setTotalSum(10.0);
+        otherUsersOrder.setUserId(7L);
+        otherUsersOrder.setItems(new ArrayList<>());
+
+        StepVerifier.create(orderRepository.save(otherUsersOrder)
+                        .thenMany(orderRepository.streamWithPositions(null, 2))
+                        .map(Order::getUserId)
+                        .collectList())
+                .assertNext(users -> assertThat(users).containsExactly(0L, 0L, 7L))
+                .verifyComplete();
+    }
+
+    @Test
+    void save_WithSameItemInTwoOrders_ShouldStoreItemSnapshotOnce() {
+        Mono<Long> snapshotsStored = Flux.range(0, 2)
+                .concatMap(i -> {
+                    Order newOrder = new Order();
+                    newOrder.setTotalSum(40.0);
+                    OrderPosition position = new OrderPosition();
+                    position.setTitle("Shared Item");
+                    position.setDescription("Shared Description");
+                    position.setImgPath("/images/shared.jpg");
+                    position.setPrice(20.0);
+                    position.setCount(2);
+                    newOrder.setItems(new ArrayList<>(List.of(position)));
+                    return orderRepository.save(newOrder);
+                })
+                .then(databaseClient.sql("SELECT count(*) AS stored FROM item_snapshots WHERE title = 'Shared Item'")
+                        .map(row -> row.get("stored", Long.class))
+                        .one());
+
+        StepVerifier.create(snapshotsStored)
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(orderRepository.getAllWithPositions(userId)
+                        .filter(order -> order.getId() > 2)
+                        .flatMapIterable(Order::getItems)
+                        .map(OrderPosition::getDescription))
+                .expectNext("Shared Description", "Shared Description")
+                .verifyComplete();
+    }
+
+    @Test
+    void itemSnapshotHash_ShouldMatchHashOfDatabase() {
+        StepVerifier.create(databaseClient.sql("""
+                                SELECT encode(item_snapshot_hash('Чайник 1,5 л', NULL, '/images/kettle.jpg'), 'hex') AS with_null,
+                                       encode(item_snapshot_hash('Kettle', '', '/images/kettle.jpg'), 'hex') AS with_empty
+                                """)
+                        .map(row -> List.of(row.get("with_null", String.class), row.get("with_empty", String.class)))
+                        .one())
+                .expectNext(List.of(ItemSnapshot.hashOf("Чайник 1,5 л", null, "/images/kettle.jpg"),
+                        ItemSnapshot.hashOf("Kettle", "", "/images/kettle.jpg")))
+                .verifyComplete();
+    }
+}
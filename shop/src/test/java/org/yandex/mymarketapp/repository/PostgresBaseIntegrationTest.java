@@ -3,6 +3,7 @@ package org.yandex.mymarketapp.repository;
 
 import com.redis.testcontainers.RedisContainer;
 import lombok.SneakyThrows;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.platform.commons.support.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
@@ -17,6 +18,7 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
 
 @SpringBootTest
@@ -57,6 +59,20 @@ public abstract class PostgresBaseIntegrationTest {
 
 
 
+    @TempDir
+    static Path orderArchiveDir;
+
+    @DynamicPropertySource
+    static void configureOrderArchive(DynamicPropertyRegistry registry) {
+        registry.add("market.orders.archive.dir", () -> orderArchiveDir.toString());
+    }
+
+    // test scripts restart the order sequences, ids reserved ahead would outlive them
+    @DynamicPropertySource
+    static void configureOrderIds(DynamicPropertyRegistry registry) {
+        registry.add("market.orders.ids.position-block-size", () -> 1);
+    }
+
     @SneakyThrows
     protected void executeSqlScript(String scriptPath) {
         try {
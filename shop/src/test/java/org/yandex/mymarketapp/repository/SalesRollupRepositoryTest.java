@@ -0,0 +1,110 @@
+package org.yandex.mymarketapp.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.yandex.mymarketapp.model.domain.Order;
+import org.yandex.mymarketapp.model.domain.OrderPosition;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
+import org.yandex.mymarketapp.model.domain.PaymentOutboxEntry;
+import org.yandex.mymarketapp.model.dto.DailySalesDto;
+import org.yandex.mymarketapp.model.dto.ItemSalesDto;
+import org.yandex.mymarketapp.repo.OrderRepository;
+import org.yandex.mymarketapp.repo.PaymentOutboxRepository;
+import org.yandex.mymarketapp.repo.SalesRollupRepository;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+class SalesRollupRepositoryTest extends PostgresBaseIntegrationTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private PaymentOutboxRepository outboxRepository;
+
+    @Autowired
+    private SalesRollupRepository rollupRepository;
+
+    private final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-orders.sql");
+        this.executeSqlScript("sql/init-items.sql");
+        databaseClient.sql("DELETE FROM daily_sales; DELETE FROM item_sales").then().block();
+    }
+
+    @Test
+    void save_ShouldAddOrderToRollups() {
+        orderRepository.save(order(position(1L, 10.0, 2), position(2L, 5.0, 1))).block();
+        orderRepository.save(order(position(1L, 10.0, 1))).block();
+
+        StepVerifier.create(rollupRepository.findDailySales(today, today).collectList())
+                .assertNext(days -> assertThat(days).containsExactly(new DailySalesDto(today, 2, 4, 35.0)))
+                .verifyComplete();
+        StepVerifier.create(rollupRepository.findTopItems(10).collectList())
+                .assertNext(items -> assertThat(items).containsExactly(
+                        new ItemSalesDto(1L, "Test Item 1", 2, 3, 30.0),
+                        new ItemSalesDto(2L, "Another Test Item", 1, 1, 5.0)))
+                .verifyComplete();
+    }
+
+    @Test
+    void settle_WhenCancelled_ShouldTakeOrderOutOfRollups() {
+        orderRepository.save(order(position(1L, 10.0, 2))).block();
+        Order cancelled = orderRepository.save(order(position(1L, 10.0, 1), position(2L, 5.0, 3))).block();
+        PaymentOutboxEntry entry = outboxRepository.save(new PaymentOutboxEntry(cancelled)).block();
+
+        StepVerifier.create(outboxRepository.settle(entry.getId(), OrderStatus.CANCELLED.name()))
+                .expectNext(1L)
+                .verifyComplete();
+
+        StepVerifier.create(rollupRepository.findDailySales(today, today).collectList())
+                .assertNext(days -> assertThat(days).containsExactly(new DailySalesDto(today, 1, 2, 20.0)))
+                .verifyComplete();
+        StepVerifier.create(rollupRepository.findTopItems(10).collectList())
+                .assertNext(items -> assertThat(items).containsExactly(
+                        new ItemSalesDto(1L, "Test Item 1", 1, 2, 20.0),
+                        new ItemSalesDto(2L, "Another Test Item", 0, 0, 0.0)))
+                .verifyComplete();
+    }
+
+    @Test
+    void settle_WhenPaid_ShouldKeepRollups() {
+        Order paid = orderRepository.save(order(position(1L, 10.0, 2))).block();
+        PaymentOutboxEntry entry = outboxRepository.save(new PaymentOutboxEntry(paid)).block();
+
+        StepVerifier.create(outboxRepository.settle(entry.getId(), OrderStatus.PAID.name()))
+                .expectNext(1L)
+                .verifyComplete();
+
+        StepVerifier.create(rollupRepository.findDailySales(today, today).collectList())
+                .assertNext(days -> assertThat(days).containsExactly(new DailySalesDto(today, 1, 2, 20.0)))
+                .verifyComplete();
+    }
+
+    private static Order order(OrderPosition... positions) {
+        Order order = new Order();
+        order.setUserId(0L);
+        order.setTotalSum(List.of(positions).stream().mapToDouble(p -> p.getPrice() * p.getCount()).sum());
+        order.setItems(new ArrayList<>(List.of(positions)));
+        return order;
+    }
+
+    private static OrderPosition position(Long itemId, double price, int count) {
+        OrderPosition position = new OrderPosition();
+        position.setItemId(itemId);
+        position.setTitle("Item " + itemId);
+        position.setImgPath("/images/item" + itemId + ".jpg");
+        position.setPrice(price);
+        position.setCount(count);
+        return position;
+    }
+}
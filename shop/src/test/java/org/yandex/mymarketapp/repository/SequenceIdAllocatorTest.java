@@ -0,0 +1,55 @@
+package org.yandex.mymarketapp.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yandex.mymarketapp.repo.SequenceIdAllocator;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.function.Tuples;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+class SequenceIdAllocatorTest extends PostgresBaseIntegrationTest {
+
+    private SequenceIdAllocator allocator;
+
+    @BeforeEach
+    void beforeEach() {
+        databaseClient.sql("DROP SEQUENCE IF EXISTS allocator_test_seq").then()
+                .then(databaseClient.sql("CREATE SEQUENCE allocator_test_seq").then())
+                .block();
+        allocator = new SequenceIdAllocator(databaseClient, "allocator_test_seq", 10);
+    }
+
+    @Test
+    void next_ShouldGiveIdsOfOneReservedBlock() {
+        StepVerifier.create(allocator.next(3)
+                        .concatWith(allocator.next(4))
+                        .collectList()
+                        .flatMap(ids -> sequenceValue().map(value -> Tuples.of(ids, value))))
+                .assertNext(result -> {
+                    assertThat(result.getT1().get(0)).containsExactly(1L, 2L, 3L);
+                    assertThat(result.getT1().get(1)).containsExactly(4L, 5L, 6L, 7L);
+                    assertThat(result.getT2()).isEqualTo(10L);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void next_WhenBlockRunsOut_ShouldReserveNewBlockAndKeepRest() {
+        StepVerifier.create(allocator.next(8)
+                        .then(allocator.next(5))
+                        .flatMap(ids -> allocator.next(2).map(rest -> Tuples.of(ids, rest))))
+                .assertNext(result -> {
+                    assertThat(result.getT1()).containsExactly(11L, 12L, 13L, 14L, 15L);
+                    assertThat(result.getT2()).containsExactly(9L, 10L);
+                })
+                .verifyComplete();
+    }
+
+    private Mono<Long> sequenceValue() {
+        return databaseClient.sql("SELECT last_value FROM allocator_test_seq")
+                .map(row -> row.get("last_value", Long.class))
+                .one();
+    }
+}
@@ -0,0 +1,78 @@
+package org.yandex.mymarketapp.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.yandex.mymarketapp.model.domain.Order;
+import org.yandex.mymarketapp.model.domain.OrderPosition;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
+import org.yandex.mymarketapp.model.domain.PaymentOutboxEntry;
+import org.yandex.mymarketapp.model.dto.UserOrderStatsDto;
+import org.yandex.mymarketapp.repo.OrderRepository;
+import org.yandex.mymarketapp.repo.PaymentOutboxRepository;
+import org.yandex.mymarketapp.repo.UserOrderStatsRepository;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class UserOrderStatsRepositoryTest extends PostgresBaseIntegrationTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private PaymentOutboxRepository outboxRepository;
+
+    @Autowired
+    private UserOrderStatsRepository statsRepository;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-orders.sql");
+        databaseClient.sql("DELETE FROM user_order_stats").then().block();
+    }
+
+    @Test
+    void save_ShouldAddOrderToStatsOfUser() {
+        orderRepository.save(order(5L, 20.0)).block();
+        orderRepository.save(order(5L, 15.0)).block();
+        orderRepository.save(order(6L, 100.0)).block();
+
+        StepVerifier.create(statsRepository.findByUserId(5L))
+                .expectNext(new UserOrderStatsDto(2, 35.0))
+                .verifyComplete();
+    }
+
+    @Test
+    void settle_WhenCancelled_ShouldTakeOrderOutOfStats() {
+        orderRepository.save(order(5L, 20.0)).block();
+        Order cancelled = orderRepository.save(order(5L, 15.0)).block();
+        PaymentOutboxEntry entry = outboxRepository.save(new PaymentOutboxEntry(cancelled)).block();
+
+        StepVerifier.create(outboxRepository.settle(entry.getId(), OrderStatus.CANCELLED.name())
+                        .then(statsRepository.findByUserId(5L)))
+                .expectNext(new UserOrderStatsDto(1, 20.0))
+                .verifyComplete();
+    }
+
+    @Test
+    void findByUserId_WithoutOrders_ShouldReturnEmptyStats() {
+        StepVerifier.create(statsRepository.findByUserId(42L))
+                .expectNext(UserOrderStatsDto.EMPTY)
+                .verifyComplete();
+    }
+
+    private static Order order(Long userId, double price) {
+        OrderPosition position = new OrderPosition();
+        position.setTitle("Stats Item");
+        position.setImgPath("/images/stats.jpg");
+        position.setPrice(price);
+        position.setCount(1);
+        Order order = new Order();
+        order.setUserId(userId);
+        order.setTotalSum(price);
+        order.setItems(new ArrayList<>(List.of(position)));
+        return order;
+    }
+}
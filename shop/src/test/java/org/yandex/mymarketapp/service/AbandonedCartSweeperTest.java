@@ -0,0 +1,82 @@
+package org.yandex.mymarketapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.yandex.mymarketapp.model.domain.CartPosition;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import org.yandex.mymarketapp.repository.PostgresBaseIntegrationTest;
+import reactor.test.StepVerifier;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestPropertySource(properties = {
+        "market.cart.sweeper.enabled=true",
+        "market.cart.sweeper.idle-age=P1D",
+        "market.cart.sweeper.interval=PT1H",
+        "market.cart.sweeper.batch-size=1",
+        "market.cart.sweeper.batch-pause=PT0S"
+})
+class AbandonedCartSweeperTest extends PostgresBaseIntegrationTest {
+
+    @Autowired
+    private AbandonedCartSweeper sweeper;
+
+    @Autowired
+    private CartPositionsRepository cartRepo;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-cartpositions.sql");
+        databaseClient.sql("""
+                INSERT INTO cart_positions (item_id, count, user_id, updated_at)
+                VALUES (1, 1, -5, now() - interval '3 days'),
+                       (3, 2, -5, now() - interval '2 days'),
+                       (1, 1, 7, now() - interval '5 days'),
+                       (2, 1, 7, now()),
+                       (2, 4, 9, now() - interval '10 days')
+                """).then().block();
+    }
+
+    @Test
+    void sweep_ShouldDeleteOnlyCartsIdleAsAWhole() {
+        double rowsBefore = meterRegistry.counter("market.cart.sweeper.reclaimed.rows").count();
+        double cartsBefore = meterRegistry.counter("market.cart.sweeper.reclaimed.carts").count();
+
+        StepVerifier.create(sweeper.sweep())
+                .expectNext(3L)
+                .verifyComplete();
+
+        StepVerifier.create(cartRepo.findAll().collectMultimap(CartPosition::getUserId, CartPosition::getItemId))
+                .assertNext(carts -> {
+                    assertTrue(carts.keySet().containsAll(Set.of(0L, 7L)));
+                    assertTrue(!carts.containsKey(-5L) && !carts.containsKey(9L));
+                })
+                .verifyComplete();
+        assertTrue(meterRegistry.counter("market.cart.sweeper.reclaimed.rows").count() - rowsBefore >= 3);
+        assertTrue(meterRegistry.counter("market.cart.sweeper.reclaimed.carts").count() - cartsBefore >= 2);
+    }
+
+    @Test
+    void sweep_WhenCartIsTouched_ShouldKeepIt() {
+        StepVerifier.create(cartRepo.increaseItemCount(2L, 9L)
+                        .then(sweeper.sweep()))
+                .expectNext(2L)
+                .verifyComplete();
+
+        StepVerifier.create(cartRepo.findCountByUserIdAndItemId(9L, 2L))
+                .expectNext(5)
+                .verifyComplete();
+        StepVerifier.create(cartRepo.findByUserId(0L).collectMap(CartPosition::getItemId, CartPosition::getCount))
+                .expectNext(Map.of(1L, 2, 2L, 1))
+                .verifyComplete();
+    }
+}
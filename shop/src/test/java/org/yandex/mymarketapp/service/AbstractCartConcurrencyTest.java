@@ -0,0 +1,244 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.yandex.mymarketapp.LatencyStats;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import org.yandex.mymarketapp.repository.PostgresBaseIntegrationTest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Fires thousands of concurrent cart mutations per user and checks the outcome against a sequential model.
+ * Workloads are built so that every order of their operations gives the same cart, then any linearization
+ * of the concurrent run must end in the state the model computes.
+ * Run with -Dcart.stress.operations-per-user=20000 for a heavier load, throughput and latency percentiles are logged.
+ */
+@Slf4j
+abstract class AbstractCartConcurrencyTest extends PostgresBaseIntegrationTest {
+
+    protected static final List<Long> USERS = List.of(1001L, 1002L, 1003L, 1004L);
+    protected static final List<Long> ITEMS = List.of(1L, 2L, 3L);
+    protected static final int OPERATIONS_PER_USER = Integer.getInteger("cart.stress.operations-per-user", 1000);
+    protected static final int CONCURRENCY = Integer.getInteger("cart.stress.concurrency", 64);
+    private static final int ROUNDS = 8;
+    private static final Duration TIMEOUT = Duration.ofMinutes(5);
+
+    @Autowired
+    protected CartService cartService;
+
+    @Autowired
+    protected CartStore cartStore;
+
+    @Autowired
+    protected CartPositionsRepository cartRepo;
+
+    protected final Random random = new Random(42);
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-cartpositions.sql");
+        resetStore();
+    }
+
+    protected void resetStore() {
+    }
+
+    protected Mono<Void> persist() {
+        return Mono.empty();
+    }
+
+    @ParameterizedTest
+    @EnumSource(Path.class)
+    void concurrentIncrements_ShouldMatchSequentialModel(Path path) {
+        List<Operation> operations = new ArrayList<>();
+        for (Long userId : USERS) {
+            for (int i = 0; i < OPERATIONS_PER_USER; i++) {
+                operations.add(new Operation(new Position(userId, ITEMS.get(random.nextInt(ITEMS.size()))), QuantityChange.PLUS));
+            }
+        }
+
+        run("increments", path, operations);
+
+        assertCartsEqual(replay(Map.of(), operations));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Path.class)
+    void commutativeRounds_ShouldMatchSequentialModel(Path path) {
+        Map<Position, Integer> expected = Map.of();
+        for (int round = 0; round < ROUNDS; round++) {
+            List<Operation> operations = commutativeRound(expected);
+            Map<Position, Integer> next = replay(expected, operations);
+            assertEquals(next, replay(expected, reversed(operations)), "round must not depend on the order of its operations");
+
+            run("round " + round, path, operations);
+
+            assertCartsEqual(next);
+            expected = next;
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Path.class)
+    void mixedOperations_ShouldKeepCartInvariants(Path path) {
+        QuantityChange[] changes = {QuantityChange.PLUS, QuantityChange.PLUS, QuantityChange.MINUS, QuantityChange.REMOVE};
+        List<Operation> operations = new ArrayList<>();
+        for (Long userId : USERS) {
+            for (int i = 0; i < OPERATIONS_PER_USER; i++) {
+                operations.add(new Operation(new Position(userId, ITEMS.get(random.nextInt(ITEMS.size()))),
+                        changes[random.nextInt(changes.length)]));
+            }
+        }
+
+        run("mixed", path, operations);
+
+        Map<Position, Integer> carts = readCarts();
+        carts.forEach((position, count) -> {
+            long increments = operations.stream()
+                    .filter(operation -> operation.position().equals(position) && operation.change().equals(QuantityChange.PLUS))
+                    .count();
+            assertTrue(count > 0 && count <= increments, position + " has impossible count " + count);
+        });
+        assertEquals(carts, readDbCarts());
+    }
+
+    protected LatencyStats run(String workload, Path path, List<Operation> operations) {
+        long[] latencies = new long[operations.size()];
+        long started = System.nanoTime();
+        Flux.range(0, operations.size())
+                .flatMap(i -> Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return execute(path, operations.get(i))
+                            .doOnSuccess(v -> latencies[i] = System.nanoTime() - start);
+                }), CONCURRENCY)
+                .then()
+                .block(TIMEOUT);
+        LatencyStats stats = LatencyStats.of(latencies, System.nanoTime() - started);
+        log.info("{} {} through {}: {}", getClass().getSimpleName(), workload, path, stats);
+        return stats;
+    }
+
+    protected Mono<Void> execute(Path path, Operation operation) {
+        Long itemId = operation.position().itemId();
+        Long userId = operation.position().userId();
+        QuantityChange change = operation.change();
+        if (path == Path.SERVICE) {
+            if (QuantityChange.PLUS.equals(change)) {
+                return cartService.increaseQuantityInCart(itemId, userId);
+            }
+            if (QuantityChange.MINUS.equals(change)) {
+                return cartService.decreaseQuantityInCart(itemId, userId);
+            }
+            return cartService.removeFromCart(itemId, userId);
+        }
+        if (QuantityChange.PLUS.equals(change)) {
+            return cartStore.increase(itemId, userId);
+        }
+        if (QuantityChange.MINUS.equals(change)) {
+            return cartStore.decrease(itemId, userId);
+        }
+        return cartStore.remove(itemId, userId);
+    }
+
+    /**
+     * Per position either up to {@code count} decrements with any number of increments (the count never hits the floor),
+     * or removes with decrements (the position ends empty whatever comes first).
+     */
+    private List<Operation> commutativeRound(Map<Position, Integer> state) {
+        int perPosition = Math.max(1, OPERATIONS_PER_USER / (ITEMS.size() * ROUNDS));
+        List<Operation> operations = new ArrayList<>();
+        for (Long userId : USERS) {
+            for (Long itemId : ITEMS) {
+                Position position = new Position(userId, itemId);
+                int count = state.getOrDefault(position, 0);
+                if (count > 0 && random.nextInt(5) == 0) {
+                    add(operations, position, QuantityChange.REMOVE, 1 + random.nextInt(3));
+                    add(operations, position, QuantityChange.MINUS, random.nextInt(perPosition));
+                } else {
+                    add(operations, position, QuantityChange.MINUS, random.nextInt(count + 1));
+                    add(operations, position, QuantityChange.PLUS, random.nextInt(2 * perPosition));
+                }
+            }
+        }
+        Collections.shuffle(operations, random);
+        return operations;
+    }
+
+    private static void add(List<Operation> operations, Position position, QuantityChange change, int times) {
+        for (int i = 0; i < times; i++) {
+            operations.add(new Operation(position, change));
+        }
+    }
+
+    protected static Map<Position, Integer> replay(Map<Position, Integer> start, List<Operation> operations) {
+        Map<Position, Integer> state = new HashMap<>(start);
+        for (Operation operation : operations) {
+            int updated = operation.change().applyTo(state.getOrDefault(operation.position(), 0));
+            if (updated == 0) {
+                state.remove(operation.position());
+            } else {
+                state.put(operation.position(), updated);
+            }
+        }
+        return state;
+    }
+
+    private static List<Operation> reversed(List<Operation> operations) {
+        List<Operation> reversed = new ArrayList<>(operations);
+        Collections.reverse(reversed);
+        return reversed;
+    }
+
+    protected void assertCartsEqual(Map<Position, Integer> expected) {
+        assertEquals(expected, readCarts());
+        assertEquals(expected, readDbCarts());
+    }
+
+    protected Map<Position, Integer> readCarts() {
+        Map<Position, Integer> carts = new HashMap<>();
+        for (Long userId : USERS) {
+            cartStore.getCounts(userId).block(TIMEOUT)
+                    .forEach((itemId, count) -> carts.put(new Position(userId, itemId), count));
+        }
+        return carts;
+    }
+
+    protected Map<Position, Integer> readDbCarts() {
+        persist().block(TIMEOUT);
+        Long duplicates = databaseClient.sql("""
+                        SELECT count(*) AS duplicates FROM (
+                            SELECT 1 FROM cart_positions GROUP BY user_id, item_id HAVING count(*) > 1
+                        ) d
+                        """)
+                .map(row -> row.get("duplicates", Long.class))
+                .one()
+                .block(TIMEOUT);
+        assertEquals(0L, duplicates, "cart positions must be unique per user and item");
+        Map<Position, Integer> carts = new HashMap<>();
+        for (Long userId : USERS) {
+            cartRepo.findByUserId(userId).toIterable()
+                    .forEach(position -> carts.put(new Position(userId, position.getItemId()), position.getCount()));
+        }
+        return carts;
+    }
+
+    protected enum Path {
+        STORE, SERVICE
+    }
+
+    protected record Position(Long userId, Long itemId) {
+    }
+
+    protected record Operation(Position position, QuantityChange change) {
+    }
+}
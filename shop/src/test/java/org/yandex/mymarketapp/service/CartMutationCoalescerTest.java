@@ -0,0 +1,128 @@
+package org.yandex.mymarketapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(classes = {CartMutationCoalescer.class})
+class CartMutationCoalescerTest {
+
+    @MockitoBean
+    private CartStore cartStore;
+
+    @Autowired
+    private CartMutationCoalescer coalescer;
+
+    private final Long userId = 0L;
+
+    @Test
+    void submit_WhenNothingInFlight_ShouldWriteSingleChangeRightAway() {
+        when(cartStore.increase(1L, userId)).thenReturn(Mono.empty());
+
+        StepVerifier.create(coalescer.submit(1L, userId, QuantityChange.PLUS))
+                .verifyComplete();
+
+        verify(cartStore).increase(1L, userId);
+        verify(cartStore, never()).apply(any(), any(), any());
+    }
+
+    @Test
+    void submit_WhenWriteInFlight_ShouldFoldFollowingChangesIntoOneWrite() {
+        Sinks.Empty<Void> firstWrite = Sinks.empty();
+        when(cartStore.increase(1L, userId)).thenReturn(firstWrite.asMono());
+        when(cartStore.apply(eq(1L), eq(userId), any())).thenReturn(Mono.empty());
+
+        Mono<Void> first = coalescer.submit(1L, userId, QuantityChange.PLUS).cache();
+        first.subscribe();
+        List<Mono<Void>> following = List.of(
+                coalescer.submit(1L, userId, QuantityChange.PLUS).cache(),
+                coalescer.submit(1L, userId, QuantityChange.PLUS).cache(),
+                coalescer.submit(1L, userId, QuantityChange.MINUS).cache(),
+                coalescer.submit(1L, userId, QuantityChange.PLUS).cache());
+        following.forEach(Mono::subscribe);
+
+        verify(cartStore, never()).apply(any(), any(), any());
+        firstWrite.tryEmitEmpty();
+
+        StepVerifier.create(first).verifyComplete();
+        following.forEach(mono -> StepVerifier.create(mono).verifyComplete());
+
+        ArgumentCaptor<QuantityChange> captor = ArgumentCaptor.forClass(QuantityChange.class);
+        verify(cartStore, times(1)).increase(1L, userId);
+        verify(cartStore, times(1)).apply(eq(1L), eq(userId), captor.capture());
+        assertEquals(5, captor.getValue().applyTo(3));
+        assertEquals(2, captor.getValue().applyTo(0));
+    }
+
+    @Test
+    void submit_WhenFoldedChangeIsNoOp_ShouldNotWrite() {
+        Sinks.Empty<Void> firstWrite = Sinks.empty();
+        when(cartStore.remove(1L, userId)).thenReturn(firstWrite.asMono());
+
+        coalescer.submit(1L, userId, QuantityChange.REMOVE).subscribe();
+        Mono<Void> plus = coalescer.submit(1L, userId, QuantityChange.PLUS).cache();
+        Mono<Void> minus = coalescer.submit(1L, userId, QuantityChange.MINUS).cache();
+        plus.subscribe();
+        minus.subscribe();
+        firstWrite.tryEmitEmpty();
+
+        StepVerifier.create(plus).verifyComplete();
+        StepVerifier.create(minus).verifyComplete();
+        verify(cartStore, never()).increase(any(), any());
+        verify(cartStore, never()).decrease(any(), any());
+        verify(cartStore, never()).apply(any(), any(), any());
+    }
+
+    @Test
+    void submit_WhenWriteFails_ShouldFailEveryFoldedCaller() {
+        Sinks.Empty<Void> firstWrite = Sinks.empty();
+        when(cartStore.decrease(1L, userId)).thenReturn(firstWrite.asMono());
+        when(cartStore.apply(eq(1L), eq(userId), any())).thenReturn(Mono.error(new IllegalStateException("db is down")));
+
+        Mono<Void> first = coalescer.submit(1L, userId, QuantityChange.MINUS).cache();
+        first.subscribe(null, e -> { });
+        Mono<Void> second = coalescer.submit(1L, userId, QuantityChange.PLUS).cache();
+        Mono<Void> third = coalescer.submit(1L, userId, QuantityChange.PLUS).cache();
+        second.subscribe(null, e -> { });
+        third.subscribe(null, e -> { });
+        firstWrite.tryEmitEmpty();
+
+        StepVerifier.create(first).verifyComplete();
+        StepVerifier.create(second).verifyError(IllegalStateException.class);
+        StepVerifier.create(third).verifyError(IllegalStateException.class);
+    }
+
+    @Test
+    void andThen_ShouldMatchApplyingChangesOneByOne() {
+        Random random = new Random(42);
+        QuantityChange[] changes = {QuantityChange.PLUS, QuantityChange.MINUS, QuantityChange.REMOVE,
+                QuantityChange.delta(3), QuantityChange.delta(-2), QuantityChange.set(4)};
+
+        for (int run = 0; run < 1000; run++) {
+            int start = random.nextInt(6);
+            int expected = start;
+            QuantityChange folded = QuantityChange.NONE;
+            int length = random.nextInt(10);
+            for (int i = 0; i < length; i++) {
+                QuantityChange change = changes[random.nextInt(changes.length)];
+                expected = change.applyTo(expected);
+                folded = folded.andThen(change);
+            }
+            assertEquals(expected, folded.applyTo(start));
+        }
+    }
+}
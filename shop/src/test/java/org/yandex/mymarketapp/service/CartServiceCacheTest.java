@@ -0,0 +1,103 @@
+package org.yandex.mymarketapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.yandex.mymarketapp.model.domain.CartPosition;
+import org.yandex.mymarketapp.model.domain.Item;
+import org.yandex.mymarketapp.model.mapper.ItemMapperImpl;
+import org.yandex.mymarketapp.repo.CartBulkRepository;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import org.yandex.mymarketapp.repo.ItemRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(classes = {CartService.class, CartMutationCoalescer.class, DbCartStore.class, CookieCartStore.class,
+        ItemService.class, ItemMapperImpl.class, CartServiceCacheTest.CacheConfiguration.class})
+class CartServiceCacheTest {
+
+    @MockitoBean
+    private ItemRepository itemsRepo;
+
+    @MockitoBean
+    private CartPositionsRepository cartRepo;
+
+    @MockitoBean
+    private CartBulkRepository bulkRepo;
+
+    @MockitoBean
+    private org.yandex.payment.api.BalanceApi balanceApi;
+
+    @Autowired
+    private CartService cartService;
+
+    private final Long userId = 0L;
+
+    @Test
+    void getCountOfItemInCartByUserId_WhenCartIsCached_ShouldNotQueryStore() {
+        CartPosition position = new CartPosition(1L, userId);
+        position.setCount(3);
+        when(cartRepo.findByUserId(userId)).thenReturn(Flux.just(position));
+        when(itemsRepo.getItemById(1L)).thenReturn(Mono.just(new Item(1L, "Item 1", "Description 1", "/img1.jpg", 10.0)));
+
+        StepVerifier.create(cartService.getCartItems(userId)
+                        .then(Mono.zip(cartService.getCountOfItemInCartByUserId(userId, 1L),
+                                cartService.getCountOfItemInCartByUserId(userId, 2L))))
+                .assertNext(counts -> {
+                    assertEquals(3, counts.getT1());
+                    assertEquals(0, counts.getT2());
+                })
+                .verifyComplete();
+
+        verify(cartRepo, never()).findCountByUserIdAndItemId(any(), any());
+    }
+
+    @Test
+    void getCountOfItemInCartByUserId_WhenCartIsNotCached_ShouldQueryStore() {
+        when(cartRepo.findCountByUserIdAndItemId(5L, 1L)).thenReturn(Mono.just(2));
+
+        StepVerifier.create(cartService.getCountOfItemInCartByUserId(5L, 1L))
+                .expectNext(2)
+                .verifyComplete();
+
+        verify(cartRepo).findCountByUserIdAndItemId(5L, 1L);
+    }
+
+    @Test
+    void getCountOfItemInCartByUserId_AfterCartChange_ShouldNotUseStaleCart() {
+        CartPosition position = new CartPosition(1L, 6L);
+        when(cartRepo.findByUserId(6L)).thenReturn(Flux.just(position));
+        when(itemsRepo.getItemById(1L)).thenReturn(Mono.just(new Item(1L, "Item 1", "Description 1", "/img1.jpg", 10.0)));
+        when(cartRepo.addItem(1L, 6L)).thenReturn(Mono.just(1));
+        when(cartRepo.findCountByUserIdAndItemId(6L, 1L)).thenReturn(Mono.just(2));
+
+        StepVerifier.create(cartService.getCartItems(6L)
+                        .then(cartService.increaseQuantityInCart(1L, 6L))
+                        .then(cartService.getCountOfItemInCartByUserId(6L, 1L)))
+                .expectNext(2)
+                .verifyComplete();
+
+        verify(cartRepo).findCountByUserIdAndItemId(6L, 1L);
+    }
+
+    @Configuration
+    @EnableCaching
+    static class CacheConfiguration {
+
+        @Bean
+        CacheManager cacheManager() {
+            return new ConcurrentMapCacheManager("cart_items");
+        }
+    }
+}
@@ -6,10 +6,13 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.yandex.mymarketapp.model.domain.CartPosition;
 import org.yandex.mymarketapp.model.domain.Item;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import org.yandex.mymarketapp.model.dto.CartChangeDto;
 import org.yandex.mymarketapp.model.dto.CartItemsDto;
 import org.yandex.mymarketapp.model.dto.ItemDto;
 import org.yandex.mymarketapp.model.exception.ItemNotFoundException;
 import org.yandex.mymarketapp.model.mapper.ItemMapperImpl;
+import org.yandex.mymarketapp.repo.CartBulkRepository;
 import org.yandex.mymarketapp.repo.CartPositionsRepository;
 import org.yandex.mymarketapp.repo.ItemRepository;
 import org.yandex.payment.model.UserBalance;
@@ -19,11 +22,12 @@ import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
-@SpringBootTest(classes = {CartService.class, ItemMapperImpl.class})
+@SpringBootTest(classes = {CartService.class, CartMutationCoalescer.class, DbCartStore.class, CookieCartStore.class, ItemService.class, ItemMapperImpl.class})
 class CartServiceTest {
 
     @MockitoBean
@@ -32,55 +36,25 @@ class CartServiceTest {
     @MockitoBean
     private CartPositionsRepository cartRepo;
 
+    @MockitoBean
+    private CartBulkRepository bulkRepo;
+
     @MockitoBean
     private org.yandex.payment.api.BalanceApi balanceApi;
 
     @Autowired
     private CartService cartService;
 
+    @Autowired
+    private DbCartStore dbCartStore;
+
     private Long userId =0L; 
     
     @Test
-    void increaseQuantityInCart_WhenItemNotInCart_ShouldCreateNewCartPosition() {
-        // Given
-        Long itemId = 1L;
-        Item mockItem = new Item();
-        mockItem.setId(itemId);
-        mockItem.setTitle("Test Item");
-        mockItem.setPrice(10.0);
-
-        CartPosition newCartPosition = new CartPosition(itemId, userId);
-        newCartPosition.setId(1L);
-
-        when(cartRepo.findByItemIdAndUserId(itemId, userId)).thenReturn(Mono.empty());
-        when(itemsRepo.findById(itemId)).thenReturn(Mono.just(mockItem));
-        when(cartRepo.save(any(CartPosition.class))).thenReturn(Mono.just(newCartPosition));
-
-        // When
-        Mono<Void> result = cartService.increaseQuantityInCart(itemId, userId);
-
-        // Then
-        StepVerifier.create(result)
-                .verifyComplete();
-
-        verify(cartRepo).findByItemIdAndUserId(itemId, userId);
-        verify(itemsRepo).findById(itemId);
-        verify(cartRepo).save(argThat(cartPosition ->
-                cartPosition.getItemId().equals(itemId) && cartPosition.getCount() == 1
-        ));
-        verify(cartRepo, never()).increaseItemCount(itemId, userId);
-    }
-
-    @Test
-    void increaseQuantityInCart_WhenItemAlreadyInCart_ShouldIncreaseCount() {
+    void increaseQuantityInCart_ShouldAddItemInOneStatement() {
         // Given
         Long itemId = 1L;
-        CartPosition existingCartPosition = new CartPosition(itemId, userId);
-        existingCartPosition.setId(1L);
-        existingCartPosition.setCount(2);
-
-        when(cartRepo.findByItemIdAndUserId(itemId, userId)).thenReturn(Mono.just(existingCartPosition));
-        when(cartRepo.increaseItemCount(itemId, userId)).thenReturn(Mono.just(1));
+        when(cartRepo.addItem(itemId, userId)).thenReturn(Mono.just(1));
 
         // When
         Mono<Void> result = cartService.increaseQuantityInCart(itemId, userId);
@@ -89,18 +63,17 @@ class CartServiceTest {
         StepVerifier.create(result)
                 .verifyComplete();
 
-        verify(cartRepo).findByItemIdAndUserId(itemId, userId);
-        verify(cartRepo).increaseItemCount(itemId, userId);
-        verify(itemsRepo, never()).findById(itemId);  // This should not be called
+        verify(cartRepo).addItem(itemId, userId);
+        verify(cartRepo, never()).findByItemIdAndUserId(any(), any());
         verify(cartRepo, never()).save(any());
+        verify(cartRepo, never()).increaseItemCount(any(), any());
     }
 
     @Test
     void increaseQuantityInCart_WhenItemNotFound_ShouldThrowException() {
         // Given
         Long itemId = 999L;
-        when(cartRepo.findByItemIdAndUserId(itemId, userId)).thenReturn(Mono.empty());
-        when(itemsRepo.findById(itemId)).thenReturn(Mono.empty());
+        when(cartRepo.addItem(itemId, userId)).thenReturn(Mono.just(0));
 
         // When
         Mono<Void> result = cartService.increaseQuantityInCart(itemId, userId);
@@ -109,17 +82,15 @@ class CartServiceTest {
         StepVerifier.create(result)
                 .verifyError(ItemNotFoundException.class);
 
-        verify(cartRepo).findByItemIdAndUserId(itemId, userId);
-        verify(itemsRepo).findById(itemId);
+        verify(cartRepo).addItem(itemId, userId);
         verify(cartRepo, never()).save(any());
-        verify(cartRepo, never()).increaseItemCount(any(), any());
     }
 
     @Test
     void decreaseQuantityInCart_WhenItemNotInCart_ShouldDoNothing() {
         // Given
         Long itemId = 1L;
-        when(cartRepo.findByItemIdAndUserId(itemId, userId)).thenReturn(Mono.empty());
+        when(cartRepo.findForUpdateByItemIdAndUserId(itemId, userId)).thenReturn(Mono.empty());
 
         // When
         Mono<Void> result = cartService.decreaseQuantityInCart(itemId, userId);
@@ -128,7 +99,7 @@ class CartServiceTest {
         StepVerifier.create(result)
                 .verifyComplete();
 
-        verify(cartRepo).findByItemIdAndUserId(itemId, userId);
+        verify(cartRepo).findForUpdateByItemIdAndUserId(itemId, userId);
         verify(cartRepo, never()).decreaseItemCount(any(), any());
         verify(cartRepo, never()).removeItemFromCartByItemId(any(), any());
     }
@@ -141,7 +112,7 @@ class CartServiceTest {
         existingCartPosition.setId(1L);
         existingCartPosition.setCount(3);
 
-        when(cartRepo.findByItemIdAndUserId(itemId, userId)).thenReturn(Mono.just(existingCartPosition));
+        when(cartRepo.findForUpdateByItemIdAndUserId(itemId, userId)).thenReturn(Mono.just(existingCartPosition));
         when(cartRepo.decreaseItemCount(itemId, userId)).thenReturn(Mono.just(1));
 
         // When
@@ -151,7 +122,7 @@ class CartServiceTest {
         StepVerifier.create(result)
                 .verifyComplete();
 
-        verify(cartRepo).findByItemIdAndUserId(itemId, userId);
+        verify(cartRepo).findForUpdateByItemIdAndUserId(itemId, userId);
         verify(cartRepo).decreaseItemCount(itemId, userId);
         verify(cartRepo, never()).removeItemFromCartByItemId(itemId, userId);
     }
@@ -164,7 +135,7 @@ class CartServiceTest {
         existingCartPosition.setId(1L);
         existingCartPosition.setCount(1);
 
-        when(cartRepo.findByItemIdAndUserId(itemId, userId)).thenReturn(Mono.just(existingCartPosition));
+        when(cartRepo.findForUpdateByItemIdAndUserId(itemId, userId)).thenReturn(Mono.just(existingCartPosition));
         when(cartRepo.removeItemFromCartByItemId(itemId, userId)).thenReturn(Mono.just(1));
 
         // When
@@ -174,7 +145,7 @@ class CartServiceTest {
         StepVerifier.create(result)
                 .verifyComplete();
 
-        verify(cartRepo).findByItemIdAndUserId(itemId, userId);
+        verify(cartRepo).findForUpdateByItemIdAndUserId(itemId, userId);
         verify(cartRepo).removeItemFromCartByItemId(itemId, userId);
         verify(cartRepo, never()).decreaseItemCount(itemId, userId);
     }
@@ -279,7 +250,7 @@ class CartServiceTest {
         cartPosition.setId(1L);
         cartPosition.setCount(3);
 
-        when(cartRepo.findByItemIdAndUserId(itemId, userId)).thenReturn(Mono.just(cartPosition));
+        when(cartRepo.findForUpdateByItemIdAndUserId(itemId, userId)).thenReturn(Mono.just(cartPosition));
         when(cartRepo.decreaseItemCount(itemId, userId)).thenReturn(Mono.just(1));
 
         // When - First decrease (3 -> 2)
@@ -296,7 +267,7 @@ class CartServiceTest {
 
         // Given - Second call: count == 1
         cartPosition.setCount(1);
-        when(cartRepo.findByItemIdAndUserId(itemId, userId)).thenReturn(Mono.just(cartPosition));
+        when(cartRepo.findForUpdateByItemIdAndUserId(itemId, userId)).thenReturn(Mono.just(cartPosition));
         when(cartRepo.removeItemFromCartByItemId(itemId, userId)).thenReturn(Mono.just(1));
 
         // When - Second decrease (1 -> remove)
@@ -311,24 +282,17 @@ class CartServiceTest {
     }
 
     @Test
-    void increaseQuantityInCart_WhenSaveFails_ShouldPropagateError() {
+    void increaseQuantityInCart_WhenAddFails_ShouldPropagateError() {
         // Given
         Long itemId = 1L;
-        Item mockItem = new Item();
-        mockItem.setId(itemId);
-
-        when(cartRepo.findByItemIdAndUserId(itemId, userId)).thenReturn(Mono.empty());
-        when(itemsRepo.findById(itemId)).thenReturn(Mono.just(mockItem));
-        when(cartRepo.save(any(CartPosition.class))).thenReturn(Mono.error(new RuntimeException("DB error")));
+        when(cartRepo.addItem(itemId, userId)).thenReturn(Mono.error(new RuntimeException("DB error")));
 
         Mono<Void> result = cartService.increaseQuantityInCart(itemId, userId);
 
         StepVerifier.create(result)
                 .verifyError(RuntimeException.class);
 
-        verify(cartRepo).findByItemIdAndUserId(itemId, userId);
-        verify(itemsRepo).findById(itemId);
-        verify(cartRepo).save(any(CartPosition.class));
+        verify(cartRepo).addItem(itemId, userId);
     }
 
     @Test
@@ -351,4 +315,55 @@ class CartServiceTest {
         StepVerifier.create(result).expectNext(false).verifyComplete();
     }
 
-}
\ No newline at end of file
+    @Test
+    void applyChanges_ShouldFoldChangesPerItemIntoOneStatement() {
+        when(bulkRepo.applyChanges(eq(userId), anyMap())).thenReturn(Flux.empty());
+
+        Mono<Void> result = cartService.applyChanges(userId, List.of(
+                new CartChangeDto(1L, 2, CartChangeDto.Mode.DELTA),
+                new CartChangeDto(2L, 5, CartChangeDto.Mode.SET),
+                new CartChangeDto(1L, -1, null),
+                new CartChangeDto(3L, 1, CartChangeDto.Mode.DELTA),
+                new CartChangeDto(3L, -1, CartChangeDto.Mode.DELTA)));
+
+        StepVerifier.create(result).verifyComplete();
+
+        verify(bulkRepo).applyChanges(userId, Map.of(
+                1L, QuantityChange.delta(2).andThen(QuantityChange.delta(-1)),
+                2L, QuantityChange.set(5)));
+        verifyNoInteractions(cartRepo);
+    }
+
+    @Test
+    void applyChanges_WhenItemNotExists_ShouldThrowException() {
+        when(bulkRepo.applyChanges(eq(userId), anyMap())).thenReturn(Flux.just(999L));
+
+        Mono<Void> result = cartService.applyChanges(userId, List.of(new CartChangeDto(999L, 1, CartChangeDto.Mode.DELTA)));
+
+        StepVerifier.create(result).verifyError(ItemNotFoundException.class);
+    }
+
+    @Test
+    void apply_WhenPositionIsNew_ShouldUpsertIt() {
+        Long itemId = 1L;
+        when(cartRepo.findForUpdateByItemIdAndUserId(itemId, userId)).thenReturn(Mono.empty());
+        when(cartRepo.addItem(itemId, userId, true, 0, 3)).thenReturn(Mono.just(1));
+
+        StepVerifier.create(dbCartStore.apply(itemId, userId, QuantityChange.set(3)))
+                .verifyComplete();
+
+        verify(cartRepo).addItem(itemId, userId, true, 0, 3);
+        verify(cartRepo, never()).save(any());
+    }
+
+    @Test
+    void apply_WhenNewItemNotExists_ShouldThrowException() {
+        Long itemId = 999L;
+        when(cartRepo.findForUpdateByItemIdAndUserId(itemId, userId)).thenReturn(Mono.empty());
+        when(cartRepo.addItem(itemId, userId, false, 1, 0)).thenReturn(Mono.just(0));
+
+        StepVerifier.create(dbCartStore.apply(itemId, userId, QuantityChange.PLUS))
+                .verifyError(ItemNotFoundException.class);
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.yandex.mymarketapp.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.yandex.mymarketapp.LatencyStats;
+import org.yandex.mymarketapp.repository.PostgresBaseIntegrationTest;
+import org.yandex.payment.api.PaymentsApi;
+import org.yandex.payment.model.PaymentRequest;
+import org.yandex.payment.model.UserBalance;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checkout latency against the number of cart lines, payment is stubbed.
+ * Run with -Dbenchmark=true.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CheckoutBenchmarkTest extends PostgresBaseIntegrationTest {
+
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 100;
+    private static final Long USER_ID = 2001L;
+
+    @Autowired
+    private OrderService orderService;
+
+    @MockitoBean
+    private PaymentsApi payApi;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-cartpositions.sql");
+        databaseClient.sql("""
+                INSERT INTO items (title, description, img_path, price)
+                SELECT 'Benchmark item ' || n, 'Description ' || n, '/images/bench' || n || '.jpg', 1 + n % 100
+                FROM generate_series(1, 1000) n
+                """).then().block();
+        when(payApi.processPayment(anyLong(), any(PaymentRequest.class)))
+                .thenReturn(Mono.just(new UserBalance().balance(1_000_000f)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 100, 1000})
+    void makeOrder(int lines) {
+        for (int i = 0; i < WARMUP; i++) {
+            checkout(lines);
+        }
+        long[] latencies = new long[ITERATIONS];
+        long elapsed = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            latencies[i] = checkout(lines);
+            elapsed += latencies[i];
+        }
+        log.info("checkout of {} lines: {}", lines, LatencyStats.of(latencies, elapsed));
+    }
+
+    private long checkout(int lines) {
+        databaseClient.sql("""
+                        INSERT INTO cart_positions (item_id, count, user_id)
+                        SELECT id, 1, :userId FROM items ORDER BY id LIMIT :lines
+                        """)
+                .bind("userId", USER_ID)
+                .bind("lines", lines)
+                .then()
+                .block();
+        long start = System.nanoTime();
+        orderService.makeOrder(USER_ID, null).block(Duration.ofMinutes(1));
+        return System.nanoTime() - start;
+    }
+}
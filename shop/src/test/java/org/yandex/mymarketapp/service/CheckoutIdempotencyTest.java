@@ -0,0 +1,123 @@
+package org.yandex.mymarketapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.yandex.mymarketapp.model.domain.CartPosition;
+import org.yandex.mymarketapp.model.exception.OrderCreateException;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import org.yandex.mymarketapp.repo.CheckoutRequestRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(classes = {CheckoutIdempotency.class, CookieCartStore.class})
+class CheckoutIdempotencyTest {
+
+    @MockitoBean
+    private OrderService orderService;
+
+    @MockitoBean
+    private CheckoutRequestRepository checkoutRequests;
+
+    @MockitoBean
+    private ItemService itemService;
+
+    @MockitoBean
+    private CartPositionsRepository cartRepo;
+
+    @Autowired
+    private CheckoutIdempotency checkoutIdempotency;
+
+    @Autowired
+    private CookieCartStore cookieCartStore;
+
+    private final Long userId = 0L;
+
+    @Test
+    void checkout_WithConcurrentDuplicates_ShouldRunCheckoutOnce() {
+        Sinks.One<Long> order = Sinks.one();
+        when(orderService.makeOrder(userId, "key-1")).thenReturn(order.asMono());
+
+        Mono<List<Long>> results = Flux.range(0, 10)
+                .flatMap(i -> checkoutIdempotency.checkout(userId, "key-1"))
+                .collectList();
+
+        StepVerifier.create(results)
+                .then(() -> order.tryEmitValue(7L))
+                .assertNext(ids -> assertEquals(List.of(7L, 7L, 7L, 7L, 7L, 7L, 7L, 7L, 7L, 7L), ids))
+                .verifyComplete();
+
+        verify(orderService, times(1)).makeOrder(userId, "key-1");
+    }
+
+    @Test
+    void checkout_WhenCheckoutFails_ShouldFailDuplicatesAndAllowRetry() {
+        when(orderService.makeOrder(userId, "key-1"))
+                .thenReturn(Mono.delay(Duration.ofMillis(50)).then(Mono.error(new OrderCreateException("Cannot create order. cart is empty"))))
+                .thenReturn(Mono.just(8L));
+
+        StepVerifier.create(Flux.merge(checkoutIdempotency.checkout(userId, "key-1"), checkoutIdempotency.checkout(userId, "key-1")))
+                .verifyError(OrderCreateException.class);
+
+        StepVerifier.create(checkoutIdempotency.checkout(userId, "key-1"))
+                .expectNext(8L)
+                .verifyComplete();
+
+        verify(orderService, times(2)).makeOrder(userId, "key-1");
+    }
+
+    @Test
+    void checkout_OfAnonymousCookieCart_ShouldExportAndClearCartOfRequest() {
+        Long anonymousUserId = -42L;
+        CookieCart cart = new CookieCart(Map.of(1L, 2, 3L, 1));
+        when(cartRepo.clearCart(anonymousUserId)).thenReturn(Mono.empty());
+        when(cartRepo.saveAll(anyIterable())).thenAnswer(invocation -> Flux.fromIterable(invocation.<Iterable<CartPosition>>getArgument(0)));
+        // what OrderService does with a cookie cart: export it before reading the cart, clear it after the order
+        when(orderService.makeOrder(anonymousUserId, "key-1"))
+                .thenReturn(cookieCartStore.exportTo(anonymousUserId).then(cookieCartStore.clear()).thenReturn(9L));
+
+        StepVerifier.create(checkoutIdempotency.checkout(anonymousUserId, "key-1")
+                        .contextWrite(ctx -> ctx.put(CookieCart.class, cart)))
+                .expectNext(9L)
+                .verifyComplete();
+
+        verify(cartRepo).saveAll(argThat((Iterable<CartPosition> positions) -> {
+            List<CartPosition> saved = (List<CartPosition>) positions;
+            return saved.size() == 2 && saved.stream().allMatch(p -> anonymousUserId.equals(p.getUserId()));
+        }));
+        assertEquals(0, cart.size());
+        assertTrue(cart.isDirty());
+    }
+
+    @Test
+    void checkout_WithoutKey_ShouldNotCollapse() {
+        when(orderService.makeOrder(userId, null)).thenReturn(Mono.just(1L), Mono.just(2L));
+
+        StepVerifier.create(Flux.concat(checkoutIdempotency.checkout(userId, null), checkoutIdempotency.checkout(userId, null)))
+                .expectNext(1L, 2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void purgeExpired_ShouldDeleteInBatchesUntilDone() {
+        when(checkoutRequests.deleteExpired(any(), eq(1000)))
+                .thenReturn(Mono.just(1000L), Mono.just(1000L), Mono.just(3L));
+
+        StepVerifier.create(checkoutIdempotency.purgeExpired())
+                .expectNext(2003L)
+                .verifyComplete();
+
+        verify(checkoutRequests, times(3)).deleteExpired(any(), eq(1000));
+    }
+}
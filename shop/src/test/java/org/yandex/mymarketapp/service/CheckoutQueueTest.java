@@ -0,0 +1,170 @@
+package org.yandex.mymarketapp.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.yandex.mymarketapp.model.dto.CheckoutStatusDto;
+import org.yandex.mymarketapp.model.dto.CheckoutStatusDto.State;
+import org.yandex.mymarketapp.model.exception.CheckoutRejectedException;
+import org.yandex.mymarketapp.model.exception.OrderCreateException;
+import org.yandex.mymarketapp.repo.CheckoutRequestRepository;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(classes = {CheckoutQueue.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = {
+        "market.orders.checkout.queue-capacity=1",
+        "market.orders.checkout.workers=1"
+})
+class CheckoutQueueTest {
+
+    @MockitoBean
+    private CheckoutIdempotency checkoutIdempotency;
+
+    @MockitoBean
+    private CheckoutRequestRepository checkoutRequests;
+
+    @MockitoBean
+    private CartService cartService;
+
+    @Autowired
+    private CheckoutQueue checkoutQueue;
+
+    private final Long userId = 0L;
+
+    @Test
+    void submit_ShouldAnswerBeforeCheckoutCompletes() {
+        Sinks.One<Long> order = Sinks.one();
+        when(checkoutIdempotency.checkout(userId, "key-1")).thenReturn(order.asMono());
+
+        StepVerifier.create(checkoutQueue.submit(userId, "key-1"))
+                .assertNext(status -> {
+                    assertEquals("key-1", status.id());
+                    assertNotEquals(State.COMPLETED, status.state());
+                })
+                .verifyComplete();
+
+        when(checkoutRequests.findOrderId(userId, "key-1")).thenReturn(Mono.just(7L));
+        order.tryEmitValue(7L);
+
+        StepVerifier.create(checkoutQueue.status(userId, "key-1"))
+                .expectNext(new CheckoutStatusDto("key-1", State.COMPLETED, 7L, null))
+                .verifyComplete();
+    }
+
+    @Test
+    void submit_WhenQueueIsFull_ShouldRejectCheckout() {
+        Sinks.One<Long> order = Sinks.one();
+        when(checkoutIdempotency.checkout(userId, "full-1")).thenReturn(order.asMono());
+        checkoutQueue.submit(userId, "full-1").block();
+
+        StepVerifier.create(checkoutQueue.submit(userId, "full-2"))
+                .verifyError(CheckoutRejectedException.class);
+        verify(checkoutIdempotency, never()).checkout(userId, "full-2");
+
+        order.tryEmitValue(7L);
+        when(checkoutIdempotency.checkout(userId, "full-2")).thenReturn(Mono.just(8L));
+        when(checkoutRequests.findOrderId(userId, "full-2")).thenReturn(Mono.just(8L));
+
+        StepVerifier.create(checkoutQueue.submit(userId, "full-2").then(checkoutQueue.status(userId, "full-2")))
+                .expectNext(new CheckoutStatusDto("full-2", State.COMPLETED, 8L, null))
+                .verifyComplete();
+    }
+
+    @Test
+    void submit_WithRunningKey_ShouldNotQueueAgain() {
+        Sinks.One<Long> order = Sinks.one();
+        when(checkoutIdempotency.checkout(userId, "dup-1")).thenReturn(order.asMono());
+
+        checkoutQueue.submit(userId, "dup-1").block();
+
+        StepVerifier.create(checkoutQueue.submit(userId, "dup-1"))
+                .expectNext(new CheckoutStatusDto("dup-1", State.RUNNING, null, null))
+                .verifyComplete();
+        order.tryEmitValue(5L);
+        verify(checkoutIdempotency, times(1)).checkout(userId, "dup-1");
+    }
+
+    @Test
+    void submit_AfterFailure_ShouldRetryCheckout() {
+        when(checkoutIdempotency.checkout(userId, "retry-1"))
+                .thenReturn(Mono.error(new OrderCreateException("Cannot create order. cart is empty")))
+                .thenReturn(Mono.just(6L));
+        when(checkoutRequests.findOrderId(userId, "retry-1")).thenReturn(Mono.just(6L));
+
+        StepVerifier.create(checkoutQueue.submit(userId, "retry-1").then(checkoutQueue.status(userId, "retry-1")))
+                .expectNext(new CheckoutStatusDto("retry-1", State.FAILED, null, "Cannot create order. cart is empty"))
+                .verifyComplete();
+
+        StepVerifier.create(checkoutQueue.submit(userId, "retry-1").then(checkoutQueue.status(userId, "retry-1")))
+                .expectNext(new CheckoutStatusDto("retry-1", State.COMPLETED, 6L, null))
+                .verifyComplete();
+    }
+
+    @Test
+    void status_AfterCompletion_ShouldNotKeepCheckoutInMemory() {
+        when(checkoutIdempotency.checkout(userId, "done-1")).thenReturn(Mono.just(4L));
+        when(checkoutRequests.findOrderId(userId, "done-1")).thenReturn(Mono.just(4L));
+
+        StepVerifier.create(checkoutQueue.submit(userId, "done-1").then(checkoutQueue.status(userId, "done-1")))
+                .expectNext(new CheckoutStatusDto("done-1", State.COMPLETED, 4L, null))
+                .verifyComplete();
+        verify(checkoutRequests).findOrderId(userId, "done-1");
+    }
+
+    @Test
+    void submit_OfAnonymousCookieCart_ShouldCheckOutCopyAndEmptyCookie() {
+        Long anonymousUserId = -42L;
+        CookieCart cart = new CookieCart(Map.of(1L, 2, 3L, 1));
+        AtomicReference<Map<Long, Integer>> checkedOut = new AtomicReference<>();
+        when(cartService.isServerSide(anonymousUserId)).thenReturn(false);
+        when(checkoutIdempotency.checkout(anonymousUserId, "cookie-1")).thenReturn(Mono.deferContextual(ctx -> {
+            checkedOut.set(ctx.<CookieCart>get(CookieCart.class).counts());
+            return Mono.just(9L);
+        }));
+
+        StepVerifier.create(checkoutQueue.submit(anonymousUserId, "cookie-1")
+                        .contextWrite(ctx -> ctx.put(CookieCart.class, cart)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertEquals(Map.of(1L, 2, 3L, 1), checkedOut.get());
+        assertEquals(0, cart.size());
+        assertTrue(cart.isDirty());
+    }
+
+    @Test
+    void submit_OfServerSideCart_ShouldLeaveCookieCartAlone() {
+        CookieCart cart = new CookieCart(Map.of(1L, 2));
+        when(cartService.isServerSide(userId)).thenReturn(true);
+        when(checkoutIdempotency.checkout(userId, "server-1")).thenReturn(Mono.just(10L));
+
+        StepVerifier.create(checkoutQueue.submit(userId, "server-1")
+                        .contextWrite(ctx -> ctx.put(CookieCart.class, cart)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertEquals(1, cart.size());
+    }
+
+    @Test
+    void status_WhenCheckoutIsNotKnown_ShouldReadOrderStoredWithKey() {
+        when(checkoutRequests.findOrderId(userId, "old-key")).thenReturn(Mono.just(3L));
+
+        StepVerifier.create(checkoutQueue.status(userId, "old-key"))
+                .expectNext(new CheckoutStatusDto("old-key", State.COMPLETED, 3L, null))
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,58 @@
+package org.yandex.mymarketapp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CookieCartCodecTest {
+
+    private final CookieCartCodec codec = new CookieCartCodec("test-secret");
+
+    @Test
+    void decode_ShouldReturnEncodedCart() {
+        Map<Long, Integer> counts = Map.of(3L, 1, 150L, 12, 100_000L, 2);
+
+        assertEquals(counts, codec.decode(codec.encode(counts)));
+    }
+
+    @Test
+    void encode_ShouldStayCompact() {
+        Map<Long, Integer> counts = new LinkedHashMap<>();
+        for (long itemId = 1; itemId <= 50; itemId++) {
+            counts.put(itemId * 7, 3);
+        }
+
+        // version byte + 2 bytes per position + 16 bytes of signature, base64 adds a third
+        assertTrue(codec.encode(counts).length() <= (1 + 50 * 2 + 16) * 4 / 3 + 1);
+    }
+
+    @Test
+    void decode_WhenCookieIsTampered_ShouldReturnEmptyCart() {
+        byte[] bytes = Base64.getUrlDecoder().decode(codec.encode(Map.of(1L, 1)));
+        bytes[2] = 99;
+
+        assertTrue(codec.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes)).isEmpty());
+    }
+
+    @Test
+    void decode_WhenSignedWithOtherSecret_ShouldReturnEmptyCart() {
+        String foreign = new CookieCartCodec("other-secret").encode(Map.of(1L, 1));
+
+        assertTrue(codec.decode(foreign).isEmpty());
+    }
+
+    @Test
+    void decode_WhenCookieIsGarbage_ShouldReturnEmptyCart() {
+        assertTrue(codec.decode("not a cart").isEmpty());
+        assertTrue(codec.decode("").isEmpty());
+    }
+
+    @Test
+    void encode_WhenCartIsEmpty_ShouldRoundTrip() {
+        assertEquals(Map.of(), codec.decode(codec.encode(Map.of())));
+    }
+}
@@ -0,0 +1,132 @@
+package org.yandex.mymarketapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.yandex.mymarketapp.model.domain.CartPosition;
+import org.yandex.mymarketapp.model.domain.Item;
+import org.yandex.mymarketapp.model.exception.CartIsFullException;
+import org.yandex.mymarketapp.model.exception.ItemNotFoundException;
+import org.yandex.mymarketapp.model.mapper.ItemMapperImpl;
+import org.yandex.mymarketapp.repo.CartBulkRepository;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import org.yandex.mymarketapp.repo.ItemRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(classes = {CartService.class, CartMutationCoalescer.class, DbCartStore.class, CookieCartStore.class, ItemService.class, ItemMapperImpl.class})
+@TestPropertySource(properties = {
+        "market.cart.anonymous-storage=cookie",
+        "market.cart.cookie.max-positions=2"
+})
+class CookieCartStoreTest {
+
+    @MockitoBean
+    private ItemRepository itemsRepo;
+
+    @MockitoBean
+    private CartPositionsRepository cartRepo;
+
+    @MockitoBean
+    private CartBulkRepository bulkRepo;
+
+    @MockitoBean
+    private org.yandex.payment.api.BalanceApi balanceApi;
+
+    @Autowired
+    private CartService cartService;
+
+    private final Long anonymousUserId = -42L;
+
+    @Test
+    void increaseQuantityInCart_ForAnonymousUser_ShouldOnlyChangeCookieCart() {
+        CookieCart cart = new CookieCart(Map.of());
+        when(itemsRepo.findById(1L)).thenReturn(Mono.just(new Item(1L, "Item 1", "Description 1", "/img1.jpg", 10.0)));
+
+        StepVerifier.create(cartService.increaseQuantityInCart(1L, anonymousUserId)
+                        .then(cartService.increaseQuantityInCart(1L, anonymousUserId))
+                        .then(cartService.getCountOfItemInCartByUserId(anonymousUserId, 1L))
+                        .contextWrite(ctx -> ctx.put(CookieCart.class, cart)))
+                .expectNext(2)
+                .verifyComplete();
+
+        assertTrue(cart.isDirty());
+        assertEquals(Map.of(1L, 2), cart.counts());
+        verifyNoInteractions(cartRepo);
+    }
+
+    @Test
+    void decreaseQuantityInCart_ForAnonymousUser_ShouldDropPositionAtZero() {
+        CookieCart cart = new CookieCart(Map.of(1L, 1, 2L, 3));
+
+        StepVerifier.create(cartService.decreaseQuantityInCart(1L, anonymousUserId)
+                        .then(cartService.removeFromCart(2L, anonymousUserId))
+                        .contextWrite(ctx -> ctx.put(CookieCart.class, cart)))
+                .verifyComplete();
+
+        assertEquals(Map.of(), cart.counts());
+        verifyNoInteractions(cartRepo, itemsRepo);
+    }
+
+    @Test
+    void increaseQuantityInCart_WhenItemNotExists_ShouldLeaveCookieCartUntouched() {
+        CookieCart cart = new CookieCart(Map.of());
+        when(itemsRepo.findById(999L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(cartService.increaseQuantityInCart(999L, anonymousUserId)
+                        .contextWrite(ctx -> ctx.put(CookieCart.class, cart)))
+                .verifyError(ItemNotFoundException.class);
+
+        assertFalse(cart.isDirty());
+    }
+
+    @Test
+    void increaseQuantityInCart_WhenCookieCartIsFull_ShouldThrowException() {
+        CookieCart cart = new CookieCart(Map.of(1L, 1, 2L, 1));
+
+        StepVerifier.create(cartService.increaseQuantityInCart(3L, anonymousUserId)
+                        .contextWrite(ctx -> ctx.put(CookieCart.class, cart)))
+                .verifyError(CartIsFullException.class);
+
+        assertEquals(Map.of(1L, 1, 2L, 1), cart.counts());
+    }
+
+    @Test
+    void checkout_ForAnonymousUser_ShouldExportCookieCartAndClearIt() {
+        CookieCart cart = new CookieCart(Map.of(1L, 2, 5L, 1));
+        when(cartRepo.clearCart(anonymousUserId)).thenReturn(Mono.just(0));
+        when(cartRepo.saveAll(anyList())).thenAnswer(invocation -> Flux.fromIterable(invocation.<List<CartPosition>>getArgument(0)));
+
+        StepVerifier.create(cartService.prepareCheckout(anonymousUserId)
+                        .then(cartService.completeCheckout(anonymousUserId))
+                        .contextWrite(ctx -> ctx.put(CookieCart.class, cart)))
+                .verifyComplete();
+
+        verify(cartRepo).clearCart(anonymousUserId);
+        verify(cartRepo).saveAll(argThat((List<CartPosition> positions) -> positions.size() == 2
+                && positions.stream().allMatch(p -> p.getUserId().equals(anonymousUserId))
+                && positions.stream().anyMatch(p -> p.getItemId() == 1L && p.getCount() == 2)));
+        assertTrue(cart.isDirty());
+        assertEquals(0, cart.size());
+    }
+
+    @Test
+    void increaseQuantityInCart_ForRegisteredUser_ShouldUseServerStore() {
+        when(cartRepo.addItem(1L, 0L)).thenReturn(Mono.just(1));
+
+        StepVerifier.create(cartService.increaseQuantityInCart(1L, 0L))
+                .verifyComplete();
+
+        verify(cartRepo).addItem(1L, 0L);
+    }
+}
@@ -0,0 +1,90 @@
+package org.yandex.mymarketapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.yandex.mymarketapp.LatencyStats;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import org.yandex.mymarketapp.model.exception.OrderCreateException;
+import org.yandex.payment.api.PaymentsApi;
+import org.yandex.payment.model.PaymentRequest;
+import org.yandex.payment.model.UserBalance;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+@TestPropertySource(properties = "market.cart.storage=db")
+class DbCartConcurrencyTest extends AbstractCartConcurrencyTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @MockitoBean
+    private PaymentsApi payApi;
+
+    @Override
+    protected void resetStore() {
+        databaseClient.sql("""
+                DELETE FROM payment_outbox WHERE user_id > 1000;
+                DELETE FROM order_positions WHERE order_id IN (SELECT id FROM orders WHERE user_id > 1000);
+                DELETE FROM orders WHERE user_id > 1000
+                """).then().block();
+    }
+
+    @Test
+    void checkoutDuringIncrements_ShouldNotLoseClicks() {
+        when(payApi.processPayment(anyLong(), any(PaymentRequest.class)))
+                .thenReturn(Mono.just(new UserBalance().balance(1_000_000f)));
+        List<Operation> increments = new ArrayList<>();
+        for (Long userId : USERS) {
+            for (int i = 0; i < OPERATIONS_PER_USER; i++) {
+                increments.add(new Operation(new Position(userId, ITEMS.get(random.nextInt(ITEMS.size()))), QuantityChange.PLUS));
+            }
+        }
+        int checkouts = Math.max(1, OPERATIONS_PER_USER / 50);
+
+        Mono<LatencyStats> clicks = Mono.fromCallable(() -> run("increments with checkouts", Path.SERVICE, increments));
+        Flux<Void> orders = Flux.range(0, checkouts * USERS.size())
+                .flatMap(i -> Mono.delay(Duration.ofMillis(random.nextInt(50)))
+                        .then(orderService.makeOrder(USERS.get(i % USERS.size()), null).then())
+                        .onErrorResume(OrderCreateException.class, e -> Mono.empty()), CONCURRENCY);
+        Mono.when(clicks.subscribeOn(Schedulers.boundedElastic()), orders)
+                .block(Duration.ofMinutes(5));
+
+        // every click ends either in an order or in the cart
+        Map<Position, Integer> ordered = readOrdered();
+        Map<Position, Integer> accounted = new HashMap<>(readDbCarts());
+        ordered.forEach((position, count) -> accounted.merge(position, count, Integer::sum));
+        assertEquals(replay(Map.of(), increments), accounted);
+    }
+
+    private Map<Position, Integer> readOrdered() {
+        Map<Position, Integer> ordered = new HashMap<>();
+        databaseClient.sql("""
+                        SELECT o.user_id, i.id AS item_id, sum(op.count) AS count
+                        FROM orders o
+                        JOIN order_positions op ON op.order_id = o.id
+                        JOIN items i ON i.title = op.title
+                        WHERE o.user_id > 1000
+                        GROUP BY o.user_id, i.id
+                        """)
+                .map(row -> Map.entry(new Position(row.get("user_id", Long.class), row.get("item_id", Long.class)),
+                        row.get("count", Long.class).intValue()))
+                .all()
+                .toIterable()
+                .forEach(entry -> ordered.put(entry.getKey(), entry.getValue()));
+        return ordered;
+    }
+}
@@ -0,0 +1,90 @@
+package org.yandex.mymarketapp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.yandex.mymarketapp.model.dto.ItemDto;
+import org.yandex.mymarketapp.model.dto.OrderDto;
+import org.yandex.mymarketapp.repository.PostgresBaseIntegrationTest;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+@TestPropertySource(properties = {
+        "market.orders.archive.enabled=true",
+        "market.orders.archive.min-age=P30D",
+        "market.orders.archive.interval=PT1H",
+        "market.orders.archive.batch-size=1"
+})
+class OrderArchiverTest extends PostgresBaseIntegrationTest {
+
+    @Autowired
+    private OrderArchiver archiver;
+
+    @Autowired
+    private OrderService orderService;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-orders.sql");
+        databaseClient.sql("UPDATE orders SET created_at = now() - interval '40 days' WHERE id = 1").then().block();
+    }
+
+    @Test
+    void archive_ShouldMoveOldOrdersOutOfDatabaseAndKeepThemReadable() {
+        StepVerifier.create(archiver.archive())
+                .expectNext(1L)
+                .verifyComplete();
+
+        StepVerifier.create(databaseClient.sql("SELECT count(*) AS orders FROM orders")
+                        .map(row -> row.get("orders", Long.class))
+                        .one())
+                .expectNext(1L)
+                .verifyComplete();
+
+        StepVerifier.create(orderService.getOrderById(1L, 0L))
+                .assertNext(order -> {
+                    assertThat(order.totalSum()).isEqualTo(150.0);
+                    assertThat(order.items()).extracting(ItemDto::title)
+                            .containsExactly("Test Item 1", "Test Item 2");
+                })
+                .verifyComplete();
+
+        StepVerifier.create(orderService.getOrdersPage(0L, null))
+                .assertNext(page -> assertThat(page.orders()).extracting(OrderDto::id).containsExactly(2L, 1L))
+                .verifyComplete();
+    }
+
+    @Test
+    void archive_WhenRepeated_ShouldNotArchiveTwice() {
+        archiver.archive().block();
+
+        StepVerifier.create(archiver.archive())
+                .expectNext(0L)
+                .verifyComplete();
+
+        StepVerifier.create(orderService.exportOrders(0L).collectList())
+                .assertNext(orders -> assertThat(orders).hasSize(2))
+                .verifyComplete();
+    }
+
+    @Test
+    void archive_WhileAnotherInstanceArchives_ShouldSkipRun() {
+        StepVerifier.create(databaseClient.inConnection(connection ->
+                        Mono.from(connection.createStatement("SELECT pg_advisory_lock($1)").bind("$1", OrderArchiver.LOCK_KEY).execute())
+                                .flatMap(result -> Mono.from(result.getRowsUpdated()))
+                                .then(archiver.archive())
+                                .flatMap(archived -> Mono.from(connection.createStatement("SELECT pg_advisory_unlock($1)")
+                                                .bind("$1", OrderArchiver.LOCK_KEY).execute())
+                                        .flatMap(result -> Mono.from(result.getRowsUpdated()))
+                                        .thenReturn(archived))))
+                .expectNext(0L)
+                .verifyComplete();
+
+        StepVerifier.create(archiver.archive())
+                .expectNext(1L)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,118 @@
+package org.yandex.mymarketapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.yandex.mymarketapp.model.domain.Order;
+import org.yandex.mymarketapp.model.domain.OrderPosition;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
+import org.yandex.mymarketapp.model.dto.OrderDto;
+import org.yandex.mymarketapp.repo.OrderRepository;
+import org.yandex.mymarketapp.repository.PostgresBaseIntegrationTest;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+class OrderHistoryCacheTest extends PostgresBaseIntegrationTest {
+
+    @Autowired
+    private OrderHistoryCache historyCache;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ReactiveStringRedisTemplate redis;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Long userId = 0L;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-orders.sql");
+        redis.delete(OrderHistoryCache.indexKey(userId), OrderHistoryCache.orderKey(userId, 1L),
+                OrderHistoryCache.orderKey(userId, 2L), OrderHistoryCache.orderKey(userId, 3L)).block();
+    }
+
+    @Test
+    void getPage_ShouldLoadIndexAndOrdersOnce() {
+        StepVerifier.create(historyCache.getPage(userId, Long.MAX_VALUE, 10).map(OrderDto::id).collectList())
+                .assertNext(ids -> assertThat(ids).containsExactly(2L, 1L))
+                .verifyComplete();
+
+        databaseClient.sql("UPDATE orders SET total_sum = 1.0").then().block();
+
+        StepVerifier.create(historyCache.getPage(userId, 2L, 10))
+                .assertNext(order -> assertThat(order.totalSum()).isEqualTo(150.0))
+                .verifyComplete();
+        StepVerifier.create(redis.opsForZSet().score(OrderHistoryCache.indexKey(userId), OrderHistoryCache.LOADED_MEMBER))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void appendAfterCommit_ShouldAddNewOrderToLoadedHistory() {
+        historyCache.getPage(userId, Long.MAX_VALUE, 10).blockLast();
+
+        Order order = new Order();
+        order.setUserId(userId);
+        order.setTotalSum(30.0);
+        OrderPosition position = new OrderPosition();
+        position.setTitle("New Item");
+        position.setImgPath("/images/new.jpg");
+        position.setPrice(15.0);
+        position.setCount(2);
+        order.setItems(new ArrayList<>(List.of(position)));
+
+        StepVerifier.create(orderRepository.save(order)
+                        .flatMap(saved -> historyCache.appendAfterCommit(userId, saved.getId()))
+                        .thenMany(historyCache.getPage(userId, Long.MAX_VALUE, 2)))
+                .assertNext(newest -> {
+                    assertThat(newest.id()).isEqualTo(3L);
+                    assertThat(newest.status()).isEqualTo(OrderStatus.PENDING_PAYMENT);
+                    assertThat(newest.items()).hasSize(1);
+                })
+                .assertNext(previous -> assertThat(previous.id()).isEqualTo(2L))
+                .verifyComplete();
+    }
+
+    @Test
+    void refreshAfterCommit_ShouldStoreSettledStatus() {
+        historyCache.getOrder(userId, 1L).block();
+        databaseClient.sql("UPDATE orders SET status = 'CANCELLED' WHERE id = 1").then().block();
+
+        StepVerifier.create(historyCache.refreshAfterCommit(userId, 1L).then(historyCache.getOrder(userId, 1L)))
+                .assertNext(order -> assertThat(order.status()).isEqualTo(OrderStatus.CANCELLED))
+                .verifyComplete();
+    }
+
+    @Test
+    void getOrder_WhenReadBeforeSettlementIsStoredAfterIt_ShouldKeepSettledStatus() throws Exception {
+        databaseClient.sql("UPDATE orders SET status = 'PENDING_PAYMENT' WHERE id = 1").then().block();
+        OrderDto pending = historyCache.getOrder(userId, 1L).block();
+        databaseClient.sql("UPDATE orders SET status = 'PAID' WHERE id = 1").then().block();
+        historyCache.refreshAfterCommit(userId, 1L).block();
+
+        // the pending order read before the settlement is stored only now
+        StepVerifier.create(redis.execute(OrderHistoryCache.STORE_SCRIPT, List.of(OrderHistoryCache.orderKey(userId, 1L)),
+                        List.of("60000", objectMapper.writeValueAsString(pending), pending.status().name())).next())
+                .expectNext(0L)
+                .verifyComplete();
+        StepVerifier.create(historyCache.getOrder(userId, 1L))
+                .assertNext(order -> assertThat(order.status()).isEqualTo(OrderStatus.PAID))
+                .verifyComplete();
+    }
+
+    @Test
+    void getOrder_OfAnotherUser_ShouldBeEmpty() {
+        StepVerifier.create(historyCache.getOrder(42L, 1L))
+                .verifyComplete();
+    }
+}
@@ -1,22 +1,27 @@
 package org.yandex.mymarketapp.service;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.yandex.mymarketapp.model.domain.Order;
 import org.yandex.mymarketapp.model.domain.OrderPosition;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
+import org.yandex.mymarketapp.model.domain.PaymentOutboxEntry;
 import org.yandex.mymarketapp.model.dto.ItemDto;
 import org.yandex.mymarketapp.model.dto.OrderDto;
 import org.yandex.mymarketapp.model.dto.OrdersDto;
 import org.yandex.mymarketapp.model.exception.OrderCreateException;
 import org.yandex.mymarketapp.model.exception.OrderNotFoundException;
+import org.yandex.mymarketapp.model.mapper.OrderMapper;
 import org.yandex.mymarketapp.model.mapper.OrderMapperImpl;
 import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import org.yandex.mymarketapp.repo.CheckoutRequestRepository;
+import org.yandex.mymarketapp.repo.OrderArchiveRepository;
 import org.yandex.mymarketapp.repo.OrderRepository;
-import org.yandex.payment.model.UserBalance;
+import org.yandex.mymarketapp.repo.PaymentOutboxRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
@@ -26,6 +31,7 @@ import java.util.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest(classes = {OrderService.class, OrderMapperImpl.class})
@@ -38,13 +44,41 @@ class OrderServiceTest {
     private CartPositionsRepository cartRepo;
 
     @MockitoBean
-    private org.yandex.payment.api.PaymentsApi payApi;
+    private PaymentOutboxRepository outboxRepo;
+
+    @MockitoBean
+    private CheckoutRequestRepository checkoutRequests;
+
+    @MockitoBean
+    private OrderArchiveRepository archiveRepo;
+
+    @MockitoBean
+    private OrderHistoryCache historyCache;
+
+    @MockitoBean
+    private UserOrderStatsService statsService;
+
+    @MockitoBean
+    private CartService cartService;
 
     @Autowired
     private OrderService orderService;
+
+    @Autowired
+    private OrderMapper orderMapper;
     
     private Long userId = 0L;
 
+    @BeforeEach
+    void setUp() {
+        when(cartService.prepareCheckout(any())).thenReturn(Mono.empty());
+        when(cartService.completeCheckout(any())).thenReturn(Mono.empty());
+        when(outboxRepo.save(any(PaymentOutboxEntry.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(historyCache.appendAfterCommit(any(), any())).thenReturn(Mono.empty());
+        when(historyCache.refreshAfterCommit(any(), any())).thenReturn(Mono.empty());
+        when(statsService.evictAfterCommit(any())).thenReturn(Mono.empty());
+    }
+
     @Test
     void makeOrder_WithMultipleItems_ShouldCreateOrderWithCorrectTotal() {
         List<ItemDto> cartItems = Arrays.asList(
@@ -55,22 +89,26 @@ class OrderServiceTest {
 
         Order savedOrder = new Order();
         savedOrder.setId(1L);
+        savedOrder.setUserId(userId);
         savedOrder.setTotalSum(70.0); // (10*2) + (15*3) + (5*1) = 20 + 45 + 5 = 70
 
         when(cartRepo.getAllCartPositions(userId)).thenReturn(Flux.fromIterable(cartItems));
         when(orderRepo.save(any(Order.class))).thenReturn(Mono.just(savedOrder));
-        when(cartRepo.clearCart(userId)).thenReturn(Mono.just(1));
-        when(payApi.processPayment(any(), any(org.yandex.payment.model.PaymentRequest.class))).thenReturn(Mono.just(new UserBalance().id(userId).balance(100.0f)));
+        when(cartRepo.removePositions(eq(userId), any())).thenReturn(Mono.just(1));
 
-
-        Mono<Void> result = orderService.makeOrder(userId);
+        Mono<Long> result = orderService.makeOrder(userId, null);
 
         StepVerifier.create(result)
+                .expectNext(1L)
                 .verifyComplete();
 
         verify(cartRepo).getAllCartPositions(userId);
-        verify(orderRepo).save(any(Order.class));
-        verify(cartRepo).clearCart(userId);
+        verify(orderRepo).save(argThat(order -> OrderStatus.PENDING_PAYMENT.equals(order.getStatus())
+                && order.getItems().stream().map(OrderPosition::getItemId).toList().equals(List.of(1L, 2L, 3L))));
+        verify(outboxRepo).save(argThat(entry ->
+                entry.getOrderId() == 1L && userId.equals(entry.getUserId()) && entry.getAmount() == 70.0
+        ));
+        verify(cartRepo).removePositions(userId, List.of(1L, 2L, 3L));
     }
 
     @Test
@@ -85,65 +123,116 @@ class OrderServiceTest {
 
         when(cartRepo.getAllCartPositions(userId)).thenReturn(Flux.fromIterable(cartItems));
         when(orderRepo.save(any(Order.class))).thenReturn(Mono.just(savedOrder));
-        when(cartRepo.clearCart(userId)).thenReturn(Mono.just(1));
-        when(payApi.processPayment(any(), any(org.yandex.payment.model.PaymentRequest.class))).thenReturn(Mono.just(new UserBalance().id(userId).balance(100.0f)));
-
+        when(cartRepo.removePositions(eq(userId), any())).thenReturn(Mono.just(1));
 
-        Mono<Void> result = orderService.makeOrder(userId);
+        Mono<Long> result = orderService.makeOrder(userId, null);
 
         StepVerifier.create(result)
+                .expectNext(1L)
                 .verifyComplete();
 
         verify(cartRepo).getAllCartPositions(userId);
         verify(orderRepo).save(argThat(order ->
-                order.getTotalSum() == 25.0
+                order.getTotalSum() == 25.0 && userId.equals(order.getUserId())
         ));
-        verify(cartRepo).clearCart(userId);
+        verify(cartRepo).removePositions(eq(userId), any());
     }
 
     @Test
     void makeOrder_WithEmptyCart_ShouldCreateEmptyOrder() {
         when(cartRepo.getAllCartPositions(userId)).thenReturn(Flux.empty());
 
-        Mono<Void> result = orderService.makeOrder(userId);
+        Mono<Long> result = orderService.makeOrder(userId, null);
 
         StepVerifier.create(result)
                 .verifyError(OrderCreateException.class);
     }
 
     @Test
-    void getAllOrders_WhenNoOrdersExist_ShouldReturnEmptyFlux() {
-        when(orderRepo.getAllWithPositions(userId)).thenReturn(Flux.empty());
+    void makeOrder_WithNewKey_ShouldStoreOrderWithKey() {
+        Order savedOrder = new Order();
+        savedOrder.setId(5L);
+        savedOrder.setTotalSum(10.0);
 
-        Mono<OrdersDto> result = orderService.getAllOrders(userId);
+        when(checkoutRequests.claim(eq(userId), eq("key-1"), any())).thenReturn(Mono.just(true));
+        when(checkoutRequests.complete(userId, "key-1", 5L)).thenReturn(Mono.just(1));
+        when(cartRepo.getAllCartPositions(userId)).thenReturn(Flux.just(new ItemDto(1L, "Item", "Desc", "/img.jpg", 10.0, 1)));
+        when(orderRepo.save(any(Order.class))).thenReturn(Mono.just(savedOrder));
+        when(cartRepo.removePositions(eq(userId), any())).thenReturn(Mono.just(1));
 
-        StepVerifier.create(result)
-                .expectNext(new OrdersDto(List.of()));
+        StepVerifier.create(orderService.makeOrder(userId, "key-1"))
+                .expectNext(5L)
+                .verifyComplete();
 
-        verify(orderRepo).getAllWithPositions(userId);
+        verify(checkoutRequests).complete(userId, "key-1", 5L);
     }
 
     @Test
-    void getAllOrders_WhenOrdersExist_ShouldReturnOrderDtos() {
-        Order order1 = createOrder(1L, 50.0, 2);
-        Order order2 = createOrder(2L, 75.0, 1);
+    void makeOrder_WithUsedKey_ShouldReturnStoredOrderWithoutCheckout() {
+        when(checkoutRequests.claim(eq(userId), eq("key-1"), any())).thenReturn(Mono.just(false));
+        when(checkoutRequests.findOrderId(userId, "key-1")).thenReturn(Mono.just(5L));
+
+        StepVerifier.create(orderService.makeOrder(userId, "key-1"))
+                .expectNext(5L)
+                .verifyComplete();
 
-        when(orderRepo.getAllWithPositions(userId)).thenReturn(Flux.just(order1, order2));
+        verifyNoInteractions(orderRepo, outboxRepo);
+        verify(cartRepo, never()).getAllCartPositions(any());
+        verify(checkoutRequests, never()).complete(any(), any(), any());
+    }
+
+    @Test
+    void getOrdersPage_WhenNoOrdersExist_ShouldReturnEmptyLastPage() {
+        when(historyCache.getPage(userId, Long.MAX_VALUE, 21)).thenReturn(Flux.empty());
 
-        Mono<OrdersDto> result = orderService.getAllOrders(userId);
+        Mono<OrdersDto> result = orderService.getOrdersPage(userId, null);
 
         StepVerifier.create(result)
-                .expectNextCount(1)
-                .expectNextMatches(dto -> dto.orders().size() == 2);
+                .expectNext(new OrdersDto(List.of(), null))
+                .verifyComplete();
 
-        verify(orderRepo).getAllWithPositions(userId);
+        verify(historyCache).getPage(userId, Long.MAX_VALUE, 21);
+    }
+
+    @Test
+    void getOrdersPage_WhenMoreOrdersExist_ShouldReturnCursorOfLastShownOrder() {
+        List<OrderDto> orders = new ArrayList<>();
+        for (long id = 60; id > 39; id--) {
+            orders.add(orderMapper.toDto(createOrder(id, 10.0, 1)));
+        }
+        when(historyCache.getPage(userId, 61L, 21)).thenReturn(Flux.fromIterable(orders));
+
+        Mono<OrdersDto> result = orderService.getOrdersPage(userId, 61L);
+
+        StepVerifier.create(result)
+                .assertNext(page -> {
+                    assertEquals(20, page.orders().size());
+                    assertEquals(60L, page.orders().get(0).id());
+                    assertEquals(41L, page.nextBefore());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void getOrdersPage_WhenLastPage_ShouldReturnNoCursor() {
+        when(historyCache.getPage(userId, 3L, 21))
+                .thenReturn(Flux.just(orderMapper.toDto(createOrder(2L, 50.0, 2)), orderMapper.toDto(createOrder(1L, 75.0, 1))));
+
+        Mono<OrdersDto> result = orderService.getOrdersPage(userId, 3L);
+
+        StepVerifier.create(result)
+                .assertNext(page -> {
+                    assertEquals(2, page.orders().size());
+                    assertNull(page.nextBefore());
+                })
+                .verifyComplete();
     }
 
     @Test
     void getOrderById_WhenOrderNotExists_ShouldThrowException() {
         // Given
         Long orderId = 999L;
-        when(orderRepo.getByIdAndUserIdWithPositions(orderId, userId)).thenReturn(Mono.empty());
+        when(historyCache.getOrder(userId, orderId)).thenReturn(Mono.empty());
 
         // When
         Mono<OrderDto> result = orderService.getOrderById(orderId, userId);
@@ -155,7 +244,7 @@ class OrderServiceTest {
                                 throwable.getMessage().equals("order with id 999 not found!")
                 );
 
-        verify(orderRepo).getByIdAndUserIdWithPositions(orderId, userId);
+        verify(historyCache).getOrder(userId, orderId);
     }
 
     @Test
@@ -163,7 +252,7 @@ class OrderServiceTest {
         // Given
         Long orderId = 1L;
         Order order = createOrder(orderId, 100.0, 2);
-        when(orderRepo.getByIdAndUserIdWithPositions(orderId, userId)).thenReturn(Mono.just(order));
+        when(historyCache.getOrder(userId, orderId)).thenReturn(Mono.just(orderMapper.toDto(order)));
 
         // When
         Mono<OrderDto> result = orderService.getOrderById(orderId, userId);
@@ -173,14 +262,14 @@ class OrderServiceTest {
                 .expectNextCount(1)
                 .verifyComplete();
 
-        verify(orderRepo).getByIdAndUserIdWithPositions(orderId, userId);
+        verify(historyCache).getOrder(userId, orderId);
     }
 
     @Test
     void getOrderById_WithZeroId_ShouldThrowException() {
         // Given
         Long orderId = 0L;
-        when(orderRepo.getByIdAndUserIdWithPositions(orderId, userId)).thenReturn(Mono.empty());
+        when(historyCache.getOrder(userId, orderId)).thenReturn(Mono.empty());
 
         // When
         Mono<OrderDto> result = orderService.getOrderById(orderId, userId);
@@ -189,14 +278,14 @@ class OrderServiceTest {
         StepVerifier.create(result)
                 .verifyError(OrderNotFoundException.class);
 
-        verify(orderRepo).getByIdAndUserIdWithPositions(orderId, userId);
+        verify(historyCache).getOrder(userId, orderId);
     }
 
     @Test
     void getOrderById_WithNegativeId_ShouldThrowException() {
         // Given
         Long orderId = -1L;
-        when(orderRepo.getByIdAndUserIdWithPositions(orderId, userId)).thenReturn(Mono.empty());
+        when(historyCache.getOrder(userId, orderId)).thenReturn(Mono.empty());
 
         // When
         Mono<OrderDto> result = orderService.getOrderById(orderId, userId);
@@ -205,7 +294,7 @@ class OrderServiceTest {
         StepVerifier.create(result)
                 .verifyError(OrderNotFoundException.class);
 
-        verify(orderRepo).getByIdAndUserIdWithPositions(orderId, userId);
+        verify(historyCache).getOrder(userId, orderId);
     }
 
     @Test
@@ -221,19 +310,18 @@ class OrderServiceTest {
             order.setId(1L);
             return Mono.just(order);
         });
-        when(cartRepo.clearCart(userId)).thenReturn(Mono.just(1));
-        when(payApi.processPayment(any(), any(org.yandex.payment.model.PaymentRequest.class))).thenReturn(Mono.just(new UserBalance().id(userId).balance(100.0f)));
+        when(cartRepo.removePositions(eq(userId), any())).thenReturn(Mono.just(1));
 
-
-        Mono<Void> result = orderService.makeOrder(userId);
+        Mono<Long> result = orderService.makeOrder(userId, null);
 
         StepVerifier.create(result)
+                .expectNext(1L)
                 .verifyComplete();
 
         verify(orderRepo).save(argThat(order ->
                 Math.abs(2098.98 - order.getTotalSum()) < 0.001
         ));
-        verify(cartRepo).clearCart(userId);
+        verify(cartRepo).removePositions(eq(userId), any());
     }
 
     @Test
@@ -249,12 +337,10 @@ class OrderServiceTest {
 
         when(cartRepo.getAllCartPositions(userId)).thenReturn(Flux.fromIterable(cartItems));
         when(orderRepo.save(any(Order.class))).thenReturn(Mono.just(savedOrder));
-        when(cartRepo.clearCart(userId)).thenReturn(Mono.error(new RuntimeException("Clear cart failed")));
-        when(payApi.processPayment(any(), any(org.yandex.payment.model.PaymentRequest.class))).thenReturn(Mono.just(new UserBalance().id(userId).balance(100.0f)));
-
+        when(cartRepo.removePositions(eq(userId), any())).thenReturn(Mono.error(new RuntimeException("Clear cart failed")));
 
         // When
-        Mono<Void> result = orderService.makeOrder(userId);
+        Mono<Long> result = orderService.makeOrder(userId, null);
 
         // Then
         StepVerifier.create(result)
@@ -262,8 +348,8 @@ class OrderServiceTest {
 
         verify(cartRepo).getAllCartPositions(userId);
         verify(orderRepo).save(any(Order.class));
-        verify(payApi).processPayment(any(), any(org.yandex.payment.model.PaymentRequest.class));
-        verify(cartRepo).clearCart(userId);
+        verify(outboxRepo).save(any(PaymentOutboxEntry.class));
+        verify(cartRepo).removePositions(eq(userId), any());
     }
 
     @Test
@@ -275,10 +361,9 @@ class OrderServiceTest {
 
         when(cartRepo.getAllCartPositions(userId)).thenReturn(Flux.fromIterable(cartItems));
         when(orderRepo.save(any(Order.class))).thenReturn(Mono.error(new RuntimeException("Save failed")));
-        when(payApi.processPayment(any(), any(org.yandex.payment.model.PaymentRequest.class))).thenReturn(Mono.just(new UserBalance().id(userId).balance(100.0f)));
 
         // When
-        Mono<Void> result = orderService.makeOrder(userId);
+        Mono<Long> result = orderService.makeOrder(userId, null);
 
         // Then
         StepVerifier.create(result)
@@ -286,11 +371,11 @@ class OrderServiceTest {
 
         verify(cartRepo).getAllCartPositions(userId);
         verify(orderRepo).save(any(Order.class));
-        verify(cartRepo, never()).clearCart(userId);
+        verify(cartRepo, never()).removePositions(any(), any());
     }
 
     @Test
-    void makeOrder_WhenPayOrderFails_ShouldNotclearCart() {
+    void makeOrder_WhenOutboxWriteFails_ShouldNotclearCart() {
         // Given
         List<ItemDto> cartItems = Collections.singletonList(
                 new ItemDto(1L, "Item", "Desc", "/img.jpg", 10.0, 1)
@@ -302,16 +387,16 @@ class OrderServiceTest {
             order.setId(1L);
             return Mono.just(order);
         });
-        when(payApi.processPayment(any(), any(org.yandex.payment.model.PaymentRequest.class))).thenThrow(WebClientResponseException.class);
+        when(outboxRepo.save(any(PaymentOutboxEntry.class))).thenReturn(Mono.error(new RuntimeException("Outbox write failed")));
 
-        Mono<Void> result = orderService.makeOrder(userId);
+        Mono<Long> result = orderService.makeOrder(userId, null);
 
         StepVerifier.create(result)
                 .verifyError(RuntimeException.class);
 
         verify(cartRepo).getAllCartPositions(userId);
         verify(orderRepo).save(any(Order.class));
-        verify(cartRepo, never()).clearCart(userId);
+        verify(cartRepo, never()).removePositions(any(), any());
     }
 
     @Test
@@ -326,20 +411,50 @@ class OrderServiceTest {
 
         when(cartRepo.getAllCartPositions(userId)).thenReturn(Flux.fromIterable(cartItems));
         when(orderRepo.save(any(Order.class))).thenReturn(Mono.just(savedOrder));
-        when(cartRepo.clearCart(userId)).thenReturn(Mono.just(1));
-        when(payApi.processPayment(any(), any(org.yandex.payment.model.PaymentRequest.class))).thenReturn(Mono.just(new UserBalance().id(userId).balance(100.0f)));
+        when(cartRepo.removePositions(eq(userId), any())).thenReturn(Mono.just(1));
 
-
-        Mono<Void> result = orderService.makeOrder(userId);
+        Mono<Long> result = orderService.makeOrder(userId, null);
 
         StepVerifier.create(result)
+                .expectNext(1L)
                 .verifyComplete();
 
-        InOrder inOrder = inOrder(cartRepo, orderRepo, payApi, cartRepo);
+        InOrder inOrder = inOrder(cartRepo, orderRepo, outboxRepo, cartRepo);
         inOrder.verify(cartRepo).getAllCartPositions(userId);
         inOrder.verify(orderRepo).save(any(Order.class));
-        inOrder.verify(payApi).processPayment(any(), any());
-        inOrder.verify(cartRepo).clearCart(userId);
+        inOrder.verify(outboxRepo).save(any(PaymentOutboxEntry.class));
+        inOrder.verify(cartRepo).removePositions(eq(userId), any());
+    }
+
+    @Test
+    void settlePayment_ShouldCloseOutboxEntryWithStatus() {
+        PaymentOutboxEntry entry = new PaymentOutboxEntry(7L, 3L, userId, 50.0, 1, null, null);
+        when(outboxRepo.settle(7L, "CANCELLED")).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(orderService.settlePayment(entry, OrderStatus.CANCELLED))
+                .verifyComplete();
+
+        verify(outboxRepo).settle(7L, "CANCELLED");
+        verify(historyCache).refreshAfterCommit(userId, 3L);
+        verify(statsService).evictAfterCommit(userId);
+    }
+
+    @Test
+    void makeOrder_ShouldAppendOrderToCachedHistory() {
+        when(cartRepo.getAllCartPositions(userId)).thenReturn(Flux.just(new ItemDto(1L, "Item 1", "Description 1", "/img1.jpg", 10.0, 2)));
+        when(orderRepo.save(any(Order.class))).thenAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            order.setId(4L);
+            return Mono.just(order);
+        });
+        when(cartRepo.removePositions(eq(userId), any())).thenReturn(Mono.just(1));
+
+        StepVerifier.create(orderService.makeOrder(userId, null))
+                .expectNext(4L)
+                .verifyComplete();
+
+        verify(historyCache).appendAfterCommit(userId, 4L);
+        verify(statsService).evictAfterCommit(userId);
     }
 
     private Order createOrder(Long id, double totalSum, int itemCount) {
@@ -0,0 +1,136 @@
+package org.yandex.mymarketapp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.yandex.mymarketapp.model.domain.OrderStatus;
+import org.yandex.mymarketapp.repository.PostgresBaseIntegrationTest;
+import org.yandex.payment.api.PaymentsApi;
+import org.yandex.payment.model.PaymentRequest;
+import org.yandex.payment.model.UserBalance;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@TestPropertySource(properties = {
+        "market.orders.payment.relay.interval=PT1H",
+        "market.orders.payment.relay.max-attempts=3"
+})
+class PaymentOutboxRelayTest extends PostgresBaseIntegrationTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private final Long userId = 0L;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private PaymentOutboxRelay relay;
+
+    @MockitoBean
+    private PaymentsApi payApi;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-orders.sql");
+        this.executeSqlScript("sql/init-cartpositions.sql");
+    }
+
+    @Test
+    void makeOrder_ShouldWriteOrderAndOutboxWithoutCallingPaymentService() {
+        orderService.makeOrder(userId, null).block(TIMEOUT);
+
+        assertEquals(OrderStatus.PENDING_PAYMENT, lastOrderStatus());
+        assertEquals(1L, outboxSize());
+        verifyNoInteractions(payApi);
+    }
+
+    @Test
+    void relay_WhenPaymentSucceeds_ShouldMarkOrderPaid() {
+        when(payApi.processPayment(eq(userId), any(PaymentRequest.class)))
+                .thenReturn(Mono.just(new UserBalance().id(userId).balance(100.0f)));
+        orderService.makeOrder(userId, null).block(TIMEOUT);
+
+        assertEquals(1L, relay.relay().block(TIMEOUT));
+
+        assertEquals(OrderStatus.PAID, lastOrderStatus());
+        assertEquals(0L, outboxSize());
+        verify(payApi).processPayment(eq(userId), argThat(request -> request.getAmount() > 0));
+    }
+
+    @Test
+    void relay_WhenPaymentRejected_ShouldCancelOrder() {
+        when(payApi.processPayment(eq(userId), any(PaymentRequest.class)))
+                .thenReturn(Mono.error(responseException(HttpStatus.BAD_REQUEST)));
+        orderService.makeOrder(userId, null).block(TIMEOUT);
+
+        relay.relay().block(TIMEOUT);
+
+        assertEquals(OrderStatus.CANCELLED, lastOrderStatus());
+        assertEquals(0L, outboxSize());
+    }
+
+    @Test
+    void relay_WhenPaymentServiceUnavailable_ShouldRescheduleWithBackoff() {
+        when(payApi.processPayment(eq(userId), any(PaymentRequest.class)))
+                .thenReturn(Mono.error(responseException(HttpStatus.SERVICE_UNAVAILABLE)));
+        orderService.makeOrder(userId, null).block(TIMEOUT);
+
+        relay.relay().block(TIMEOUT);
+        relay.relay().block(TIMEOUT);
+
+        assertEquals(OrderStatus.PENDING_PAYMENT, lastOrderStatus());
+        assertEquals(1L, outboxSize());
+        Boolean scheduledLater = databaseClient.sql("""
+                        SELECT attempts = 1 AND next_attempt_at > now() AND last_error IS NOT NULL AS rescheduled
+                        FROM payment_outbox
+                        """)
+                .map(row -> row.get("rescheduled", Boolean.class))
+                .one()
+                .block(TIMEOUT);
+        assertEquals(Boolean.TRUE, scheduledLater);
+        verify(payApi, times(1)).processPayment(eq(userId), any(PaymentRequest.class));
+    }
+
+    @Test
+    void relay_WhenAttemptsRunOut_ShouldCancelOrder() {
+        when(payApi.processPayment(eq(userId), any(PaymentRequest.class)))
+                .thenReturn(Mono.error(responseException(HttpStatus.SERVICE_UNAVAILABLE)));
+        orderService.makeOrder(userId, null).block(TIMEOUT);
+        databaseClient.sql("UPDATE payment_outbox SET attempts = 2").then().block(TIMEOUT);
+
+        relay.relay().block(TIMEOUT);
+
+        assertEquals(OrderStatus.CANCELLED, lastOrderStatus());
+        assertEquals(0L, outboxSize());
+    }
+
+    private OrderStatus lastOrderStatus() {
+        return databaseClient.sql("SELECT status FROM orders ORDER BY id DESC LIMIT 1")
+                .map(row -> OrderStatus.valueOf(row.get("status", String.class)))
+                .one()
+                .block(TIMEOUT);
+    }
+
+    private Long outboxSize() {
+        return databaseClient.sql("SELECT count(*) AS size FROM payment_outbox")
+                .map(row -> row.get("size", Long.class))
+                .one()
+                .block(TIMEOUT);
+    }
+
+    private static WebClientResponseException responseException(HttpStatus status) {
+        return WebClientResponseException.create(status, status.getReasonPhrase(), HttpHeaders.EMPTY, new byte[0], null, null);
+    }
+}
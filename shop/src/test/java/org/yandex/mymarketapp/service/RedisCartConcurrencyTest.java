@@ -0,0 +1,35 @@
+package org.yandex.mymarketapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@TestPropertySource(properties = {
+        "market.cart.storage=redis",
+        "market.cart.redis.flush-interval-ms=3600000"
+})
+class RedisCartConcurrencyTest extends AbstractCartConcurrencyTest {
+
+    @Autowired
+    private ReactiveStringRedisTemplate redis;
+
+    @Autowired
+    private RedisCartStore redisCartStore;
+
+    @Override
+    protected void resetStore() {
+        Flux.fromIterable(USERS)
+                .map(RedisCartStore::cartKey)
+                .concatWith(Mono.just(RedisCartStore.DIRTY_KEY))
+                .collectList()
+                .flatMap(keys -> redis.delete(keys.toArray(String[]::new)))
+                .block();
+    }
+
+    @Override
+    protected Mono<Void> persist() {
+        return redisCartStore.flushDirtyCarts();
+    }
+}
@@ -0,0 +1,168 @@
+package org.yandex.mymarketapp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.yandex.mymarketapp.model.domain.CartPosition;
+import org.yandex.mymarketapp.model.domain.QuantityChange;
+import org.yandex.mymarketapp.model.exception.ItemNotFoundException;
+import org.yandex.mymarketapp.repo.CartPositionsRepository;
+import org.yandex.mymarketapp.repository.PostgresBaseIntegrationTest;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestPropertySource(properties = {
+        "market.cart.storage=redis",
+        "market.cart.redis.flush-interval-ms=3600000"
+})
+class RedisCartStoreTest extends PostgresBaseIntegrationTest {
+
+    @Autowired
+    private RedisCartStore cartStore;
+
+    @Autowired
+    private CartPositionsRepository cartRepo;
+
+    @Autowired
+    private ReactiveStringRedisTemplate redis;
+
+    @Autowired
+    private TransactionalOperator tx;
+
+    private final Long userId = 0L;
+
+    @BeforeEach
+    void beforeEach() {
+        this.executeSqlScript("sql/init-cartpositions.sql");
+        redis.delete(RedisCartStore.cartKey(userId), RedisCartStore.DIRTY_KEY).block();
+    }
+
+    @Test
+    void getCounts_ShouldLoadCartFromDb() {
+        StepVerifier.create(cartStore.getCounts(userId))
+                .expectNext(Map.of(1L, 2, 2L, 1))
+                .verifyComplete();
+
+        StepVerifier.create(redis.opsForHash().hasKey(RedisCartStore.cartKey(userId), RedisCartStore.LOADED_FIELD))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void increase_ShouldNotTouchDbUntilFlush() {
+        StepVerifier.create(cartStore.increase(1L, userId)
+                        .then(cartStore.increase(3L, userId))
+                        .then(cartStore.increase(3L, userId)))
+                .verifyComplete();
+
+        StepVerifier.create(cartStore.getCounts(userId))
+                .expectNext(Map.of(1L, 3, 2L, 1, 3L, 2))
+                .verifyComplete();
+        StepVerifier.create(cartRepo.findCountByUserIdAndItemId(userId, 1L))
+                .expectNext(2)
+                .verifyComplete();
+
+        StepVerifier.create(cartStore.flushDirtyCarts()).verifyComplete();
+
+        StepVerifier.create(cartRepo.findByUserId(userId).collectMap(CartPosition::getItemId, CartPosition::getCount))
+                .expectNext(Map.of(1L, 3, 2L, 1, 3L, 2))
+                .verifyComplete();
+    }
+
+    @Test
+    void decrease_WhenCountIsOne_ShouldRemovePositionOnFlush() {
+        StepVerifier.create(cartStore.decrease(2L, userId).then(cartStore.flush(userId)))
+                .verifyComplete();
+
+        StepVerifier.create(cartRepo.findByItemIdAndUserId(2L, userId))
+                .verifyComplete();
+        StepVerifier.create(cartStore.getCount(userId, 2L))
+                .expectNext(0)
+                .verifyComplete();
+    }
+
+    @Test
+    void flush_WhenScheduledFlushTookDirtyMark_ShouldStillWriteCart() {
+        StepVerifier.create(cartStore.increase(1L, userId)
+                        .then(redis.opsForSet().remove(RedisCartStore.DIRTY_KEY, userId.toString()))
+                        .then(cartStore.flush(userId)))
+                .verifyComplete();
+
+        StepVerifier.create(cartRepo.findCountByUserIdAndItemId(userId, 1L))
+                .expectNext(3)
+                .verifyComplete();
+    }
+
+    @Test
+    void flushDirtyCarts_DuringCheckout_ShouldNotBringCheckedOutCartBack() {
+        StepVerifier.create(cartStore.increase(1L, userId)).verifyComplete();
+        Sinks.Empty<Void> flushed = Sinks.empty();
+        Sinks.Empty<Void> ordered = Sinks.empty();
+        // checkout flushes the cart, orders it, then drops it from redis and the db before it commits
+        CompletableFuture<Void> checkout = cartStore.flush(userId)
+                .then(Mono.fromRunnable(flushed::tryEmitEmpty))
+                .then(ordered.asMono())
+                .then(cartStore.invalidate(userId))
+                .then(cartRepo.clearCart(userId))
+                .then()
+                .as(tx::transactional)
+                .toFuture();
+        flushed.asMono().block(Duration.ofSeconds(5));
+
+        CompletableFuture<Void> writeBehind = cartStore.flushDirtyCarts().toFuture();
+        Mono.delay(Duration.ofMillis(200)).block();
+        assertThat(writeBehind).isNotDone();
+
+        ordered.tryEmitEmpty();
+        checkout.join();
+        writeBehind.join();
+
+        StepVerifier.create(cartRepo.findByUserId(userId))
+                .verifyComplete();
+    }
+
+    @Test
+    void remove_ShouldDropPosition() {
+        StepVerifier.create(cartStore.remove(1L, userId).then(cartStore.getCounts(userId)))
+                .assertNext(counts -> assertThat(counts).containsOnlyKeys(2L))
+                .verifyComplete();
+    }
+
+    @Test
+    void apply_ShouldWriteFoldedChangeAtOnce() {
+        QuantityChange change = QuantityChange.REMOVE.andThen(QuantityChange.PLUS).andThen(QuantityChange.delta(2));
+
+        StepVerifier.create(cartStore.apply(1L, userId, change).then(cartStore.getCount(userId, 1L)))
+                .expectNext(3)
+                .verifyComplete();
+    }
+
+    @Test
+    void increase_WhenItemNotExists_ShouldThrowException() {
+        StepVerifier.create(cartStore.increase(999L, userId))
+                .verifyError(ItemNotFoundException.class);
+    }
+
+    @Test
+    void invalidate_ShouldDropHashAndDirtyMark() {
+        StepVerifier.create(cartStore.increase(1L, userId).then(cartStore.invalidate(userId)))
+                .verifyComplete();
+
+        StepVerifier.create(redis.hasKey(RedisCartStore.cartKey(userId)))
+                .expectNext(false)
+                .verifyComplete();
+        StepVerifier.create(redis.opsForSet().isMember(RedisCartStore.DIRTY_KEY, userId.toString()))
+                .expectNext(false)
+                .verifyComplete();
+    }
+}
@@ -1,4 +1,5 @@
 -- Clear existing data
+DELETE FROM payment_outbox;
 DELETE FROM order_positions;
 DELETE FROM orders;
 DELETE FROM items;
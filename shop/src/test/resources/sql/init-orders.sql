@@ -1,4 +1,6 @@
 DELETE
+FROM payment_outbox;
+DELETE
 FROM order_positions;
 DELETE
 FROM orders;
@@ -7,11 +9,18 @@ FROM orders;
 ALTER SEQUENCE orders_id_seq RESTART WITH 1;
 ALTER SEQUENCE order_positions_id_seq RESTART WITH 1;
 
-INSERT INTO orders (total_sum, user_id)
-VALUES (150.0, 0),
-       (200.0, 0);
+INSERT INTO orders (total_sum, user_id, status)
+VALUES (150.0, 0, 'PAID'),
+       (200.0, 0, 'PAID');
+
+INSERT INTO item_snapshots (hash, title, description, img_path)
+SELECT item_snapshot_hash(s.title, s.description, s.img_path), s.title, s.description, s.img_path
+FROM (VALUES ('Test Item 1', 'Test Description 1', '/images/test1.jpg'),
+             ('Test Item 2', 'Test Description 2', '/images/test2.jpg'),
+             ('Second Order Item', 'Second Order Description', '/images/second.jpg')) AS s(title, description, img_path)
+ON CONFLICT (hash) DO NOTHING;
 
-INSERT INTO order_positions ( order_id, title, description, img_path, price, count)
-VALUES ( 1, 'Test Item 1', 'Test Description 1', '/images/test1.jpg', 50.0, 2),
-       ( 1, 'Test Item 2', 'Test Description 2', '/images/test2.jpg', 25.0, 2),
-       ( 2, 'Second Order Item', 'Second Order Description', '/images/second.jpg', 200.0, 1);
+INSERT INTO order_positions ( order_id, snapshot_hash, price, count)
+VALUES ( 1, item_snapshot_hash('Test Item 1', 'Test Description 1', '/images/test1.jpg'), 50.0, 2),
+       ( 1, item_snapshot_hash('Test Item 2', 'Test Description 2', '/images/test2.jpg'), 25.0, 2),
+       ( 2, item_snapshot_hash('Second Order Item', 'Second Order Description', '/images/second.jpg'), 200.0, 1);